@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Runs the benchmarks (any JMH command line option is accepted) with the GC profiler, so allocation rates are always reported.
+//Results are written as JSON to -Dresult (target/jmh-result.json, relative to the working folder). With -Dbaseline=<previous result> the run fails when
+//any score or allocation per operation is worse than the baseline by more than -Dthreshold (0.10)
+public final class BenchmarkRunner {
+
+    private static final String GC_ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        final String resultFile = System.getProperty("result", "target/jmh-result.json");
+        final Collection<RunResult> results = new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+                                                                             .addProfiler(GCProfiler.class)
+                                                                             .resultFormat(ResultFormatType.JSON)
+                                                                             .result(resultFile)
+                                                                             .build()).run();
+
+        final String baseline = System.getProperty("baseline");
+        if (baseline == null) {
+            return;
+        }
+
+        final List<String> regressions = findRegressions(results, readBaseline(new File(baseline)),
+                                                         Double.parseDouble(System.getProperty("threshold", "0.10")));
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against baseline " + baseline);
+        } else {
+            System.out.println("Regressions against baseline " + baseline + " :");
+            regressions.forEach(regression -> System.out.println("  " + regression));
+            System.exit(1);
+        }
+    }
+
+    private static List<String> findRegressions(final Collection<RunResult> results, final Map<String, Map<String, Double>> baseline, final double threshold) {
+        final List<String> regressions = new ArrayList<>();
+        for (final RunResult result : results) {
+            final BenchmarkParams params = result.getParams();
+            final String key = getKey(params.getBenchmark(), toMap(params));
+            final Map<String, Double> baselineScores = baseline.get(key);
+            if (baselineScores == null) {
+                continue;
+            }
+
+            final boolean higherIsBetter = params.getMode() == Mode.Throughput;
+            checkScore(regressions, key, "score", result.getPrimaryResult().getScore(), baselineScores.get("score"), threshold, higherIsBetter);
+            for (final Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith(GC_ALLOC_RATE_NORM)) {
+                    checkScore(regressions, key, GC_ALLOC_RATE_NORM, secondary.getValue().getScore(), baselineScores.get(GC_ALLOC_RATE_NORM), threshold, false);
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static void checkScore(final List<String> regressions,
+                                   final String key,
+                                   final String metric,
+                                   final double score,
+                                   final Double baselineScore,
+                                   final double threshold,
+                                   final boolean higherIsBetter) {
+        if (baselineScore == null || baselineScore == 0) {
+            return;
+        }
+        final double change = (score - baselineScore) / baselineScore;
+        if (higherIsBetter ? change < -threshold : change > threshold) {
+            regressions.add(String.format(Locale.US, "%s %s: %.3f -> %.3f (%+.1f%%)", key, metric, baselineScore, score, change * 100));
+        }
+    }
+
+    private static Map<String, Map<String, Double>> readBaseline(final File baseline) throws IOException {
+        final Map<String, Map<String, Double>> scores = new HashMap<>();
+        for (final JsonNode result : new ObjectMapper().readTree(baseline)) {
+            final Map<String, String> params = new TreeMap<>();
+            result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+
+            final Map<String, Double> benchmarkScores = new HashMap<>();
+            benchmarkScores.put("score", result.path("primaryMetric").path("score").asDouble());
+            result.path("secondaryMetrics").fields().forEachRemaining(metric -> {
+                if (metric.getKey().endsWith(GC_ALLOC_RATE_NORM)) {
+                    benchmarkScores.put(GC_ALLOC_RATE_NORM, metric.getValue().path("score").asDouble());
+                }
+            });
+            scores.put(getKey(result.path("benchmark").asText(), params), benchmarkScores);
+        }
+        return scores;
+    }
+
+    private static Map<String, String> toMap(final BenchmarkParams params) {
+        final Map<String, String> map = new TreeMap<>();
+        params.getParamsKeys().forEach(param -> map.put(param, params.getParam(param)));
+        return map;
+    }
+
+    private static String getKey(final String benchmark, final Map<String, String> params) {
+        return params.isEmpty() ? benchmark : benchmark + params;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.mapper.BenchmarkMappers;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//CommitInfoPageDto JSON serialization, and the whole API path page assembly: GitHub body in, response bytes out
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitInfoPageBenchmark {
+
+    private static final long TOTAL = 1234;
+
+    @Param({"1", "10", "100"})
+    int items;
+
+    private ObjectMapper objectMapper;
+    private CommitViewerMapper commitViewerMapper;
+    private byte[] gitHubApiResponse;
+    private CommitInfoPageDto commitInfoPage;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = BenchmarkMappers.objectMapper();
+        commitViewerMapper = BenchmarkMappers.commitViewerMapper(objectMapper);
+        gitHubApiResponse = GitHubPayloads.commits(items).getBytes(StandardCharsets.UTF_8);
+        commitInfoPage = toPage(commitViewerMapper.gitHubApiResponseToCommitInfoDto(new ByteArrayInputStream(gitHubApiResponse)));
+    }
+
+    @Benchmark
+    public byte[] serializeCommitInfoPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(commitInfoPage);
+    }
+
+    @Benchmark
+    public byte[] assembleCommitInfoPage() throws IOException {
+        return objectMapper.writeValueAsBytes(toPage(commitViewerMapper.gitHubApiResponseToCommitInfoDto(new ByteArrayInputStream(gitHubApiResponse))));
+    }
+
+    private CommitInfoPageDto toPage(final List<CommitInfoDto> commitInfoList) {
+        return CommitInfoPageDto.builder()
+                                .items(commitInfoList)
+                                .page(1)
+                                .perPage(items)
+                                .count(commitInfoList.size())
+                                .total(TOTAL)
+                                .totalPages((int) Math.ceil((double) TOTAL / (double) items))
+                                .build();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.GitHubApiCommitDto;
+import com.challenge.model.api.mapper.BenchmarkMappers;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//GitHub response body to CommitInfoDto list, streamed by the mapper or bound to a GitHubApiCommitDto list first (the former path)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitViewerMapperBenchmark {
+
+    @Param({"1", "10", "100"})
+    int items;
+
+    private ObjectMapper objectMapper;
+    private CommitViewerMapper commitViewerMapper;
+    private byte[] gitHubApiResponse;
+    private List<GitHubApiCommitDto> gitHubApiCommitList;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = BenchmarkMappers.objectMapper();
+        commitViewerMapper = BenchmarkMappers.commitViewerMapper(objectMapper);
+        gitHubApiResponse = GitHubPayloads.commits(items).getBytes(StandardCharsets.UTF_8);
+        gitHubApiCommitList = gitHubApiResponseToGitHubApiCommitDto();
+    }
+
+    @Benchmark
+    public List<CommitInfoDto> gitHubApiResponseToCommitInfoDto() throws IOException {
+        return commitViewerMapper.gitHubApiResponseToCommitInfoDto(new ByteArrayInputStream(gitHubApiResponse));
+    }
+
+    //body read as a String, then bound to the whole GitHubApiCommitDto tree
+    @Benchmark
+    public List<GitHubApiCommitDto> gitHubApiResponseToGitHubApiCommitDto() throws JsonProcessingException {
+        return objectMapper.readValue(new String(gitHubApiResponse, StandardCharsets.UTF_8), new TypeReference<List<GitHubApiCommitDto>>() { });
+    }
+
+    @Benchmark
+    public List<CommitInfoDto> gitHubApiCommitDtoListToCommitInfoDtoList() {
+        return commitViewerMapper.gitHubApiCommitDtoListToCommitInfoDtoList(gitHubApiCommitList);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+//GitHub "list commits" responses of any size, built from the recorded commit in payloads/github-commit.json
+public final class GitHubPayloads {
+
+    private static final String RECORDED_COMMIT = "/payloads/github-commit.json";
+    private static final String RECORDED_SHA = "ce206ff99e275fd99d57d1e024cc22e3db9ba282";
+    private static final String RECORDED_MESSAGE = "Add new line\\n\\nAdded new line on readme";
+
+    private GitHubPayloads() {
+    }
+
+    public static String commits(final int items) {
+        final String commit = recordedCommit();
+        final StringBuilder payload = new StringBuilder(commit.length() * items + 2).append('[');
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append(commit.replace(RECORDED_SHA, String.format(Locale.US, "%040x", i * 2654435761L))
+                                 .replace(RECORDED_MESSAGE, RECORDED_MESSAGE + " #" + i));
+        }
+        return payload.append(']').toString();
+    }
+
+    private static String recordedCommit() {
+        try (InputStream inputStream = GitHubPayloads.class.getResourceAsStream(RECORDED_COMMIT)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+//Synthetic "git log" outputs for the same commits, in the legacy line format and in the GitLogParser format.
+//Bodies are single line, otherwise the legacy parser can't read them
+public final class GitLogFixtures {
+
+    private static final String AUTHOR = "Paulo Carrasqueira <pjcarrasqueira@gmail.com>";
+    private static final long FIRST_COMMIT_EPOCH = 1632693229L;
+
+    private GitLogFixtures() {
+    }
+
+    public static byte[] legacyOutput(final int commits) {
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < commits; i++) {
+            if (i > 0) {
+                output.append('\n');
+            }
+            output.append(sha(i)).append("|||").append(subject(i)).append("|||").append(body(i)).append("|||")
+                  .append(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(Instant.ofEpochSecond(FIRST_COMMIT_EPOCH + i).atOffset(ZoneOffset.UTC)))
+                  .append("|||").append(AUTHOR);
+        }
+        return output.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] streamingOutput(final int commits) {
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < commits; i++) {
+            output.append(sha(i)).append('\u001f').append(FIRST_COMMIT_EPOCH + i).append('\u001f').append(AUTHOR).append('\u001f')
+                  .append(subject(i)).append("\n\n").append(body(i)).append('\n').append('\0');
+        }
+        return output.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha(final int i) {
+        return String.format(Locale.US, "%040x", i * 2654435761L);
+    }
+
+    private static String subject(final int i) {
+        return "Update readme and fix typo in commit viewer helper #" + i;
+    }
+
+    private static String body(final int i) {
+        return "The commit viewer helper had a typo on the log message, fixed it and updated the readme with the new property " + i;
+    }
+}
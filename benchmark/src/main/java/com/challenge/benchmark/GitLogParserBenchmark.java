@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.service.cli.GitLogParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Legacy line/regex parser vs streaming GitLogParser over the same commits
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitLogParserBenchmark {
+
+    @Param({"1", "10", "100", "10000"})
+    int commits;
+
+    private final GitLogParser gitLogParser = new GitLogParser();
+
+    private byte[] legacyOutput;
+    private byte[] streamingOutput;
+
+    @Setup
+    public void setup() {
+        legacyOutput = GitLogFixtures.legacyOutput(commits);
+        streamingOutput = GitLogFixtures.streamingOutput(commits);
+    }
+
+    @Benchmark
+    public List<CommitInfoDto> legacyParser() throws IOException {
+        return LegacyGitLogParser.parse(new ByteArrayInputStream(legacyOutput));
+    }
+
+    @Benchmark
+    public List<CommitInfoDto> streamingParser() throws IOException {
+        return gitLogParser.parse(new ByteArrayInputStream(streamingOutput));
+    }
+
+    //what a full history export needs: commits are consumed as they are parsed, nothing is kept
+    @Benchmark
+    public void streamingParserConsumer(final Blackhole blackhole) throws IOException {
+        gitLogParser.parse(new ByteArrayInputStream(streamingOutput), blackhole::consume);
+    }
+}
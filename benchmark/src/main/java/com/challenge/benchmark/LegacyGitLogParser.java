@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.benchmark;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+//Line buffering parser used before GitLogParser ("%H|||%s|||%b|||%aI|||%an <%ae>" format), kept as benchmark baseline
+public final class LegacyGitLogParser {
+
+    public static final String FORMAT = "--pretty=format:%H|||%s|||%b|||%aI|||%an <%ae>";
+
+    private LegacyGitLogParser() {
+    }
+
+    public static List<CommitInfoDto> parse(final InputStream inputStream) throws IOException {
+        final List<String> logOutput = new ArrayList<>();
+        final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            logOutput.add(line);
+        }
+
+        final List<CommitInfoDto> commitInfoList = new ArrayList<>();
+        for (String temp : logOutput) {
+            final String[] data = temp.split("\\|\\|\\|");
+            if (data.length > 5) {
+                throw new IllegalStateException("Failed to parse git log response");
+            }
+            commitInfoList.add(CommitInfoDto.of(data[0],
+                                                data[2].isEmpty() ? data[1] : data[1] + "\\n\\n" + data[2],
+                                                Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(data[3])),
+                                                data[4]));
+        }
+        return commitInfoList;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.mapper;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+//Creates the mappers outside CDI, configured like Quarkus does (java.time support, unknown properties ignored)
+public final class BenchmarkMappers {
+
+    private BenchmarkMappers() {
+    }
+
+    public static ObjectMapper objectMapper() {
+        return new ObjectMapper().findAndRegisterModules()
+                                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                                 .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    public static CommitViewerMapper commitViewerMapper(final ObjectMapper objectMapper) {
+        final CommitViewerMapperImpl commitViewerMapper = new CommitViewerMapperImpl();
+        commitViewerMapper.objectMapper = objectMapper;
+        return commitViewerMapper;
+    }
+}
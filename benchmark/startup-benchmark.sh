@@ -0,0 +1,171 @@
+#!/usr/bin/env bash
+#
+# Time to first request and steady state RSS of commit-viewer, JVM against native.
+#
+# Usage : benchmark/startup-benchmark.sh <target>...
+#
+# Targets :
+#   jvm            target/quarkus-app/quarkus-run.jar ("make package")
+#   native         target/*-runner ("make package-native")
+#   image:<name>   a docker image, e.g. image:commit-viewer-app image:commit-viewer-app-native
+#
+# Every run starts the application on a fresh mirror cache and measures :
+#   startup_ms        launch until /q/health/live answers
+#   first_request_ms  launch until the first commit page is answered (clone of the fixture repository included)
+#   rss_mb            resident memory after REQUESTS page requests and SETTLE_SECONDS idle
+#
+# Commits are read from a local fixture repository (file:// github url, CLI backend), so runs don't depend on GitHub.
+# Environment : RUNS (5), REQUESTS (500), COMMITS (500), SETTLE_SECONDS (5), PORT (8080), JAVA_OPTS (jvm target only)
+#
+set -euo pipefail
+
+RUNS=${RUNS:-5}
+REQUESTS=${REQUESTS:-500}
+COMMITS=${COMMITS:-500}
+SETTLE_SECONDS=${SETTLE_SECONDS:-5}
+PORT=${PORT:-8080}
+JAVA_OPTS=${JAVA_OPTS:-}
+
+PROJECT_DIR=$(cd "$(dirname "$0")/.." && pwd)
+WORK_DIR=${WORK_DIR:-/tmp/commit-viewer-startup}
+FIXTURE_USER=bench
+FIXTURE_REPO=startup
+PER_PAGE=50
+BASE_URL="http://localhost:${PORT}"
+PAGE_URL="${BASE_URL}/commit-viewer/${FIXTURE_USER}/${FIXTURE_REPO}?per_page=${PER_PAGE}"
+
+APP_PID=
+CONTAINER_ID=
+RUN_RESULT=
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+median() {
+  sort -n | awk '{ values[NR] = $1 } END { print (NR % 2) ? values[(NR + 1) / 2] : int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+create_fixture() {
+  local bare="${WORK_DIR}/gh/${FIXTURE_USER}/${FIXTURE_REPO}"
+  if [ -d "${bare}" ]; then
+    return
+  fi
+  local source="${WORK_DIR}/source"
+  rm -rf "${source}" && mkdir -p "${source}" "$(dirname "${bare}")"
+  git -C "${source}" init -q
+  for i in $(seq 1 "${COMMITS}"); do
+    echo "${i}" > "${source}/file.txt"
+    git -C "${source}" add file.txt
+    GIT_AUTHOR_DATE="2021-09-26T21:55:26Z" GIT_COMMITTER_DATE="2021-09-26T21:55:26Z" \
+      git -C "${source}" -c user.name="Commit Viewer" -c user.email="commit-viewer@example.com" commit -q -m "Commit ${i}"
+  done
+  git clone -q --bare "${source}" "${bare}"
+  chmod -R a+rX "${WORK_DIR}/gh"
+}
+
+start_target() {
+  local target=$1
+  local mirrors="${WORK_DIR}/mirrors-$$-${RANDOM}"
+  case "${target}" in
+    jvm)
+      COMMIT_VIEWER_GITHUB_URL="file://${WORK_DIR}/gh/" COMMIT_VIEWER_FORCE_USE_CLI=true COMMIT_VIEWER_MIRROR_CACHE_PATH="${mirrors}" \
+        QUARKUS_HTTP_PORT="${PORT}" java ${JAVA_OPTS} -jar "${PROJECT_DIR}/target/quarkus-app/quarkus-run.jar" > "${WORK_DIR}/app.log" 2>&1 &
+      APP_PID=$!
+      ;;
+    native)
+      COMMIT_VIEWER_GITHUB_URL="file://${WORK_DIR}/gh/" COMMIT_VIEWER_FORCE_USE_CLI=true COMMIT_VIEWER_MIRROR_CACHE_PATH="${mirrors}" \
+        QUARKUS_HTTP_PORT="${PORT}" "$(ls "${PROJECT_DIR}"/target/*-runner)" > "${WORK_DIR}/app.log" 2>&1 &
+      APP_PID=$!
+      ;;
+    image:*)
+      CONTAINER_ID=$(docker run -d --rm -p "${PORT}:8080" -v "${WORK_DIR}/gh:/gh:ro" \
+                       -e COMMIT_VIEWER_GITHUB_URL=file:///gh/ -e COMMIT_VIEWER_FORCE_USE_CLI=true "${target#image:}")
+      APP_PID=$(docker inspect -f '{{.State.Pid}}' "${CONTAINER_ID}")
+      ;;
+    *)
+      echo "Unknown target : ${target}" >&2
+      exit 1
+      ;;
+  esac
+}
+
+stop_target() {
+  if [ -n "${CONTAINER_ID}" ]; then
+    docker stop "${CONTAINER_ID}" > /dev/null
+  elif [ -n "${APP_PID}" ]; then
+    kill "${APP_PID}" 2> /dev/null && wait "${APP_PID}" 2> /dev/null || true
+  fi
+  APP_PID=
+  CONTAINER_ID=
+}
+
+await_url() {
+  local url=$1
+  local deadline=$(($(now_ms) + 120000))
+  until curl -sf -o /dev/null "${url}"; do
+    if [ "$(now_ms)" -gt "${deadline}" ]; then
+      echo "No answer from ${url}, see ${WORK_DIR}/app.log" >&2
+      exit 1
+    fi
+    sleep 0.005
+  done
+}
+
+rss_mb() {
+  awk '/^VmRSS/ { print int($2 / 1024) }' "/proc/$1/status"
+}
+
+run_once() {
+  local target=$1
+  if curl -s -o /dev/null "${BASE_URL}"; then
+    echo "Port ${PORT} already in use, stop the application listening on it or set PORT" >&2
+    exit 1
+  fi
+  local launched
+  launched=$(now_ms)
+  start_target "${target}"
+  await_url "${BASE_URL}/q/health/live"
+  local started
+  started=$(now_ms)
+  await_url "${PAGE_URL}&page=1"
+  local first_request
+  first_request=$(now_ms)
+
+  local pages=$(((COMMITS + PER_PAGE - 1) / PER_PAGE))
+  for i in $(seq 1 "${REQUESTS}"); do
+    curl -sf -o /dev/null "${PAGE_URL}&page=$((i % pages + 1))"
+  done
+  sleep "${SETTLE_SECONDS}"
+  local rss
+  rss=$(rss_mb "${APP_PID}")
+  stop_target
+  rm -rf "${WORK_DIR}"/mirrors-*
+  RUN_RESULT="$((started - launched)) $((first_request - launched)) ${rss}"
+}
+
+if [ $# -eq 0 ]; then
+  sed -n '3,19p' "$0" | sed 's/^# \{0,1\}//'
+  exit 1
+fi
+
+trap stop_target EXIT
+mkdir -p "${WORK_DIR}"
+create_fixture
+
+printf "%-40s %4s %12s %18s %8s\n" "target" "run" "startup_ms" "first_request_ms" "rss_mb"
+SUMMARY=()
+for target in "$@"; do
+  RESULTS="${WORK_DIR}/results-${target//[^a-zA-Z0-9]/_}"
+  : > "${RESULTS}"
+  for run in $(seq 1 "${RUNS}"); do
+    run_once "${target}"
+    read -r startup first_request rss <<< "${RUN_RESULT}"
+    echo "${RUN_RESULT}" >> "${RESULTS}"
+    printf "%-40s %4s %12s %18s %8s\n" "${target}" "${run}" "${startup}" "${first_request}" "${rss}"
+  done
+  SUMMARY+=("$(printf "%-40s %4s %12s %18s %8s" "${target}" "p50" \
+                "$(cut -d' ' -f1 "${RESULTS}" | median)" "$(cut -d' ' -f2 "${RESULTS}" | median)" "$(cut -d' ' -f3 "${RESULTS}" | median)")")
+done
+echo
+printf "%s\n" "${SUMMARY[@]}"
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//The packaged application (target/quarkus-app/quarkus-run.jar) in its own JVM, configured through system properties
+final class ApplicationProcess implements AutoCloseable {
+
+    private final Process process;
+    private final URI uri;
+    private final File log;
+
+    private ApplicationProcess(final Process started, final URI applicationUri, final File logFile) {
+        this.process = started;
+        this.uri = applicationUri;
+        this.log = logFile;
+    }
+
+    static ApplicationProcess start(final File jar, final List<String> javaOptions, final Map<String, String> properties, final int port, final File log)
+        throws IOException {
+        if (!jar.isFile()) {
+            throw new IOException("Application not found at " + jar + ", package it first with \"make package\"");
+        }
+        final List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(javaOptions);
+        command.add("-Dquarkus.http.port=" + port);
+        properties.forEach((name, value) -> command.add("-D" + name + "=" + value));
+        command.add("-jar");
+        command.add(jar.getPath());
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        return new ApplicationProcess(process, URI.create("http://localhost:" + port), log);
+    }
+
+    URI getUri() {
+        return uri;
+    }
+
+    //Waits for the readiness check, fails when the application exits or isn't ready in time
+    void awaitReady(final HttpClient client, final Duration timeout) throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final HttpRequest readiness = HttpRequest.newBuilder(uri.resolve("/q/health/ready")).build();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Application exited with " + process.exitValue() + ", see " + log);
+            }
+            try {
+                if (client.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                //not listening yet
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        throw new IOException("Application not ready after " + timeout.toSeconds() + "s, see " + log);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Local stand-in for the GitHub REST API, serving GET /repos/{owner}/{repo}/commits (page, per_page and sha parameters) from recorded
+//repositories. Responses carry what the application relies on : Link headers (prev, next, last, first), weak ETags answered with 304
+//Not Modified on If-None-Match and X-RateLimit-* headers (a limit that is never reached, so the load isn't routed around the API).
+//Every response is delayed by a log-normal latency around the median, GitHub latencies have a long tail
+final class GitHubApiStub implements AutoCloseable {
+
+    private static final Pattern COMMITS_PATH = Pattern.compile("^/repos/([^/]+)/([^/]+)/commits$");
+    private static final int DEFAULT_PER_PAGE = 30;
+    private static final int MAX_PER_PAGE = 100;
+    private static final int RATE_LIMIT = 5000;
+    private static final byte[] NOT_FOUND = "{\"message\":\"Not Found\",\"documentation_url\":\"https://docs.github.com/rest\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, RecordedRepository> repositories = new HashMap<>();
+    private final long medianLatencyMillis;
+    private final double latencySigma;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    GitHubApiStub(final List<RecordedRepository> recorded, final int port, final int threads, final long medianLatency, final double sigma)
+        throws IOException {
+        recorded.forEach(repository -> repositories.put(repository.getFullName(), repository));
+        this.medianLatencyMillis = medianLatency;
+        this.latencySigma = sigma;
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "github-api-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI getUri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getNotModified() {
+        return notModified.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            delay();
+            final Matcher matcher = COMMITS_PATH.matcher(exchange.getRequestURI().getPath());
+            final RecordedRepository repository = matcher.matches() ? repositories.get(matcher.group(1) + "/" + matcher.group(2)) : null;
+            if (!"GET".equals(exchange.getRequestMethod()) || repository == null) {
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+
+            final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            final int perPage = Math.min(MAX_PER_PAGE, Math.max(1, parseInt(query.get("per_page"), DEFAULT_PER_PAGE)));
+            final int page = Math.max(1, parseInt(query.get("page"), 1));
+            final String sha = query.get("sha");
+            //sha starts the history at that commit, as GitHub does for branches and commits
+            final int start = sha == null ? 0 : repository.indexOf(sha);
+            if (start < 0) {
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+
+            final int lastPage = Math.max(1, (repository.getCommitCount() - start + perPage - 1) / perPage);
+            final RecordedRepository.Page commits = repository.getPage(start + (page - 1) * perPage, perPage);
+            exchange.getResponseHeaders().set("ETag", commits.getEtag());
+            final String links = getLinks(repository, sha, page, perPage, lastPage);
+            if (!links.isEmpty()) {
+                exchange.getResponseHeaders().set("Link", links);
+            }
+            if (commits.getEtag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.increment();
+                send(exchange, 304, null);
+                return;
+            }
+            send(exchange, 200, commits.getBody());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        if (medianLatencyMillis <= 0) {
+            return;
+        }
+        final double latency = medianLatencyMillis * Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+        try {
+            TimeUnit.MICROSECONDS.sleep((long) (Math.min(latency, medianLatencyMillis * 20.0) * 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //e.g. <http://localhost:9090/repositories/1/commits?per_page=10&page=3>; rel="next", <...&page=12>; rel="last"
+    private String getLinks(final RecordedRepository repository, final String sha, final int page, final int perPage, final int lastPage) {
+        final String base = getUri() + "/repositories/" + repository.getId() + "/commits?" + (sha == null ? "" : "sha=" + sha + "&") + "per_page=" + perPage + "&page=";
+        final List<String> links = new ArrayList<>(4);
+        if (page > 1) {
+            links.add("<" + base + (page - 1) + ">; rel=\"prev\"");
+        }
+        if (page < lastPage) {
+            links.add("<" + base + (page + 1) + ">; rel=\"next\"");
+        }
+        if (page != lastPage) {
+            links.add("<" + base + lastPage + ">; rel=\"last\"");
+        }
+        if (page > 1) {
+            links.add("<" + base + 1 + ">; rel=\"first\"");
+        }
+        return String.join(", ", links);
+    }
+
+    private void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("X-RateLimit-Limit", String.valueOf(RATE_LIMIT));
+        exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(RATE_LIMIT - 1));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset", String.valueOf(Instant.now().plusSeconds(3600).getEpochSecond()));
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(final String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (final String parameter : query.split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                               URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static int parseInt(final String value, final int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
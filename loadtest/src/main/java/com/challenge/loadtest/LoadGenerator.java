@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+//Closed loop load : each of the concurrent workers sends a request for a random page of a random repository as soon as the previous
+//one is answered. Pages are skewed to the first ones, as users mostly read the latest commits. Latencies are measured from the request
+//being sent, so they don't include time a request would have waited for a busy worker (coordinated omission), throughput shows it instead
+final class LoadGenerator {
+
+    private final HttpClient client;
+    private final List<Target> targets;
+    private final Duration requestTimeout;
+    //seeds differ between runs (warm up, then measurement), and are the same from one load test to the next
+    private int runs;
+
+    LoadGenerator(final HttpClient httpClient, final List<Target> loadTargets, final Duration timeout) {
+        this.client = httpClient;
+        this.targets = loadTargets;
+        this.requestTimeout = timeout;
+    }
+
+    LoadResult run(final int concurrency, final Duration duration) throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        runs++;
+        try {
+            final long start = System.nanoTime();
+            final long end = start + duration.toNanos();
+            final List<Future<Worker>> workers = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                final Worker worker = new Worker(new Random(runs * 1_000_000L + i), end);
+                workers.add(executor.submit(worker::call));
+            }
+            final List<Worker> finished = new ArrayList<>(concurrency);
+            for (final Future<Worker> worker : workers) {
+                finished.add(worker.get());
+            }
+            return LoadResult.of(finished.stream().map(Worker::getLatencies).collect(Collectors.toList()),
+                                 finished.stream().map(Worker::getStatuses).collect(Collectors.toList()),
+                                 System.nanoTime() - start);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //Endpoint of a repository and the pages it has
+    static final class Target {
+        private final URI uri;
+        private final int pages;
+
+        Target(final URI endpoint, final int pageCount) {
+            this.uri = endpoint;
+            this.pages = Math.max(1, pageCount);
+        }
+    }
+
+    private final class Worker {
+        private final Random random;
+        private final long end;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private long[] latencies = new long[1024];
+        private int count;
+
+        private Worker(final Random seeded, final long endNanos) {
+            this.random = seeded;
+            this.end = endNanos;
+        }
+
+        private Worker call() throws InterruptedException {
+            while (System.nanoTime() < end) {
+                final Target target = targets.get(random.nextInt(targets.size()));
+                //squared uniform, half of the requests ask for the first quarter of the pages
+                final int page = 1 + (int) (target.pages * Math.pow(random.nextDouble(), 2));
+                final HttpRequest request = HttpRequest.newBuilder(URI.create(target.uri + "&page=" + page))
+                                                       .header("Accept", "application/json")
+                                                       .timeout(requestTimeout)
+                                                       .build();
+                final long sent = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    //connection errors and timeouts
+                    status = -1;
+                }
+                record(System.nanoTime() - sent, status);
+            }
+            return this;
+        }
+
+        private void record(final long latency, final int status) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            statuses.merge(status, 1L, Long::sum);
+        }
+
+        private long[] getLatencies() {
+            return Arrays.copyOf(latencies, count);
+        }
+
+        private Map<Integer, Long> getStatuses() {
+            return statuses;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+//Latency percentiles, throughput and response statuses of a load run
+final class LoadResult {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final int CONNECTION_ERROR = -1;
+
+    //sorted, in nanoseconds
+    private final long[] latencies;
+    private final Map<Integer, Long> statuses;
+    private final long durationNanos;
+
+    private LoadResult(final long[] sortedLatencies, final Map<Integer, Long> statusCounts, final long runNanos) {
+        this.latencies = sortedLatencies;
+        this.statuses = statusCounts;
+        this.durationNanos = runNanos;
+    }
+
+    static LoadResult of(final List<long[]> workerLatencies, final List<Map<Integer, Long>> workerStatuses, final long durationNanos) {
+        final long[] latencies = workerLatencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        workerStatuses.forEach(worker -> worker.forEach((status, count) -> statuses.merge(status, count, Long::sum)));
+        return new LoadResult(latencies, statuses, durationNanos);
+    }
+
+    long getRequests() {
+        return latencies.length;
+    }
+
+    double getThroughput() {
+        return latencies.length / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    //Latency under which the given percentage of the requests were answered, in milliseconds
+    double getPercentile(final double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        final int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return toMillis(latencies[Math.max(0, Math.min(index, latencies.length - 1))]);
+    }
+
+    double getMax() {
+        return latencies.length == 0 ? 0 : toMillis(latencies[latencies.length - 1]);
+    }
+
+    void print(final PrintStream out, final long gitHubRequests, final long gitHubNotModified) {
+        out.printf(Locale.US, "Requests        : %d in %.1fs, %.1f/s%n", getRequests(), durationNanos / 1e9, getThroughput());
+        final StringBuilder statusLine = new StringBuilder();
+        statuses.forEach((status, count) -> statusLine.append(status == CONNECTION_ERROR ? "failed" : status).append('=').append(count).append(' '));
+        out.println("Statuses        : " + statusLine.toString().trim());
+        final StringBuilder latencyLine = new StringBuilder();
+        for (final double percentile : PERCENTILES) {
+            latencyLine.append(String.format(Locale.US, "p%s=%.2f ", format(percentile), getPercentile(percentile)));
+        }
+        out.println("Latency (ms)    : " + latencyLine + String.format(Locale.US, "max=%.2f", getMax()));
+        out.printf(Locale.US, "GitHub API stub : %d requests (%.3f per request), %d not modified%n",
+                   gitHubRequests, getRequests() == 0 ? 0 : gitHubRequests / (double) getRequests(), gitHubNotModified);
+    }
+
+    void write(final File file, final ObjectMapper objectMapper, final Map<String, Object> settings, final long gitHubRequests, final long gitHubNotModified)
+        throws IOException {
+        final ObjectNode result = objectMapper.createObjectNode();
+        result.set("settings", objectMapper.valueToTree(settings));
+        result.put("requests", getRequests())
+              .put("durationSeconds", durationNanos / 1e9)
+              .put("throughput", getThroughput());
+        final ObjectNode statusCounts = result.putObject("statuses");
+        statuses.forEach((status, count) -> statusCounts.put(status == CONNECTION_ERROR ? "failed" : String.valueOf(status), count));
+        final ObjectNode latency = result.putObject("latencyMillis");
+        for (final double percentile : PERCENTILES) {
+            latency.put("p" + format(percentile), getPercentile(percentile));
+        }
+        latency.put("max", getMax());
+        result.putObject("gitHubApi").put("requests", gitHubRequests).put("notModified", gitHubNotModified);
+        if (file.getParentFile() != null) {
+            Files.createDirectories(file.getParentFile().toPath());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, result);
+    }
+
+    private static String format(final double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+//Load test of GET /commit-viewer/{user}/{repo} against a local GitHub API stub serving recorded repositories (see GitHubApiStub and Recordings).
+//Commands, options are system properties (-Dconcurrency=32), paths are relative to the working folder :
+//  run                        starts the stub and the packaged application, then drives the load and reports latencies and throughput
+//  generate <owner>/<repo>    records a generated repository of -Dcommits (1000) commits
+//  record <owner>/<repo>      records -Dmax-commits (1000) commits of a GitHub repository and a bare clone of it (-Dtoken or GITHUB_TOKEN)
+//Without recordings, run generates two repositories first (generated/small and generated/large)
+public final class LoadTestRunner {
+
+    private static final String COMMAND_RUN = "run";
+    private static final String COMMAND_GENERATE = "generate";
+    private static final String COMMAND_RECORD = "record";
+    private static final String BACKEND_CLI = "cli";
+    private static final String ENDPOINT_REACTIVE = "reactive";
+    private static final Map<String, Integer> DEFAULT_REPOSITORIES = Map.of("generated/small", 200, "generated/large", 5000);
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException, ExecutionException {
+        final String command = args.length == 0 ? COMMAND_RUN : args[0];
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final Recordings recordings = new Recordings(new File(System.getProperty("recordings", "target/loadtest/recordings")), objectMapper);
+
+        if (COMMAND_GENERATE.equals(command) && args.length == 2) {
+            recordings.generate(args[1], Integer.getInteger("commits", 1000));
+            System.out.println("Generated " + args[1] + " in " + recordings.getFolder());
+        } else if (COMMAND_RECORD.equals(command) && args.length == 2) {
+            recordings.record(args[1], Integer.getInteger("max-commits", 1000), System.getProperty("token", System.getenv("GITHUB_TOKEN")));
+            System.out.println("Recorded " + args[1] + " in " + recordings.getFolder());
+        } else if (COMMAND_RUN.equals(command)) {
+            run(recordings, objectMapper);
+        } else {
+            System.out.println("Usage : java [-D<option>=<value>...] -jar loadtest.jar [run | generate <owner>/<repo> | record <owner>/<repo>]");
+            System.exit(1);
+        }
+    }
+
+    private static void run(final Recordings recordings, final ObjectMapper objectMapper) throws IOException, InterruptedException, ExecutionException {
+        final Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("concurrency", Integer.getInteger("concurrency", 16));
+        settings.put("durationSeconds", Integer.getInteger("duration", 30));
+        settings.put("warmupSeconds", Integer.getInteger("warmup", 10));
+        settings.put("backend", System.getProperty("backend", "api"));
+        settings.put("endpoint", System.getProperty("endpoint", "default"));
+        settings.put("perPage", Integer.getInteger("per-page", 10));
+        //0 reads every page of each repository
+        settings.put("maxPages", Integer.getInteger("max-pages", 0));
+        settings.put("stubLatencyMillis", Long.getLong("stub-latency-ms", 80));
+        settings.put("stubLatencySigma", Double.parseDouble(System.getProperty("stub-latency-sigma", "0.5")));
+
+        if (recordings.list().isEmpty()) {
+            for (final Map.Entry<String, Integer> repository : DEFAULT_REPOSITORIES.entrySet()) {
+                recordings.generate(repository.getKey(), repository.getValue());
+            }
+        }
+        final List<String> names = System.getProperty("repos") == null ? recordings.list() : Arrays.asList(System.getProperty("repos").split(","));
+        final List<RecordedRepository> repositories = new ArrayList<>(names.size());
+        for (final String name : names) {
+            repositories.add(recordings.read(name.trim(), repositories.size() + 1L));
+        }
+        settings.put("repositories", repositories.stream().map(repository -> repository.getFullName() + " (" + repository.getCommitCount() + " commits)")
+                                                 .collect(Collectors.toList()));
+
+        final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(10)).build();
+        try (GitHubApiStub stub = new GitHubApiStub(repositories, Integer.getInteger("stub-port", 0), Integer.getInteger("stub-threads", 200),
+                                                    (Long) settings.get("stubLatencyMillis"), (Double) settings.get("stubLatencySigma"))) {
+            final Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("github-api/mp-rest/url", stub.getUri().toString());
+            properties.put("commit-viewer.github-url", System.getProperty("git-url", "file://" + recordings.getGitFolder().getAbsolutePath() + "/"));
+            properties.put("commit-viewer.force-use-cli", String.valueOf(BACKEND_CLI.equals(settings.get("backend"))));
+            properties.put("commit-viewer.mirror-cache.path", new File(System.getProperty("work", "target/loadtest"), "mirrors").getAbsolutePath());
+
+            final String target = System.getProperty("target");
+            if (target == null) {
+                runAgainstApplication(client, stub, properties, settings, repositories, objectMapper);
+            } else {
+                //already running, it has to be started with these properties (and a fixed -Dstub-port)
+                System.out.println("Application at " + target + ", configured with :");
+                properties.forEach((name, value) -> System.out.println("  -D" + name + "=" + value));
+                drive(client, URI.create(target), stub, settings, repositories, objectMapper);
+            }
+        }
+    }
+
+    private static void runAgainstApplication(final HttpClient client,
+                                              final GitHubApiStub stub,
+                                              final Map<String, String> properties,
+                                              final Map<String, Object> settings,
+                                              final List<RecordedRepository> repositories,
+                                              final ObjectMapper objectMapper) throws IOException, InterruptedException, ExecutionException {
+        final int port = Integer.getInteger("app-port", 8081);
+        if (isListening(client, URI.create("http://localhost:" + port))) {
+            throw new IOException("Port " + port + " is already in use, stop what listens on it or set -Dapp-port");
+        }
+        final File work = new File(System.getProperty("work", "target/loadtest"));
+        Recordings.delete(new File(properties.get("commit-viewer.mirror-cache.path")));
+        work.mkdirs();
+        final String javaOptions = System.getProperty("app-options", "").trim();
+        try (ApplicationProcess application = ApplicationProcess.start(new File(System.getProperty("app", "target/quarkus-app/quarkus-run.jar")),
+                                                                        javaOptions.isEmpty() ? List.of() : Arrays.asList(javaOptions.split("\\s+")),
+                                                                        properties, port, new File(work, "app.log"))) {
+            application.awaitReady(client, Duration.ofSeconds(120));
+            drive(client, application.getUri(), stub, settings, repositories, objectMapper);
+        }
+    }
+
+    private static void drive(final HttpClient client,
+                              final URI application,
+                              final GitHubApiStub stub,
+                              final Map<String, Object> settings,
+                              final List<RecordedRepository> repositories,
+                              final ObjectMapper objectMapper) throws IOException, InterruptedException, ExecutionException {
+        final int perPage = (Integer) settings.get("perPage");
+        final int maxPages = (Integer) settings.get("maxPages");
+        final String suffix = ENDPOINT_REACTIVE.equals(settings.get("endpoint")) ? "/" + ENDPOINT_REACTIVE : "";
+        final List<LoadGenerator.Target> targets = repositories.stream().map(repository -> {
+            final int pages = (repository.getCommitCount() + perPage - 1) / perPage;
+            return new LoadGenerator.Target(application.resolve("/commit-viewer/" + repository.getFullName() + suffix + "?per_page=" + perPage),
+                                            maxPages > 0 ? Math.min(maxPages, pages) : pages);
+        }).collect(Collectors.toList());
+        final LoadGenerator generator = new LoadGenerator(client, targets, Duration.ofSeconds(Integer.getInteger("timeout", 60)));
+        final int concurrency = (Integer) settings.get("concurrency");
+
+        System.out.println("Load test of " + application + " : " + objectMapper.writeValueAsString(settings));
+        final int warmup = (Integer) settings.get("warmupSeconds");
+        if (warmup > 0) {
+            System.out.println("Warming up for " + warmup + "s");
+            generator.run(concurrency, Duration.ofSeconds(warmup));
+        }
+        final long gitHubRequests = stub.getRequests();
+        final long gitHubNotModified = stub.getNotModified();
+        System.out.println("Measuring for " + settings.get("durationSeconds") + "s");
+        final LoadResult result = generator.run(concurrency, Duration.ofSeconds((Integer) settings.get("durationSeconds")));
+        final long measuredGitHubRequests = stub.getRequests() - gitHubRequests;
+        final long measuredGitHubNotModified = stub.getNotModified() - gitHubNotModified;
+
+        result.print(System.out, measuredGitHubRequests, measuredGitHubNotModified);
+        final File resultFile = new File(System.getProperty("result", "target/loadtest/result.json"));
+        result.write(resultFile, objectMapper, settings, measuredGitHubRequests, measuredGitHubNotModified);
+        System.out.println("Result saved to " + resultFile);
+    }
+
+    private static boolean isListening(final HttpClient client, final URI uri) throws InterruptedException {
+        try {
+            client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (ConnectException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
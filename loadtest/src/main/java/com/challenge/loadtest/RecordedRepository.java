@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Commits of a recorded repository, as returned by GET /repos/{owner}/{repo}/commits (newest first), sliced in pages.
+//Pages are encoded once, so the stub spends its time waiting (as GitHub does) rather than competing for CPU with the application
+final class RecordedRepository {
+
+    private final String owner;
+    private final String repo;
+    private final long id;
+    private final List<JsonNode> commits;
+    private final Map<String, Integer> indexBySha = new HashMap<>();
+    private final ConcurrentMap<String, Page> pages = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+
+    private RecordedRepository(final String ownerName, final String repoName, final long repoId, final List<JsonNode> history, final ObjectMapper mapper) {
+        this.owner = ownerName;
+        this.repo = repoName;
+        this.id = repoId;
+        this.commits = history;
+        this.objectMapper = mapper;
+        for (int i = 0; i < commits.size(); i++) {
+            indexBySha.put(commits.get(i).path("sha").asText(), i);
+        }
+    }
+
+    static RecordedRepository read(final File file, final String owner, final String repo, final long id, final ObjectMapper objectMapper) throws IOException {
+        final JsonNode recording = objectMapper.readTree(file);
+        if (!recording.isArray()) {
+            throw new IOException("Not a list of commits : " + file);
+        }
+        final List<JsonNode> commits = new ArrayList<>(recording.size());
+        recording.forEach(commits::add);
+        return new RecordedRepository(owner, repo, id, commits, objectMapper);
+    }
+
+    String getFullName() {
+        return owner + "/" + repo;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getCommitCount() {
+        return commits.size();
+    }
+
+    //Position of the commit in the history, -1 when it isn't recorded
+    int indexOf(final String sha) {
+        return indexBySha.getOrDefault(sha, -1);
+    }
+
+    //Commits from..from+perPage, empty past the end of the history
+    Page getPage(final int from, final int perPage) {
+        return pages.computeIfAbsent(from + ":" + perPage, key -> encode(from, perPage));
+    }
+
+    private Page encode(final int from, final int perPage) {
+        final ArrayNode page = objectMapper.createArrayNode();
+        for (int i = from; i < Math.min(from + perPage, commits.size()); i++) {
+            page.add(commits.get(i));
+        }
+        try {
+            final byte[] body = objectMapper.writeValueAsBytes(page);
+            return new Page(body, toEtag(body));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //GitHub sends weak ETags on commit lists
+    private static String toEtag(final byte[] body) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            final StringBuilder etag = new StringBuilder("W/\"");
+            for (int i = 0; i < 16; i++) {
+                etag.append(String.format("%02x", digest[i]));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static final class Page {
+        private final byte[] body;
+        private final String etag;
+
+        private Page(final byte[] json, final String tag) {
+            this.body = json;
+            this.etag = tag;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+    }
+}
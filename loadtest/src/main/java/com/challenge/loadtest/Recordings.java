@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+//Folder of recorded repositories, each one recorded twice :
+//  api/<owner>/<repo>.json  its commits as listed by the GitHub API (newest first), served by GitHubApiStub
+//  git/<owner>/<repo>       a bare clone, cloned by the application on the CLI path (file:// url, or git daemon --base-path=git)
+//Repositories are recorded from GitHub, or generated with a linear history so runs don't depend on the network
+final class Recordings {
+
+    private static final String API_FOLDER = "api";
+    private static final String GIT_FOLDER = "git";
+    private static final String JSON = ".json";
+    private static final int MAX_PER_PAGE = 100;
+    private static final String GITHUB_API_URL = "https://api.github.com/repos/";
+    private static final String[] AUTHORS = {"Paulo Carrasqueira <pjcarrasqueira@gmail.com>", "Ada Lovelace <ada@example.com>", "Alan Turing <alan@example.com>"};
+    private static final Instant FIRST_COMMIT_DATE = Instant.parse("2021-01-01T00:00:00Z");
+    //git log fields, %x1f between fields, %x1e after each commit
+    private static final String LOG_FORMAT = "%H%x1f%T%x1f%P%x1f%an%x1f%ae%x1f%aI%x1f%cn%x1f%ce%x1f%cI%x1f%B%x1e";
+
+    private final File folder;
+    private final ObjectMapper objectMapper;
+
+    Recordings(final File recordingsFolder, final ObjectMapper mapper) {
+        this.folder = recordingsFolder;
+        this.objectMapper = mapper;
+    }
+
+    File getFolder() {
+        return folder;
+    }
+
+    File getGitFolder() {
+        return new File(folder, GIT_FOLDER);
+    }
+
+    //owner/repo of the recorded repositories
+    List<String> list() {
+        final List<String> repositories = new ArrayList<>();
+        final File[] owners = Optional.ofNullable(new File(folder, API_FOLDER).listFiles(File::isDirectory)).orElse(new File[0]);
+        for (final File owner : owners) {
+            final File[] recordings = Optional.ofNullable(owner.listFiles((parent, name) -> name.endsWith(JSON))).orElse(new File[0]);
+            Arrays.stream(recordings).map(recording -> owner.getName() + "/" + recording.getName().substring(0, recording.getName().length() - JSON.length()))
+                  .forEach(repositories::add);
+        }
+        repositories.sort(Comparator.naturalOrder());
+        return repositories;
+    }
+
+    RecordedRepository read(final String fullName, final long id) throws IOException {
+        final String[] name = split(fullName);
+        return RecordedRepository.read(getApiFile(fullName), name[0], name[1], id, objectMapper);
+    }
+
+    //Up to maxCommits commits of the default branch from the GitHub API (a token raises the rate limit from 60 to 5000 requests an hour), and a bare clone
+    void record(final String fullName, final int maxCommits, final String token) throws IOException, InterruptedException {
+        final HttpClient client = HttpClient.newHttpClient();
+        final ArrayNode commits = objectMapper.createArrayNode();
+        for (int page = 1; commits.size() < maxCommits; page++) {
+            final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(GITHUB_API_URL + fullName + "/commits?per_page=" + MAX_PER_PAGE + "&page=" + page))
+                                                           .header("Accept", "application/vnd.github.v3+json");
+            if (token != null) {
+                request.header("Authorization", "token " + token);
+            }
+            final HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException("GitHub API answered " + response.statusCode() + " : " + new String(response.body(), StandardCharsets.UTF_8));
+            }
+            final JsonNode pageCommits = objectMapper.readTree(response.body());
+            pageCommits.forEach(commit -> {
+                if (commits.size() < maxCommits) {
+                    commits.add(commit);
+                }
+            });
+            if (pageCommits.size() < MAX_PER_PAGE) {
+                break;
+            }
+        }
+        writeApiFile(fullName, commits);
+
+        final File repository = getGitRepository(fullName);
+        delete(repository);
+        git(null, null, "clone", "--bare", "--quiet", "https://github.com/" + fullName, repository.getAbsolutePath());
+    }
+
+    //Linear history of the given number of commits, one file changed by each. Names, emails and dates are fixed, so the same
+    //commit count always gives the same shas
+    void generate(final String fullName, final int commitCount) throws IOException, InterruptedException {
+        final File repository = getGitRepository(fullName);
+        delete(repository);
+        git(null, null, "init", "--bare", "--quiet", repository.getAbsolutePath());
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 1; i <= commitCount; i++) {
+            final String author = AUTHORS[i % AUTHORS.length];
+            final long date = FIRST_COMMIT_DATE.getEpochSecond() + i * 3600L;
+            final String message = "Change " + i + " of " + fullName + "\n\nUpdated the counter to " + i + " in counter.txt";
+            final String content = i + "\n";
+            stream.writeBytes(("commit refs/heads/main\nmark :" + i + "\n"
+                               + "author " + author + " " + date + " +0000\n"
+                               + "committer " + author + " " + date + " +0000\n"
+                               + "data " + message.getBytes(StandardCharsets.UTF_8).length + "\n" + message + "\n"
+                               + (i > 1 ? "from :" + (i - 1) + "\n" : "")
+                               + "M 644 inline counter.txt\ndata " + content.length() + "\n" + content + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        git(repository, stream.toByteArray(), "fast-import", "--quiet");
+        git(repository, null, "symbolic-ref", "HEAD", "refs/heads/main");
+
+        writeApiFile(fullName, toApiCommits(fullName, git(repository, null, "log", "--format=" + LOG_FORMAT)));
+    }
+
+    //git log output as GitHub API commits, with the fields the API returns (URLs point to GitHub)
+    private ArrayNode toApiCommits(final String fullName, final String log) {
+        final String apiUrl = GITHUB_API_URL + fullName;
+        final ArrayNode commits = objectMapper.createArrayNode();
+        for (final String record : log.split("\u001e")) {
+            final String[] fields = record.strip().split("\u001f", -1);
+            if (fields.length < 10) {
+                continue;
+            }
+            final String sha = fields[0];
+            final ObjectNode commit = commits.addObject();
+            commit.put("sha", sha)
+                  .put("node_id", "C_" + sha.substring(0, 20));
+            final ObjectNode details = commit.putObject("commit");
+            details.putObject("author").put("name", fields[3]).put("email", fields[4]).put("date", OffsetDateTime.parse(fields[5]).toInstant().toString());
+            details.putObject("committer").put("name", fields[6]).put("email", fields[7]).put("date", OffsetDateTime.parse(fields[8]).toInstant().toString());
+            details.put("message", fields[9].strip());
+            details.putObject("tree").put("sha", fields[1]).put("url", apiUrl + "/git/trees/" + fields[1]);
+            details.put("url", apiUrl + "/git/commits/" + sha).put("comment_count", 0);
+            details.putObject("verification").put("verified", false).put("reason", "unsigned").putNull("signature").putNull("payload");
+            commit.put("url", apiUrl + "/commits/" + sha)
+                  .put("html_url", "https://github.com/" + fullName + "/commit/" + sha)
+                  .put("comments_url", apiUrl + "/commits/" + sha + "/comments");
+            final String login = fields[4].contains("@") ? fields[4].substring(0, fields[4].indexOf('@')) : fields[4];
+            commit.putObject("author").put("login", login).put("id", login.hashCode() & Integer.MAX_VALUE)
+                  .put("url", "https://api.github.com/users/" + login).put("html_url", "https://github.com/" + login).put("type", "User").put("site_admin", false);
+            commit.set("committer", commit.get("author"));
+            final ArrayNode parents = commit.putArray("parents");
+            Arrays.stream(fields[2].split(" ")).filter(parent -> !parent.isEmpty())
+                  .forEach(parent -> parents.addObject().put("sha", parent).put("url", apiUrl + "/commits/" + parent)
+                                            .put("html_url", "https://github.com/" + fullName + "/commit/" + parent));
+        }
+        return commits;
+    }
+
+    private File getApiFile(final String fullName) {
+        return new File(new File(folder, API_FOLDER), fullName + JSON);
+    }
+
+    private File getGitRepository(final String fullName) {
+        return new File(getGitFolder(), fullName);
+    }
+
+    private void writeApiFile(final String fullName, final ArrayNode commits) throws IOException {
+        final File file = getApiFile(fullName);
+        Files.createDirectories(file.getParentFile().toPath());
+        objectMapper.writeValue(file, commits);
+    }
+
+    //Runs git, failing with its error output when it exits with an error. Returns the standard output
+    private static String git(final File directory, final byte[] input, final String... arguments) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>(arguments.length + 1);
+        command.add("git");
+        command.addAll(Arrays.asList(arguments));
+        final Process process = new ProcessBuilder(command).directory(directory).redirectError(ProcessBuilder.Redirect.PIPE).start();
+        final CompletableFuture<byte[]> errors = CompletableFuture.supplyAsync(() -> readAll(process.getErrorStream()));
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (input != null) {
+                stdin.write(input);
+            }
+        }
+        final String output = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IOException("git " + arguments[0] + " failed : " + new String(errors.join(), StandardCharsets.UTF_8));
+        }
+        return output;
+    }
+
+    private static byte[] readAll(final InputStream stream) {
+        try {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    static void delete(final File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String[] split(final String fullName) {
+        final String[] name = fullName.split("/");
+        if (name.length != 2) {
+            throw new IllegalArgumentException("Repositories are given as owner/repo : " + fullName);
+        }
+        return name;
+    }
+}
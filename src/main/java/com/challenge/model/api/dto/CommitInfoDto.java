@@ -7,6 +7,7 @@ package com.challenge.model.api.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -18,6 +19,7 @@ import java.time.Instant;
 @AllArgsConstructor(staticName = "of")
 @NoArgsConstructor
 @JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection
 public class CommitInfoDto {
 
     @JsonProperty("sha")
@@ -5,7 +5,9 @@
 
 package com.challenge.model.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.Builder;
 import lombok.Data;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
@@ -13,8 +15,11 @@ import org.eclipse.microprofile.openapi.annotations.media.Schema;
 
 import java.util.List;
 
+//Cursor pages (after/limit) don't carry page numbers or totals, they carry the cursor of the next page instead
 @Data
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@RegisterForReflection
 public class CommitInfoPageDto {
 
     @JsonProperty("items")
@@ -29,7 +34,7 @@ public class CommitInfoPageDto {
         description = "The requested page.",
         example = "1"
     )
-    private int page;
+    private Integer page;
 
     @JsonProperty("per_page")
     @Schema(
@@ -51,7 +56,7 @@ public class CommitInfoPageDto {
         description = "Total number of commits.",
         example = "123"
     )
-    private long total;
+    private Long total;
 
     @JsonProperty("total_pages")
     @Schema(
@@ -59,5 +64,12 @@ public class CommitInfoPageDto {
         example = "3",
         name = "total_pages"
     )
-    private int totalPages;
+    private Integer totalPages;
+
+    @JsonProperty("next")
+    @Schema(
+        description = "Cursor of the next page, absent on the last page. Only on cursor pages.",
+        example = "Y2UyMDZmZjk5ZTI3NWZkOTlkNTdkMWUwMjRjYzIyZTNkYjliYTI4Mg"
+    )
+    private String next;
 }
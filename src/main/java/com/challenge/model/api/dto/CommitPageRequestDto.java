@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
+
+//Page of a repository asked in a batch, same parameters as the commit list endpoint
+@Data
+@AllArgsConstructor(staticName = "of")
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection
+public class CommitPageRequestDto {
+
+    @JsonProperty("user")
+    @Schema(
+        description = "Name of the user that owns the repo.",
+        example = "pjcarrasqueira"
+    )
+    @NotBlank
+    private String user;
+
+    @JsonProperty("repository")
+    @Schema(
+        description = "Name of the repo to get the commits.",
+        example = "commit-viewer"
+    )
+    @NotBlank
+    private String repository;
+
+    @JsonProperty("page")
+    @Schema(
+        description = "Number of the requested page.",
+        example = "1",
+        defaultValue = "1"
+    )
+    @Digits(integer = 10, fraction = 0)
+    @Positive
+    private Integer page = 1;
+
+    @JsonProperty("per_page")
+    @Schema(
+        description = "Max number of the items in the page.",
+        example = "50",
+        name = "per_page",
+        defaultValue = "10"
+    )
+    @Max(100)
+    @Digits(integer = 3, fraction = 0)
+    @Positive
+    private Integer perPage = 10;
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Builder;
+import lombok.Data;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+//Outcome of a page asked in a batch, either the page or the error the commit list endpoint would have answered
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@RegisterForReflection(ignoreNested = false)
+public class CommitPageResultDto {
+
+    @JsonProperty("user")
+    @Schema(
+        description = "Name of the user that owns the repo.",
+        example = "pjcarrasqueira"
+    )
+    private String user;
+
+    @JsonProperty("repository")
+    @Schema(
+        description = "Name of the repo.",
+        example = "commit-viewer"
+    )
+    private String repository;
+
+    @JsonProperty("page")
+    @Schema(
+        description = "The requested page.",
+        example = "1"
+    )
+    private Integer page;
+
+    @JsonProperty("per_page")
+    @Schema(
+        description = "The requested commits per page.",
+        example = "50",
+        name = "per_page"
+    )
+    private Integer perPage;
+
+    @JsonProperty("status")
+    @Schema(
+        description = "HTTP status the commit list endpoint would have answered.",
+        example = "200"
+    )
+    private int status;
+
+    @JsonProperty("result")
+    @Schema(
+        description = "The page of commits, when status is 200."
+    )
+    private CommitInfoPageDto result;
+
+    @JsonProperty("error")
+    @Schema(
+        description = "The error, when status isn't 200."
+    )
+    private ErrorDto error;
+
+    @Data
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ErrorDto {
+
+        @JsonProperty("code")
+        @Schema(
+            description = "Error code.",
+            example = "2"
+        )
+        private String code;
+
+        @JsonProperty("message")
+        @Schema(
+            description = "Error message.",
+            example = "Repository not found or you don't have the necessary permissions"
+        )
+        private String message;
+
+        @JsonProperty("description")
+        @Schema(
+            description = "Error details.",
+            example = "Repository not found : https://github.com/pjcarrasqueira/unknown"
+        )
+        private String description;
+    }
+}
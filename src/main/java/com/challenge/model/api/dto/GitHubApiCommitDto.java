@@ -7,16 +7,20 @@ package com.challenge.model.api.dto;
 
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import lombok.Data;
 
 import java.time.Instant;
+import java.util.List;
 
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection(ignoreNested = false)
 public class GitHubApiCommitDto {
 
     private String sha;
     private Commit commit;
+    private List<Parent> parents;
 
     @Data
     public static class Commit {
@@ -31,4 +35,9 @@ public class GitHubApiCommitDto {
         private Instant date;
     }
 
+    @Data
+    public static class Parent {
+        private String sha;
+    }
+
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Data;
+
+import java.util.List;
+
+//Comparison of two commits, as returned by the GitHub API compare endpoint
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection
+public class GitHubApiCompareDto {
+
+    //ahead, behind, diverged or identical
+    private String status;
+    @JsonProperty("ahead_by")
+    private int aheadBy;
+    //commits of head not reachable from base, oldest first (at most 250)
+    private List<GitHubApiCommitDto> commits;
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+//Commit history of a branch, as returned by the GitHub GraphQL API
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection(ignoreNested = false)
+public class GitHubGraphQlHistoryDto {
+
+    private long totalCount;
+    private List<Commit> nodes;
+    //only asked by cursor pages
+    private PageInfo pageInfo;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Commit {
+        private String oid;
+        private String message;
+        private Author author;
+        //only asked by cursor pages
+        private Parents parents;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Parents {
+        private List<Parent> nodes;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Parent {
+        private String oid;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class PageInfo {
+        private boolean hasNextPage;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Author {
+        private String name;
+        private String email;
+        //git timestamps keep the author time zone
+        private OffsetDateTime date;
+    }
+}
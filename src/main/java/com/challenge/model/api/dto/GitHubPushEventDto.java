@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Data;
+
+//Payload of a GitHub push webhook, only what's needed to follow the default branch
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+@RegisterForReflection(ignoreNested = false)
+public class GitHubPushEventDto {
+
+    //pushed ref, e.g. refs/heads/main
+    private String ref;
+    //sha of the ref before and after the push, all zeros when the ref was created or deleted
+    private String before;
+    private String after;
+    private Repository repository;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Repository {
+        private String name;
+        private Owner owner;
+        @JsonProperty("default_branch")
+        private String defaultBranch;
+        //epoch seconds of the push
+        @JsonProperty("pushed_at")
+        private Long pushedAt;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Owner {
+        private String login;
+        //push payloads name the owner, other payloads give its login
+        private String name;
+    }
+}
@@ -19,7 +19,9 @@ public enum ErrorCodeImpl implements ErrorCode {
     UNKNOWN_ERROR("1", "An unknown error has occurred.", HttpURLConnection.HTTP_INTERNAL_ERROR),
     NOT_FOUND("2", "Repository not found or you don't have the necessary permissions", HttpURLConnection.HTTP_NOT_FOUND),
     BAD_REQUEST("3", "Request not valid", HttpURLConnection.HTTP_BAD_REQUEST),
-    TIME_OUT("4", "Request timeout", HttpURLConnection.HTTP_CLIENT_TIMEOUT);
+    TIME_OUT("4", "Request timeout", HttpURLConnection.HTTP_CLIENT_TIMEOUT),
+    SERVICE_UNAVAILABLE("5", "Service busy, try again later", HttpURLConnection.HTTP_UNAVAILABLE),
+    UNAUTHORIZED("6", "Request signature not valid", HttpURLConnection.HTTP_UNAUTHORIZED);
 
     private final String code;
     private final String message;
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.model.api.exception;
+
+//GitHub API rate limit is reached, retrying can't help until the window resets but falling back to the git CLI does
+public class RateLimitedException extends CommitViewerException {
+
+    public RateLimitedException(final String desc) {
+        super(ErrorCodeImpl.SERVICE_UNAVAILABLE, desc);
+    }
+}
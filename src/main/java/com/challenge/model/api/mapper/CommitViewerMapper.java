@@ -7,8 +7,10 @@ package com.challenge.model.api.mapper;
 
 import com.challenge.model.api.dto.CommitInfoDto;
 import com.challenge.model.api.dto.GitHubApiCommitDto;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.challenge.model.api.dto.GitHubGraphQlHistoryDto;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.mapstruct.IterableMapping;
 import org.mapstruct.Mapper;
@@ -16,7 +18,12 @@ import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 
 import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Mapper(componentModel = "cdi")
 public abstract class CommitViewerMapper {
@@ -24,9 +31,27 @@ public abstract class CommitViewerMapper {
     @Inject
     ObjectMapper objectMapper;
 
-    public List<GitHubApiCommitDto> gitHubApiResponseToGitHubApiCommitDto(final String response)
-        throws JsonProcessingException {
-        return objectMapper.readValue(response, new TypeReference<List<GitHubApiCommitDto>>() { });
+    //Map GitHub API commit list response to our CommitInfoDto while it's read, token by token. Only sha, message and author
+    //are kept, the rest of each commit (committer, tree, parents, verification, urls...) is skipped without being built
+    public List<CommitInfoDto> gitHubApiResponseToCommitInfoDto(final InputStream response) throws IOException {
+        return gitHubApiResponseToCommitInfoDto(response, null);
+    }
+
+    //Same, keeping the parent shas of each commit in parents
+    public List<CommitInfoDto> gitHubApiResponseToCommitInfoDto(final InputStream response, final Map<String, List<String>> parents) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(response)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a list of commits");
+            }
+            final List<CommitInfoDto> commits = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                commits.add(readCommit(parser, parents));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected a commit");
+            }
+            return commits;
+        }
     }
 
     //Map GitHub API response to our CommitInfoDto
@@ -40,4 +65,84 @@ public abstract class CommitViewerMapper {
     //Iterable Mapper to get List of CommitInfoDto from a List of GitHubApiCommitDto
     @IterableMapping(qualifiedByName = "gitHubApiCommitDtoToCommitInfoDto")
     public abstract List<CommitInfoDto> gitHubApiCommitDtoListToCommitInfoDtoList(List<GitHubApiCommitDto> gitHubApiCommit);
+
+    //Map GitHub GraphQL API history commits to our CommitInfoDto
+    @Mapping(target = "sha", source = "oid")
+    @Mapping(target = "date", expression = "java(commit.getAuthor().getDate().toInstant())")
+    @Mapping(target = "author", expression = "java(commit.getAuthor().getName() + \" <\" + commit.getAuthor().getEmail() + \">\")")
+    @Named("gitHubGraphQlCommitToCommitInfoDto")
+    public abstract CommitInfoDto gitHubGraphQlCommitToCommitInfoDto(GitHubGraphQlHistoryDto.Commit commit);
+
+    @IterableMapping(qualifiedByName = "gitHubGraphQlCommitToCommitInfoDto")
+    public abstract List<CommitInfoDto> gitHubGraphQlCommitListToCommitInfoDtoList(List<GitHubGraphQlHistoryDto.Commit> commits);
+
+    private CommitInfoDto readCommit(final JsonParser parser, final Map<String, List<String>> parents) throws IOException {
+        final CommitInfoDto commitInfo = new CommitInfoDto();
+        final List<String> parentShas = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("sha".equals(field)) {
+                commitInfo.setSha(parser.getValueAsString());
+            } else if ("commit".equals(field) && value == JsonToken.START_OBJECT) {
+                readCommitDetails(parser, commitInfo);
+            } else if ("parents".equals(field) && value == JsonToken.START_ARRAY && parents != null) {
+                readParents(parser, parentShas);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (parents != null) {
+            parents.put(commitInfo.getSha(), parentShas);
+        }
+        return commitInfo;
+    }
+
+    private void readParents(final JsonParser parser, final List<String> parentShas) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("sha".equals(field)) {
+                    parentShas.add(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readCommitDetails(final JsonParser parser, final CommitInfoDto commitInfo) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("message".equals(field)) {
+                commitInfo.setMessage(parser.getValueAsString());
+            } else if ("author".equals(field) && value == JsonToken.START_OBJECT) {
+                readAuthor(parser, commitInfo);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readAuthor(final JsonParser parser, final CommitInfoDto commitInfo) throws IOException {
+        String name = null;
+        String email = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("email".equals(field)) {
+                email = parser.getValueAsString();
+            } else if ("date".equals(field)) {
+                //same date formats as the object mapper
+                commitInfo.setDate(parser.readValueAs(Instant.class));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        commitInfo.setAuthor(name + " <" + email + ">");
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.SingleFlight;
+import io.smallrye.mutiny.Uni;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Total number of commits per repository, tied to the HEAD sha it was computed for.
+//Totals are computed with a single per_page=1 request: the "last" link page number is the number of commits.
+//Stale totals are still served while they are refreshed in background, refreshes wait for the rate limit window to reset when it runs low
+@ApplicationScoped
+@Slf4j
+public class CommitCountIndex {
+
+    private static final String COUNT_CALL = "count";
+
+    @ConfigProperty(name = "commit-viewer.count-index.refresh-seconds", defaultValue = "60")
+    Long refreshSeconds;
+
+    @ConfigProperty(name = "commit-viewer.count-index.refresh-threads", defaultValue = "2")
+    Integer refreshThreads;
+
+    @Inject
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @Inject
+    CommitViewerMapper commitViewerMapper;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitHubApiErrors gitHubApiErrors;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final SingleFlight<String, Entry> countFlights = new SingleFlight<>("GitHub API count request");
+
+    private ScheduledExecutorService refreshExecutor;
+
+    @PostConstruct
+    void init() {
+        refreshExecutor = Executors.newScheduledThreadPool(refreshThreads);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    //Total for the given HEAD, only if it's already known
+    public Optional<Long> getTotal(final String user, final String repo, final String headSha) {
+        final Entry entry = entries.get(getKey(user, repo));
+        if (entry != null && headSha != null && headSha.equals(entry.getHeadSha())) {
+            return Optional.of(entry.getTotal());
+        }
+        return Optional.empty();
+    }
+
+    //Total for the latest known HEAD. Computed on first use, refreshed in background afterwards
+    public long getTotal(final String user, final String repo) throws InterruptedException {
+        final String key = getKey(user, repo);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            log.debug("CommitViewer : Commit count of " + key + " unknown, computing it");
+            return computeTotal(user, repo, null).getTotal();
+        }
+        if (isStale(entry)) {
+            scheduleRefresh(user, repo, entry);
+        }
+        return entry.getTotal();
+    }
+
+    //Same as getTotal, without blocking the caller when the total has to be computed
+    public Uni<Long> getTotalAsync(final String user, final String repo) {
+        final String key = getKey(user, repo);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            log.debug("CommitViewer : Commit count of " + key + " unknown, computing it");
+            return computeTotalAsync(user, repo, null).map(Entry::getTotal);
+        }
+        if (isStale(entry)) {
+            scheduleRefresh(user, repo, entry);
+        }
+        return Uni.createFrom().item(entry.getTotal());
+    }
+
+    //Starts computing the total of a repo the index doesn't know yet, so the call runs while the page is fetched.
+    //Empty when the index already has a total (possibly stale, refreshed in background) for the repo
+    public Optional<CompletableFuture<Long>> prefetchTotal(final String user, final String repo) {
+        if (entries.containsKey(getKey(user, repo))) {
+            return Optional.empty();
+        }
+        log.debug("CommitViewer : Commit count of " + getKey(user, repo) + " unknown, computing it while the page is fetched");
+        return Optional.of(computeTotalAsync(user, repo, null).map(Entry::getTotal).subscribeAsCompletionStage());
+    }
+
+    //Total obtained as a side effect of another request (e.g. first page holding every commit)
+    public void update(final String user, final String repo, final String headSha, final long total) {
+        entries.put(getKey(user, repo), new Entry(headSha, total, null, System.currentTimeMillis()));
+    }
+
+    public SingleFlight<String, ?> getCountFlights() {
+        return countFlights;
+    }
+
+    public void invalidate(final String user, final String repo) {
+        entries.remove(getKey(user, repo));
+    }
+
+    //Drops the total unless it was computed for the given HEAD (e.g. by a concurrent request)
+    public void invalidate(final String user, final String repo, final String headSha) {
+        entries.computeIfPresent(getKey(user, repo), (key, entry) -> headSha.equals(entry.getHeadSha()) ? entry : null);
+    }
+
+    //Commits were pushed on top of oldHeadSha, the total known for it moves to the new HEAD. Totals of other HEADs are dropped
+    public void shift(final String user, final String repo, final String oldHeadSha, final String newHeadSha, final long added) {
+        entries.computeIfPresent(getKey(user, repo), (key, entry) -> {
+            if (newHeadSha.equals(entry.getHeadSha())) {
+                return entry;
+            }
+            //no ETag, the next refresh asks for the new HEAD
+            return oldHeadSha.equals(entry.getHeadSha()) ? new Entry(newHeadSha, entry.getTotal() + added, null, entry.getComputedAt()) : null;
+        });
+    }
+
+    private boolean isStale(final Entry entry) {
+        return System.currentTimeMillis() - entry.getComputedAt() >= TimeUnit.SECONDS.toMillis(refreshSeconds);
+    }
+
+    private void scheduleRefresh(final String user, final String repo, final Entry entry) {
+        final String key = getKey(user, repo);
+        if (!refreshing.add(key)) {
+            return;
+        }
+        //near the rate limit the refresh waits for the window to reset, the stale total is served meanwhile
+        final long delayMillis = gitHubRateLimit.getBackgroundDelayMillis();
+        if (delayMillis > 0) {
+            log.debug("CommitViewer : GitHub API rate limit low, refreshing commit count of " + key + " in " + delayMillis + " ms");
+        }
+        try {
+            refreshExecutor.schedule(() -> {
+                try {
+                    computeTotal(user, repo, entry.getEtag());
+                } catch (Exception e) {
+                    log.error("CommitViewer : Failed to refresh commit count of " + key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    //concurrent requests for the same repo (e.g. different pages) share a single count call
+    private Entry computeTotal(final String user, final String repo, final String etag) throws InterruptedException {
+        return countFlights.execute(getKey(user, repo), () -> {
+            final Response gitHubApiResponse;
+            final long start = System.nanoTime();
+            try {
+                log.debug("CommitViewer : Calling GitHub API");
+                gitHubApiResponse = gitHubApiClient.getCommitsResponse(user, repo, 1, 1, etag);
+                commitViewerMetrics.recordGitHubCall(COUNT_CALL, start, gitHubApiResponse.getStatus());
+            } catch (ResteasyWebApplicationException e) {
+                commitViewerMetrics.recordGitHubCall(COUNT_CALL, start, gitHubApiErrors.getHttpStatus(e));
+                throw gitHubApiErrors.toGitHubApiException(user, repo, e);
+            } catch (RuntimeException e) {
+                commitViewerMetrics.recordGitHubCall(COUNT_CALL, start, gitHubApiErrors.getHttpStatus(e));
+                throw e;
+            }
+            return readTotal(getKey(user, repo), gitHubApiResponse);
+        });
+    }
+
+    private Uni<Entry> computeTotalAsync(final String user, final String repo, final String etag) {
+        return countFlights.executeAsync(getKey(user, repo), () -> {
+            log.debug("CommitViewer : Calling GitHub API");
+            final long start = System.nanoTime();
+            return gitHubApiClient.getCommitsResponseAsync(user, repo, 1, 1, etag)
+                                  .onItemOrFailure().invoke((gitHubApiResponse, failure) -> commitViewerMetrics.recordGitHubCall(
+                                      COUNT_CALL, start, failure == null ? gitHubApiResponse.getStatus() : gitHubApiErrors.getHttpStatus(failure)))
+                                  .onFailure().transform(e -> gitHubApiErrors.toGitHubApiException(user, repo, e))
+                                  .map(gitHubApiResponse -> readTotal(getKey(user, repo), gitHubApiResponse));
+        });
+    }
+
+    private Entry readTotal(final String key, final Response gitHubApiResponse) {
+        try {
+            final Entry known = entries.get(key);
+            if (known != null && gitHubApiResponse.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                log.debug("CommitViewer : HEAD of " + key + " not modified");
+                final Entry refreshed = new Entry(known.getHeadSha(), known.getTotal(), known.getEtag(), System.currentTimeMillis());
+                entries.put(key, refreshed);
+                return refreshed;
+            }
+
+            //with one commit per page, the last page number is the number of commits
+            final List<CommitInfoDto> headCommit = commitViewerMapper.gitHubApiResponseToCommitInfoDto(gitHubApiResponse.readEntity(InputStream.class));
+            final long total = commitViewerHelper.getPageFromLink(gitHubApiResponse, "last").map(Integer::longValue).orElse((long) headCommit.size());
+            final Entry computed = new Entry(headCommit.isEmpty() ? null : headCommit.get(0).getSha(),
+                                             total,
+                                             gitHubApiResponse.getHeaderString(HttpHeaders.ETAG),
+                                             System.currentTimeMillis());
+            entries.put(key, computed);
+            log.debug("CommitViewer : Repo " + key + " has " + total + " commits");
+            return computed;
+        } catch (IOException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        } finally {
+            gitHubApiResponse.close();
+        }
+    }
+
+    private String getKey(final String user, final String repo) {
+        return user + "/" + repo;
+    }
+
+    @Value
+    private static class Entry {
+        String headSha;
+        long total;
+        String etag;
+        long computedAt;
+    }
+}
@@ -5,29 +5,56 @@
 
 package com.challenge.service.api;
 
+import com.challenge.model.api.dto.CommitInfoDto;
 import com.challenge.model.api.dto.CommitInfoPageDto;
-import com.challenge.model.api.dto.GitHubApiCommitDto;
 import com.challenge.model.api.exception.CommitViewerException;
 import com.challenge.model.api.exception.ErrorCodeImpl;
-import com.challenge.model.api.exception.SkipFallbackException;
+import com.challenge.model.api.exception.RateLimitedException;
 import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.challenge.service.common.CommitPageCache;
 import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.PagePrefetcher;
+import com.challenge.service.common.RequestTimer;
+import com.challenge.service.common.SingleFlight;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @ApplicationScoped
 @Slf4j
 public class GitApiService {
 
+    private static final String PAGE_CALL = "page";
+    private static final String CURSOR_CALL = "cursor";
+    private static final int GITHUB_MAX_PER_PAGE = 100;
+    private static final String GRAPHQL_BACKEND = "graphql";
+
     @ConfigProperty(name = "commit-viewer.force-use-cli", defaultValue = "false")
     protected Boolean useCli;
 
+    //rest (commits endpoint, total from a separate count request) or graphql (page and total in one query, needs a token)
+    @ConfigProperty(name = "commit-viewer.api.backend", defaultValue = "rest")
+    String backend;
+
     @Inject
     @RestClient
     GitHubApiClient gitHubApiClient;
@@ -38,45 +65,396 @@ public class GitApiService {
     @Inject
     CommitViewerHelper commitViewerHelper;
 
+    @Inject
+    GitHubApiErrors gitHubApiErrors;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Inject
+    CommitCountIndex commitCountIndex;
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    PagePrefetcher pagePrefetcher;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    @Inject
+    GitHubGraphQlService gitHubGraphQlService;
+
+    private final SingleFlight<CommitPageCache.Key, CommitInfoPageDto> pageFlights = new SingleFlight<>("GitHub API page request");
+
+    private final PagePrefetcher.PageLoader prefetchLoader = new PagePrefetcher.PageLoader() {
+        @Override
+        public void load(final CommitPageCache.Key key) throws InterruptedException {
+            prefetch(key);
+        }
+
+        //a page prefetched once the window resets would be stale by the time it's asked, it's dropped rather than queued
+        @Override
+        public boolean allowsBackgroundWork() {
+            return gitHubRateLimit.allowsBackgroundWork(getPageResource());
+        }
+
+        @Override
+        public boolean isWarm(final CommitPageCache.Key key) {
+            return isFresh(commitPageCache.get(key));
+        }
+    };
+
+    //without a token GitHub answers 401 to every GraphQL query, each request would silently fall back to the CLI
+    void onStart(@Observes final StartupEvent startupEvent) {
+        if (GRAPHQL_BACKEND.equals(backend) && !gitHubGraphQlService.hasToken()) {
+            throw new IllegalArgumentException("commit-viewer.graphql.token is required by commit-viewer.api.backend=graphql");
+        }
+    }
+
     public CommitInfoPageDto getCommitList(final String user,
                                            final String repo,
                                            final Integer page,
                                            final Integer perPage) throws InterruptedException {
         log.info("CommitViewer : Getting commits using GitHub API");
+        checkUseCli();
 
-        if (useCli) {
-            log.debug("CommitViewer : Forcing use of CLI client");
-            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Forcing use of CLI client");
+        final CommitPageCache.Key key = CommitPageCache.Key.of(user, repo, page, perPage);
+        final Optional<CommitPageCache.Entry> cached = commitPageCache.get(key);
+        final CommitInfoPageDto commitInfoPage;
+        if (cached.isPresent() && commitPageCache.isFresh(cached.get())) {
+            log.debug("CommitViewer : Commit page served from cache");
+            commitInfoPage = cached.get().getPage();
+        } else if (gitHubRateLimit.isExhausted(getPageResource())) {
+            commitInfoPage = getWithoutGitHub(cached);
+        } else {
+            //identical concurrent requests share a single call to GitHub
+            commitInfoPage = pageFlights.execute(key, () -> fetchCommitListIfStale(key));
+        }
+        pagePrefetcher.prefetchAdjacent(CommitViewerMetrics.API, user, repo, commitInfoPage, prefetchLoader);
+        return commitInfoPage;
+    }
+
+    //Loads a page into the page cache unless it's already fresh there, used by the prefetcher
+    void prefetch(final CommitPageCache.Key key) throws InterruptedException {
+        pageFlights.execute(key, () -> fetchCommitListIfStale(key));
+    }
+
+    //Runs in the flight : a flight for the same page may have stored it between the cache lookup of the caller and this one
+    private CommitInfoPageDto fetchCommitListIfStale(final CommitPageCache.Key key) throws InterruptedException {
+        final Optional<CommitPageCache.Entry> cached = commitPageCache.get(key);
+        if (isFresh(cached)) {
+            log.debug("CommitViewer : Commit page stored by a previous flight, served from cache");
+            return cached.get().getPage();
         }
+        return fetchCommitList(key, cached);
+    }
+
+    //rate limit window pages are fetched against, GraphQL queries have their own
+    private String getPageResource() {
+        return GRAPHQL_BACKEND.equals(backend) ? GitHubRateLimit.GRAPHQL : GitHubRateLimit.CORE;
+    }
 
-        final List<GitHubApiCommitDto> gitHubApiCommitList;
+    private boolean isFresh(final Optional<CommitPageCache.Entry> cached) {
+        return cached.isPresent() && commitPageCache.isFresh(cached.get());
+    }
+
+    private CommitInfoPageDto fetchCommitList(final CommitPageCache.Key key, final Optional<CommitPageCache.Entry> cached) throws InterruptedException {
+        if (GRAPHQL_BACKEND.equals(backend)) {
+            return gitHubGraphQlService.getCommitList(key);
+        }
+        final String user = key.getUser();
+        final String repo = key.getRepo();
 
-        //Call GitHub API
+        //cold repository, most pages will need the total so ask for it while the page is fetched
+        final Optional<CompletableFuture<Long>> pendingTotal = commitCountIndex.prefetchTotal(user, repo);
+
+        final Response gitHubApiResponse;
+
+        //Call GitHub API, sending the cached ETag so an unchanged page costs no parsing
+        long start = System.nanoTime();
         try {
             log.debug("CommitViewer : Calling GitHub API");
-            gitHubApiCommitList = gitHubApiClient.getCommitsDto(user, repo, page, perPage);
+            gitHubApiResponse = gitHubApiClient.getCommitsResponse(user, repo, key.getPage(), key.getPerPage(), cached.map(CommitPageCache.Entry::getEtag).orElse(null));
+            commitViewerMetrics.recordGitHubCall(PAGE_CALL, start, gitHubApiResponse.getStatus());
         } catch (ResteasyWebApplicationException e) {
-            log.error("CommitViewer : Error retrieving commits from GitHub API.");
-            if (e.unwrap().getResponse().getStatus() == 404) {
-                throw new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
-            } else {
-                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
-            }
+            commitViewerMetrics.recordGitHubCall(PAGE_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw gitHubApiErrors.toGitHubApiException(user, repo, e);
+        } catch (RuntimeException e) {
+            commitViewerMetrics.recordGitHubCall(PAGE_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw e;
+        } finally {
+            requestTimer.record("github-page", start);
+        }
+
+        start = System.nanoTime();
+        final GitHubApiPage gitHubApiPage = readPage(key, cached, gitHubApiResponse);
+        requestTimer.record("github-parse", start);
+        if (gitHubApiPage.getNotModified() != null) {
+            return gitHubApiPage.getNotModified();
         }
 
         log.debug("CommitViewer : Getting total number of commits");
-        //TODO: I know, I know, 2 requests to get total commits. Didn't find other way to get it using GitHub API
-        // It could be done in previous call, but than it will only work for calls inside the page range
-        // and with an approximate value (get last page number from links * perPage)
-        final Integer totalNumberOfCommits = commitViewerHelper.getTotalNumberOfCommitsFromLink(user, repo, perPage);
+        final Optional<Long> knownTotal = getKnownTotalNumberOfCommits(key, gitHubApiPage);
+        final long totalNumberOfCommits;
+        if (knownTotal.isPresent()) {
+            totalNumberOfCommits = knownTotal.get();
+        } else {
+            start = System.nanoTime();
+            totalNumberOfCommits = pendingTotal.isPresent() ? awaitTotal(pendingTotal.get()) : commitCountIndex.getTotal(user, repo);
+            requestTimer.record("github-count", start);
+        }
+        return toCommitInfoPage(key, gitHubApiPage, totalNumberOfCommits);
+    }
+
+    //Same flow as getCommitList, GitHub is called with the async client so no thread waits for the responses
+    public Uni<CommitInfoPageDto> getCommitListAsync(final String user,
+                                                     final String repo,
+                                                     final Integer page,
+                                                     final Integer perPage) {
+        log.info("CommitViewer : Getting commits using GitHub API");
+        checkUseCli();
+
+        final CommitPageCache.Key key = CommitPageCache.Key.of(user, repo, page, perPage);
+        final Optional<CommitPageCache.Entry> cached = commitPageCache.get(key);
+        if (cached.isPresent() && commitPageCache.isFresh(cached.get())) {
+            log.debug("CommitViewer : Commit page served from cache");
+            pagePrefetcher.prefetchAdjacent(CommitViewerMetrics.API, user, repo, cached.get().getPage(), prefetchLoader);
+            return Uni.createFrom().item(cached.get().getPage());
+        }
+        if (gitHubRateLimit.isExhausted(getPageResource())) {
+            return Uni.createFrom().item(() -> getWithoutGitHub(cached));
+        }
+
+        //identical concurrent requests share a single call to GitHub, blocking or not
+        return pageFlights.executeAsync(key, () -> fetchCommitListIfStaleAsync(key))
+                          .invoke(commitInfoPage -> pagePrefetcher.prefetchAdjacent(CommitViewerMetrics.API, user, repo, commitInfoPage, prefetchLoader));
+    }
+
+    private Uni<CommitInfoPageDto> fetchCommitListIfStaleAsync(final CommitPageCache.Key key) {
+        final Optional<CommitPageCache.Entry> cached = commitPageCache.get(key);
+        if (isFresh(cached)) {
+            log.debug("CommitViewer : Commit page stored by a previous flight, served from cache");
+            return Uni.createFrom().item(cached.get().getPage());
+        }
+        return fetchCommitListAsync(key, cached);
+    }
+
+    private Uni<CommitInfoPageDto> fetchCommitListAsync(final CommitPageCache.Key key, final Optional<CommitPageCache.Entry> cached) {
+        if (GRAPHQL_BACKEND.equals(backend)) {
+            return gitHubGraphQlService.getCommitListAsync(key);
+        }
+        final String user = key.getUser();
+        final String repo = key.getRepo();
+
+        //cold repository, most pages will need the total so ask for it while the page is fetched
+        final Optional<CompletableFuture<Long>> pendingTotal = commitCountIndex.prefetchTotal(user, repo);
+
+        log.debug("CommitViewer : Calling GitHub API");
+        final long start = System.nanoTime();
+        return gitHubApiClient.getCommitsResponseAsync(user, repo, key.getPage(), key.getPerPage(), cached.map(CommitPageCache.Entry::getEtag).orElse(null))
+                              .onItemOrFailure().invoke((gitHubApiResponse, failure) -> {
+                                  requestTimer.record("github-page", start);
+                                  commitViewerMetrics.recordGitHubCall(PAGE_CALL, start, failure == null ? gitHubApiResponse.getStatus()
+                                                                                                         : gitHubApiErrors.getHttpStatus(failure));
+                              })
+                              .onFailure().transform(e -> gitHubApiErrors.toGitHubApiException(user, repo, e))
+                              .chain(gitHubApiResponse -> {
+                                  final GitHubApiPage gitHubApiPage = readPage(key, cached, gitHubApiResponse);
+                                  if (gitHubApiPage.getNotModified() != null) {
+                                      return Uni.createFrom().item(gitHubApiPage.getNotModified());
+                                  }
+
+                                  log.debug("CommitViewer : Getting total number of commits");
+                                  final long countStart = System.nanoTime();
+                                  return getKnownTotalNumberOfCommits(key, gitHubApiPage)
+                                      .map(total -> Uni.createFrom().item(total))
+                                      .orElseGet(() -> pendingTotal.map(total -> Uni.createFrom().completionStage(total))
+                                                                   .orElseGet(() -> commitCountIndex.getTotalAsync(user, repo))
+                                                                   .onTermination().invoke(() -> requestTimer.record("github-count", countStart)))
+                                      .map(total -> toCommitInfoPage(key, gitHubApiPage, total));
+                              });
+    }
+
+    //Page of commits resuming the walk of the cursor HEAD (current HEAD when null) where the previous page stopped, so pages keep listing the
+    //commits of that HEAD, merged ones included, while new pushes move it. Page numbers and totals don't apply.
+    //With a GraphQL token, the history of the cursor HEAD is resumed by GitHub after the commits already returned. Without one, the REST API
+    //lists the commits reachable from the pending commit of the cursor: the cost of a page doesn't depend on how deep it is. Only while the
+    //walk goes on from several pending commits (branches merged side by side), GitHub pages of the cursor HEAD are counted to the position
+    public CommitInfoPageDto getCommitListAfter(final String user,
+                                                final String repo,
+                                                final CommitViewerHelper.Cursor cursor,
+                                                final Integer limit) {
+        log.info("CommitViewer : Getting commits using GitHub API");
+        checkUseCli();
+        //GraphQL queries have their own rate limit window
+        final boolean graphQl = gitHubGraphQlService.hasToken();
+        if (gitHubRateLimit.isExhausted(graphQl ? GitHubRateLimit.GRAPHQL : GitHubRateLimit.CORE)) {
+            throw new RateLimitedException("GitHub API rate limit reached");
+        }
+        if (graphQl) {
+            return gitHubGraphQlService.getCommitListAfter(user, repo, cursor, limit);
+        }
 
+        final boolean resumed = cursor == null || cursor.getPending().size() == 1;
+        final int position = cursor == null ? 0 : cursor.getPosition();
+        //GitHub pages have a fixed size, without a single pending commit ask for the smallest one whose page holds the limit commits from
+        //the cursor position. None does when the limit changed between pages, the page then ends at the end of the GitHub one
+        int perPage = limit;
+        while (!resumed && perPage < GITHUB_MAX_PER_PAGE && position / perPage != (position + limit - 1) / perPage) {
+            perPage++;
+        }
+        final int offset = resumed ? 0 : position % perPage;
+        final String sha = cursor == null ? null : resumed ? cursor.getPending().get(0) : cursor.getHead();
+        final Response gitHubApiResponse;
+        long start = System.nanoTime();
+        try {
+            log.debug("CommitViewer : Calling GitHub API");
+            gitHubApiResponse = gitHubApiClient.getCommitsFromResponse(user, repo, sha, resumed ? 1 : position / perPage + 1, perPage);
+            commitViewerMetrics.recordGitHubCall(CURSOR_CALL, start, gitHubApiResponse.getStatus());
+        } catch (ResteasyWebApplicationException e) {
+            commitViewerMetrics.recordGitHubCall(CURSOR_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw gitHubApiErrors.toGitHubApiException(user, repo, e);
+        } catch (RuntimeException e) {
+            commitViewerMetrics.recordGitHubCall(CURSOR_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw e;
+        } finally {
+            requestTimer.record("github-page", start);
+        }
+
+        start = System.nanoTime();
+        final List<CommitInfoDto> gitHubPage;
+        final Map<String, List<String>> parents = new HashMap<>();
+        final boolean hasNextGitHubPage;
+        try {
+            hasNextGitHubPage = gitHubApiResponse.getLink("next") != null;
+            gitHubPage = commitViewerMapper.gitHubApiResponseToCommitInfoDto(gitHubApiResponse.readEntity(InputStream.class), parents);
+        } catch (IOException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        } finally {
+            gitHubApiResponse.close();
+        }
+        final List<CommitInfoDto> commitInfoList = gitHubPage.subList(Math.min(offset, gitHubPage.size()), Math.min(offset + limit, gitHubPage.size()));
+        final boolean hasNext = (gitHubPage.size() > offset + limit || hasNextGitHubPage) && !commitInfoList.isEmpty();
+        requestTimer.record("github-parse", start);
+
+        //the first page starts from the current HEAD, its first commit
+        final CommitViewerHelper.Cursor current = cursor != null || !hasNext ? cursor : CommitViewerHelper.Cursor.start(commitInfoList.get(0).getSha());
         return CommitInfoPageDto.builder()
-                                .items(commitViewerMapper.gitHubApiCommitDtoListToCommitInfoDtoList(gitHubApiCommitList))
-                                .page(page)
-                                .perPage(perPage)
-                                .count(gitHubApiCommitList.size())
-                                .total(totalNumberOfCommits)
-                                .totalPages((int) Math.ceil((double) totalNumberOfCommits / (double) perPage))
+                                .items(commitInfoList)
+                                .perPage(limit)
+                                .count(commitInfoList.size())
+                                .next(hasNext ? commitViewerHelper.toCursor(current.next(commitInfoList, parents)) : null)
                                 .build();
     }
+
+    private long awaitTotal(final CompletableFuture<Long> pendingTotal) throws InterruptedException {
+        try {
+            return pendingTotal.get();
+        } catch (InterruptedException e) {
+            pendingTotal.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to get total number of commits", e.getCause());
+        }
+    }
+
+    public SingleFlight<CommitPageCache.Key, CommitInfoPageDto> getPageFlights() {
+        return pageFlights;
+    }
+
+    private void checkUseCli() {
+        if (useCli) {
+            log.debug("CommitViewer : Forcing use of CLI client");
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Forcing use of CLI client");
+        }
+    }
+
+    //GitHub API rate limit is reached, a stale page is better than a clone. Without one the request goes to the git CLI
+    private CommitInfoPageDto getWithoutGitHub(final Optional<CommitPageCache.Entry> cached) {
+        if (cached.isPresent()) {
+            log.debug("CommitViewer : GitHub API rate limit reached, serving stale commit page from cache");
+            return cached.get().getPage();
+        }
+        throw new RateLimitedException("GitHub API rate limit reached");
+    }
+
+    private GitHubApiPage readPage(final CommitPageCache.Key key, final Optional<CommitPageCache.Entry> cached, final Response gitHubApiResponse) {
+        try {
+            if (cached.isPresent() && gitHubApiResponse.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                //page didn't change, so neither did the history behind it nor the total
+                log.debug("CommitViewer : Commit page not modified, revalidating cached page");
+                return new GitHubApiPage(commitPageCache.revalidated(key, cached.get()), null, null, Optional.empty());
+            }
+            //headers first, they don't need the body to be read
+            final String etag = gitHubApiResponse.getHeaderString(HttpHeaders.ETAG);
+            final Optional<Integer> lastPage = commitViewerHelper.getPageFromLink(gitHubApiResponse, "last");
+            return new GitHubApiPage(null,
+                                     commitViewerMapper.gitHubApiResponseToCommitInfoDto(gitHubApiResponse.readEntity(InputStream.class)),
+                                     etag,
+                                     lastPage);
+        } catch (IOException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        } finally {
+            gitHubApiResponse.close();
+        }
+    }
+
+    private CommitInfoPageDto toCommitInfoPage(final CommitPageCache.Key key, final GitHubApiPage gitHubApiPage, final long totalNumberOfCommits) {
+        final List<CommitInfoDto> commitInfoList = gitHubApiPage.getCommits();
+        final CommitInfoPageDto commitInfoPage = CommitInfoPageDto.builder()
+                                                                  .items(commitInfoList)
+                                                                  .page(key.getPage())
+                                                                  .perPage(key.getPerPage())
+                                                                  .count(commitInfoList.size())
+                                                                  .total(totalNumberOfCommits)
+                                                                  .totalPages((int) Math.ceil((double) totalNumberOfCommits / (double) key.getPerPage()))
+                                                                  .build();
+        commitPageCache.put(key, commitInfoPage, gitHubApiPage.getEtag());
+        return commitInfoPage;
+    }
+
+    //GitHub API doesn't return the number of commits, so use what the page response tells us.
+    //Empty when the count index has to compute it
+    private Optional<Long> getKnownTotalNumberOfCommits(final CommitPageCache.Key key, final GitHubApiPage gitHubApiPage) {
+        final String user = key.getUser();
+        final String repo = key.getRepo();
+        final Integer page = key.getPage();
+        final List<CommitInfoDto> commitInfoList = gitHubApiPage.getCommits();
+        final String headSha = page == 1 && !commitInfoList.isEmpty() ? commitInfoList.get(0).getSha() : null;
+
+        //no "last" link means this is the last page, so the total is exact
+        if (gitHubApiPage.getLastPage().isEmpty() && (page == 1 || !commitInfoList.isEmpty())) {
+            final long total = (long) (page - 1) * key.getPerPage() + commitInfoList.size();
+            if (headSha != null) {
+                commitCountIndex.update(user, repo, headSha, total);
+            }
+            return Optional.of(total);
+        }
+
+        //first page tells us the HEAD, if the index knows it there's nothing else to ask
+        final Optional<Long> knownTotal = commitCountIndex.getTotal(user, repo, headSha);
+        if (knownTotal.isEmpty() && headSha != null) {
+            commitCountIndex.invalidate(user, repo, headSha);
+        }
+        return knownTotal;
+    }
+
+    //Commits of a GitHub API page response, or the cached page when it was not modified
+    @Value
+    private static class GitHubApiPage {
+        CommitInfoPageDto notModified;
+        List<CommitInfoDto> commits;
+        String etag;
+        Optional<Integer> lastPage;
+    }
 }
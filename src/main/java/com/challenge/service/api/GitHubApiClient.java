@@ -6,10 +6,13 @@
 package com.challenge.service.api;
 
 import com.challenge.model.api.dto.GitHubApiCommitDto;
+import io.smallrye.mutiny.Uni;
+import org.eclipse.microprofile.rest.client.annotation.RegisterProvider;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 
-import javax.inject.Singleton;
+import javax.enterprise.context.ApplicationScoped;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -19,8 +22,11 @@ import java.util.List;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
-@Singleton
+@ApplicationScoped
 @RegisterRestClient(configKey = "github-api")
+@RegisterProvider(GitHubApiResponseExceptionMapper.class)
+@RegisterProvider(GitHubRateLimitFilter.class)
+@RegisterProvider(GitHubConnectionFilter.class)
 public interface GitHubApiClient {
 
     @GET
@@ -40,4 +46,47 @@ public interface GitHubApiClient {
         @PathParam("repo") String repo,
         @QueryParam("page") Integer page,
         @QueryParam("per_page") Integer perPage);
+
+    //Conditional request, GitHub answers 304 Not Modified when the ETag still matches
+    @GET
+    @Path("/repos/{owner}/{repo}/commits")
+    @Produces(APPLICATION_JSON)
+    Response getCommitsResponse(
+        @PathParam("owner") String owner,
+        @PathParam("repo") String repo,
+        @QueryParam("page") Integer page,
+        @QueryParam("per_page") Integer perPage,
+        @HeaderParam("If-None-Match") String ifNoneMatch);
+
+    //Commits reachable from sha (HEAD when null), newest first. Lets pages keep walking from the same HEAD while new commits are pushed
+    @GET
+    @Path("/repos/{owner}/{repo}/commits")
+    @Produces(APPLICATION_JSON)
+    Response getCommitsFromResponse(
+        @PathParam("owner") String owner,
+        @PathParam("repo") String repo,
+        @QueryParam("sha") String sha,
+        @QueryParam("page") Integer page,
+        @QueryParam("per_page") Integer perPage);
+
+    //Commits of head not reachable from base, and whether head is ahead of base. Tells what a push added on top of the previous HEAD
+    @GET
+    @Path("/repos/{owner}/{repo}/compare/{base}...{head}")
+    @Produces(APPLICATION_JSON)
+    Response compareCommitsResponse(
+        @PathParam("owner") String owner,
+        @PathParam("repo") String repo,
+        @PathParam("base") String base,
+        @PathParam("head") String head);
+
+    //Same conditional request, without blocking the caller thread while waiting for GitHub
+    @GET
+    @Path("/repos/{owner}/{repo}/commits")
+    @Produces(APPLICATION_JSON)
+    Uni<Response> getCommitsResponseAsync(
+        @PathParam("owner") String owner,
+        @PathParam("repo") String repo,
+        @QueryParam("page") Integer page,
+        @QueryParam("per_page") Integer perPage,
+        @HeaderParam("If-None-Match") String ifNoneMatch);
 }
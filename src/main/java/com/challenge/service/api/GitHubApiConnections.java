@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//GitHub API requests waiting for their response or reading its entity, each one holding a connection of the rest client pool
+//(github-api/mp-rest/connectionPoolSize). Requests failing without a response (connection errors, read timeouts) never reach response filters,
+//like responses never read nor closed they stop counting after request-timeout-seconds
+@ApplicationScoped
+public class GitHubApiConnections {
+
+    @ConfigProperty(name = "github-api/mp-rest/connectionPoolSize", defaultValue = "50")
+    Integer poolSize;
+
+    @ConfigProperty(name = "commit-viewer.readiness.github-request-timeout-seconds", defaultValue = "300")
+    Long requestTimeoutSeconds;
+
+    //request of GitHubConnectionFilter to System.nanoTime when it was sent
+    private final Map<Object, Long> inFlight = new ConcurrentHashMap<>();
+
+    //Request sent, the returned handle finishes it
+    public Object started() {
+        final Object request = new Object();
+        inFlight.put(request, System.nanoTime());
+        return request;
+    }
+
+    public void finished(final Object request) {
+        if (request != null) {
+            inFlight.remove(request);
+        }
+    }
+
+    public int getInFlight() {
+        final long expired = System.nanoTime() - TimeUnit.SECONDS.toNanos(requestTimeoutSeconds);
+        inFlight.values().removeIf(sent -> sent - expired < 0);
+        return inFlight.size();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+}
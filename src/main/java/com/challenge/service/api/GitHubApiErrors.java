@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.exception.RateLimitedException;
+import com.challenge.model.api.exception.SkipFallbackException;
+import com.challenge.service.common.CommitViewerHelper;
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.net.HttpURLConnection;
+import java.util.Optional;
+
+//Errors raised for failed GitHub API calls, and the CLI fallback they lead to
+@ApplicationScoped
+@Slf4j
+public class GitHubApiErrors {
+
+    private static final int HTTP_UNPROCESSABLE_ENTITY = 422;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    //Error to raise for a failed GitHub API call, sync or async. Repos not found skip the CLI fallback, it would fail the same way
+    public RuntimeException toGitHubApiException(final String user, final String repo, final Throwable throwable) {
+        log.error("CommitViewer : Error retrieving commits from GitHub API.");
+        if (getHttpStatus(throwable) == HttpURLConnection.HTTP_NOT_FOUND) {
+            return new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
+        }
+        //GitHub answers 422 for a sha it doesn't know, the CLI wouldn't know it either
+        if (getHttpStatus(throwable) == HTTP_UNPROCESSABLE_ENTITY) {
+            return new SkipFallbackException(ErrorCodeImpl.BAD_REQUEST, "Commit not found in " + commitViewerHelper.getRepoUrl(user, repo));
+        }
+        //rate limit headers of the response were already seen by GitHubRateLimitFilter, in the window of its resource
+        final int status = getHttpStatus(throwable);
+        final String resource = getResponse(throwable).map(response -> response.getHeaderString(GitHubRateLimit.RESOURCE_HEADER)).orElse(null);
+        if ((status == HttpURLConnection.HTTP_FORBIDDEN || status == HTTP_TOO_MANY_REQUESTS) && gitHubRateLimit.isExhausted(resource)) {
+            return new RateLimitedException("GitHub API rate limit reached");
+        }
+        return new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
+    }
+
+    //HTTP status of a failed GitHub API call, -1 when GitHub didn't answer.
+    //async calls may wrap the mapped exception (e.g. CompletionException), look for it down the causes
+    public int getHttpStatus(final Throwable throwable) {
+        return getResponse(throwable).map(Response::getStatus).orElse(-1);
+    }
+
+    private Optional<Response> getResponse(final Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResteasyWebApplicationException) {
+                return Optional.of(((ResteasyWebApplicationException) cause).unwrap().getResponse());
+            }
+            if (cause instanceof WebApplicationException) {
+                return Optional.of(((WebApplicationException) cause).getResponse());
+            }
+        }
+        return Optional.empty();
+    }
+}
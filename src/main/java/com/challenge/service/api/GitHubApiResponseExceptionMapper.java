@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import org.eclipse.microprofile.rest.client.ext.ResponseExceptionMapper;
+import org.jboss.resteasy.client.exception.WebApplicationExceptionWrapper;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+//Same as the RESTEasy default mapper, but 3xx responses (304 Not Modified on conditional requests) are not errors
+public class GitHubApiResponseExceptionMapper implements ResponseExceptionMapper<WebApplicationException> {
+
+    @Override
+    public boolean handles(final int status, final MultivaluedMap<String, Object> headers) {
+        return status >= Response.Status.BAD_REQUEST.getStatusCode();
+    }
+
+    @Override
+    public WebApplicationException toThrowable(final Response response) {
+        try {
+            response.bufferEntity();
+        } catch (Exception ignore) {
+            //entity may be already consumed, nothing to buffer
+        }
+        return WebApplicationExceptionWrapper.wrap(new WebApplicationException("Unknown error, status code " + response.getStatus(), response));
+    }
+}
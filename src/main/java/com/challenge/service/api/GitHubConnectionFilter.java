@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import io.quarkus.arc.Arc;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+//Counts GitHub API requests in flight (see GitHubApiConnections), blocking or not.
+//The connection is held until the entity is read or the response closed, not only until the headers arrive
+public class GitHubConnectionFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final String REQUEST_PROPERTY = GitHubConnectionFilter.class.getName();
+
+    @Override
+    public void filter(final ClientRequestContext requestContext) {
+        //providers are created by the rest client, not by CDI
+        requestContext.setProperty(REQUEST_PROPERTY, Arc.container().instance(GitHubApiConnections.class).get().started());
+    }
+
+    @Override
+    public void filter(final ClientRequestContext requestContext, final ClientResponseContext responseContext) {
+        final GitHubApiConnections gitHubApiConnections = Arc.container().instance(GitHubApiConnections.class).get();
+        final Object request = requestContext.getProperty(REQUEST_PROPERTY);
+        if (!responseContext.hasEntity()) {
+            gitHubApiConnections.finished(request);
+            return;
+        }
+        responseContext.setEntityStream(new ReleasingInputStream(responseContext.getEntityStream(), gitHubApiConnections, request));
+    }
+
+    //Entity stream finishing the request once read to the end or closed (Response.close() closes it too)
+    private static final class ReleasingInputStream extends FilterInputStream {
+
+        private final GitHubApiConnections gitHubApiConnections;
+        private final Object request;
+
+        ReleasingInputStream(final InputStream entityStream, final GitHubApiConnections connections, final Object sentRequest) {
+            super(entityStream);
+            gitHubApiConnections = connections;
+            request = sentRequest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read < 0) {
+                gitHubApiConnections.finished(request);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read < 0) {
+                gitHubApiConnections.finished(request);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                gitHubApiConnections.finished(request);
+            }
+        }
+    }
+}
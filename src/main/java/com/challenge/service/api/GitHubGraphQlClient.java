@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import io.smallrye.mutiny.Uni;
+import org.eclipse.microprofile.rest.client.annotation.RegisterProvider;
+import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+//GitHub GraphQL API, queries are JSON documents ({"query": ..., "variables": {...}}) and always need a token
+@ApplicationScoped
+@RegisterRestClient(configKey = "github-graphql")
+@RegisterProvider(GitHubApiResponseExceptionMapper.class)
+@RegisterProvider(GitHubRateLimitFilter.class)
+@Path("/graphql")
+public interface GitHubGraphQlClient {
+
+    @POST
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    Response query(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, String query);
+
+    //Same query, without blocking the caller thread while waiting for GitHub
+    @POST
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    Uni<Response> queryAsync(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization, String query);
+}
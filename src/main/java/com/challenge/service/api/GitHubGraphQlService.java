@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.dto.GitHubGraphQlHistoryDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.exception.SkipFallbackException;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.challenge.service.common.CommitPageCache;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.RequestTimer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.smallrye.mutiny.Uni;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+//Pages of commits from the GitHub GraphQL API: the history of the default branch and its totalCount come in a single call,
+//so no count request is needed. Pages after the first one start from a history cursor ("<HEAD oid> <index of the last skipped commit>"),
+//built from the last HEAD seen for the repo. When that HEAD is unknown or moved, the page is asked again from the current HEAD.
+//That cursor format isn't documented by GitHub: if it changes, the query fails and pages after the first one fall back to the CLI
+@ApplicationScoped
+@Slf4j
+public class GitHubGraphQlService {
+
+    private static final String GRAPHQL_CALL = "graphql";
+    private static final String NOT_FOUND = "NOT_FOUND";
+    private static final String HISTORY_QUERY = "query($owner: String!, $name: String!, $first: Int!, $after: String) {"
+                                                + " repository(owner: $owner, name: $name) { defaultBranchRef { target { oid ... on Commit {"
+                                                + " history(first: $first, after: $after) { totalCount nodes { oid message author { name email date } } }"
+                                                + " } } } } }";
+    //cursor pages also ask the parents of each commit and whether there's a next page
+    private static final String CURSOR_HISTORY = "oid history(first: $first, after: $after) { nodes { oid message author { name email date }"
+                                                 + " parents(first: 100) { nodes { oid } } } pageInfo { hasNextPage } }";
+    private static final String FIRST_CURSOR_QUERY = "query($owner: String!, $name: String!, $first: Int!, $after: String) {"
+                                                     + " repository(owner: $owner, name: $name) { defaultBranchRef { target { ... on Commit { "
+                                                     + CURSOR_HISTORY + " } } } } }";
+    private static final String NEXT_CURSOR_QUERY = "query($owner: String!, $name: String!, $oid: GitObjectID!, $first: Int!, $after: String) {"
+                                                    + " repository(owner: $owner, name: $name) { object(oid: $oid) { ... on Commit { "
+                                                    + CURSOR_HISTORY + " } } } }";
+
+    @ConfigProperty(name = "commit-viewer.graphql.token")
+    Optional<String> token;
+
+    @Inject
+    @RestClient
+    GitHubGraphQlClient gitHubGraphQlClient;
+
+    @Inject
+    CommitViewerMapper commitViewerMapper;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitHubApiErrors gitHubApiErrors;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Inject
+    CommitCountIndex commitCountIndex;
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private final Map<String, String> headOids = new ConcurrentHashMap<>();
+
+    public CommitInfoPageDto getCommitList(final CommitPageCache.Key key) {
+        final String knownHead = getKnownHead(key);
+        History history = query(key, knownHead);
+        if (isCursorStale(key, knownHead, history)) {
+            log.debug("CommitViewer : HEAD of " + getKey(key) + " unknown or moved, querying the page from " + history.getHeadOid());
+            history = query(key, history.getHeadOid());
+        }
+        return toCommitInfoPage(key, history);
+    }
+
+    //Same flow as getCommitList, without blocking the caller thread while waiting for GitHub
+    public Uni<CommitInfoPageDto> getCommitListAsync(final CommitPageCache.Key key) {
+        final String knownHead = getKnownHead(key);
+        return queryAsync(key, knownHead)
+            .chain(history -> {
+                if (isCursorStale(key, knownHead, history)) {
+                    log.debug("CommitViewer : HEAD of " + getKey(key) + " unknown or moved, querying the page from " + history.getHeadOid());
+                    return queryAsync(key, history.getHeadOid());
+                }
+                return Uni.createFrom().item(history);
+            })
+            .map(history -> toCommitInfoPage(key, history));
+    }
+
+    //Cursor page : the history of the cursor HEAD (default branch when null) resumed after the commits already returned, in a single query
+    //whatever the position. GitHub history cursors are "<HEAD oid> <index of the last returned commit>", as for numbered pages.
+    //The parents of the commits come along, the cursor of the next page also resumes on the REST API and the CLI
+    public CommitInfoPageDto getCommitListAfter(final String user,
+                                                final String repo,
+                                                final CommitViewerHelper.Cursor cursor,
+                                                final Integer limit) {
+        final Map<String, Object> variables = new HashMap<>();
+        variables.put("owner", user);
+        variables.put("name", repo);
+        variables.put("first", limit);
+        if (cursor != null) {
+            variables.put("oid", cursor.getHead());
+            variables.put("after", cursor.getHead() + " " + (cursor.getPosition() - 1));
+        }
+        final Response gitHubResponse = post(user, repo, toJson(cursor == null ? FIRST_CURSOR_QUERY : NEXT_CURSOR_QUERY, variables));
+
+        final long start = System.nanoTime();
+        final JsonNode repository = readRepository(user, repo, gitHubResponse);
+        final JsonNode target = cursor == null ? repository.path("defaultBranchRef").path("target") : repository.path("object");
+        final GitHubGraphQlHistoryDto history;
+        try {
+            if (target.isMissingNode() || target.isNull()) {
+                if (cursor != null) {
+                    //the CLI tells unknown commits from other failures
+                    throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Commit not found on GitHub : " + cursor.getHead());
+                }
+                //empty repository, there's no default branch yet
+                history = new GitHubGraphQlHistoryDto();
+                history.setNodes(Collections.emptyList());
+            } else {
+                history = objectMapper.treeToValue(target.path("history"), GitHubGraphQlHistoryDto.class);
+            }
+        } catch (JsonProcessingException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub GraphQL API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        }
+        final List<GitHubGraphQlHistoryDto.Commit> commits = history.getNodes() == null ? Collections.emptyList() : history.getNodes();
+        final List<CommitInfoDto> items = commitViewerMapper.gitHubGraphQlCommitListToCommitInfoDtoList(commits);
+        final Map<String, List<String>> parents = new HashMap<>();
+        for (final GitHubGraphQlHistoryDto.Commit commit : commits) {
+            parents.put(commit.getOid(), commit.getParents() == null || commit.getParents().getNodes() == null
+                                         ? List.of()
+                                         : commit.getParents().getNodes().stream().map(GitHubGraphQlHistoryDto.Parent::getOid).collect(Collectors.toList()));
+        }
+        requestTimer.record("github-parse", start);
+
+        final boolean hasNext = history.getPageInfo() != null && history.getPageInfo().isHasNextPage() && !items.isEmpty();
+        //the first page starts from the current HEAD, its first commit
+        final CommitViewerHelper.Cursor current = cursor != null || !hasNext ? cursor : CommitViewerHelper.Cursor.start(items.get(0).getSha());
+        return CommitInfoPageDto.builder()
+                                .items(items)
+                                .perPage(limit)
+                                .count(items.size())
+                                .next(hasNext ? commitViewerHelper.toCursor(current.next(items, parents)) : null)
+                                .build();
+    }
+
+    private History query(final CommitPageCache.Key key, final String headOid) {
+        return readHistory(key, post(key.getUser(), key.getRepo(), getQuery(key, headOid)));
+    }
+
+    private Response post(final String user, final String repo, final String query) {
+        final long start = System.nanoTime();
+        try {
+            log.debug("CommitViewer : Calling GitHub GraphQL API");
+            final Response gitHubResponse = gitHubGraphQlClient.query(getAuthorization(), query);
+            commitViewerMetrics.recordGitHubCall(GRAPHQL_CALL, start, gitHubResponse.getStatus());
+            return gitHubResponse;
+        } catch (ResteasyWebApplicationException e) {
+            commitViewerMetrics.recordGitHubCall(GRAPHQL_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw gitHubApiErrors.toGitHubApiException(user, repo, e);
+        } catch (RuntimeException e) {
+            commitViewerMetrics.recordGitHubCall(GRAPHQL_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw e;
+        } finally {
+            requestTimer.record("github-page", start);
+        }
+    }
+
+    private Uni<History> queryAsync(final CommitPageCache.Key key, final String headOid) {
+        log.debug("CommitViewer : Calling GitHub GraphQL API");
+        final long start = System.nanoTime();
+        return gitHubGraphQlClient.queryAsync(getAuthorization(), getQuery(key, headOid))
+                                  .onItemOrFailure().invoke((gitHubResponse, failure) -> {
+                                      requestTimer.record("github-page", start);
+                                      commitViewerMetrics.recordGitHubCall(GRAPHQL_CALL, start, failure == null ? gitHubResponse.getStatus()
+                                                                                                                : gitHubApiErrors.getHttpStatus(failure));
+                                  })
+                                  .onFailure().transform(e -> gitHubApiErrors.toGitHubApiException(key.getUser(), key.getRepo(), e))
+                                  .map(gitHubResponse -> readHistory(key, gitHubResponse));
+    }
+
+    //Pages after the first one skip (page - 1) * perPage commits of the HEAD history. Without a known HEAD, the first query only asks for it
+    private String getQuery(final CommitPageCache.Key key, final String headOid) {
+        final Map<String, Object> variables = new HashMap<>();
+        variables.put("owner", key.getUser());
+        variables.put("name", key.getRepo());
+        variables.put("first", key.getPage() > 1 && headOid == null ? 0 : key.getPerPage());
+        variables.put("after", key.getPage() > 1 && headOid != null ? headOid + " " + ((key.getPage() - 1) * key.getPerPage() - 1) : null);
+        return toJson(HISTORY_QUERY, variables);
+    }
+
+    private String toJson(final String query, final Map<String, Object> variables) {
+        try {
+            return objectMapper.writeValueAsString(Map.of("query", query, "variables", variables));
+        } catch (JsonProcessingException e) {
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to build GitHub GraphQL query", e);
+        }
+    }
+
+    private History readHistory(final CommitPageCache.Key key, final Response gitHubResponse) {
+        final long start = System.nanoTime();
+        //empty repository, there's no default branch yet
+        final JsonNode target = readRepository(key.getUser(), key.getRepo(), gitHubResponse).path("defaultBranchRef").path("target");
+        try {
+            final History history = target.isMissingNode() || target.isNull()
+                                    ? new History(null, 0, Collections.emptyList())
+                                    : toHistory(target);
+            requestTimer.record("github-parse", start);
+            return history;
+        } catch (JsonProcessingException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub GraphQL API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        }
+    }
+
+    //GraphQL answers 200 even when the repository doesn't exist, errors come in the body
+    private JsonNode readRepository(final String user, final String repo, final Response gitHubResponse) {
+        try {
+            final JsonNode body = objectMapper.readTree(gitHubResponse.readEntity(String.class));
+            final JsonNode repository = body.path("data").path("repository");
+            if (repository.isMissingNode() || repository.isNull()) {
+                if (isNotFound(body.path("errors"))) {
+                    throw new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
+                }
+                log.error("CommitViewer : Error retrieving commits from GitHub GraphQL API : " + body.path("errors"));
+                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
+            }
+            return repository;
+        } catch (JsonProcessingException e) {
+            log.error("CommitViewer : Error parsing commits from GitHub GraphQL API.", e);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse GitHub API response");
+        } finally {
+            gitHubResponse.close();
+        }
+    }
+
+    private History toHistory(final JsonNode target) throws JsonProcessingException {
+        final GitHubGraphQlHistoryDto history = objectMapper.treeToValue(target.path("history"), GitHubGraphQlHistoryDto.class);
+        return new History(target.path("oid").asText(),
+                           history.getTotalCount(),
+                           history.getNodes() == null ? Collections.emptyList() : history.getNodes());
+    }
+
+    private boolean isNotFound(final JsonNode errors) {
+        for (final JsonNode error : errors) {
+            if (NOT_FOUND.equals(error.path("type").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CommitInfoPageDto toCommitInfoPage(final CommitPageCache.Key key, final History history) {
+        if (history.getHeadOid() != null) {
+            headOids.put(getKey(key), history.getHeadOid());
+            commitCountIndex.update(key.getUser(), key.getRepo(), history.getHeadOid(), history.getTotalCount());
+        }
+        final CommitInfoPageDto commitInfoPage = CommitInfoPageDto.builder()
+                                                                  .items(commitViewerMapper.gitHubGraphQlCommitListToCommitInfoDtoList(history.getCommits()))
+                                                                  .page(key.getPage())
+                                                                  .perPage(key.getPerPage())
+                                                                  .count(history.getCommits().size())
+                                                                  .total(history.getTotalCount())
+                                                                  .totalPages((int) Math.ceil((double) history.getTotalCount() / (double) key.getPerPage()))
+                                                                  .build();
+        //GraphQL responses have no ETag, the page is fetched again once it's no longer fresh
+        commitPageCache.put(key, commitInfoPage, null);
+        return commitInfoPage;
+    }
+
+    private String getKnownHead(final CommitPageCache.Key key) {
+        return key.getPage() > 1 ? headOids.get(getKey(key)) : null;
+    }
+
+    //the cursor was built from another HEAD (or none), its commits would not match the total
+    private boolean isCursorStale(final CommitPageCache.Key key, final String usedHeadOid, final History history) {
+        return key.getPage() > 1 && history.getHeadOid() != null && !history.getHeadOid().equals(usedHeadOid);
+    }
+
+    public boolean hasToken() {
+        return token.filter(value -> !value.isBlank()).isPresent();
+    }
+
+    private String getAuthorization() {
+        return token.map(value -> "bearer " + value).orElse(null);
+    }
+
+    private String getKey(final CommitPageCache.Key key) {
+        return key.getUser() + "/" + key.getRepo();
+    }
+
+    @Value
+    private static class History {
+        String headOid;
+        long totalCount;
+        List<GitHubGraphQlHistoryDto.Commit> commits;
+    }
+}
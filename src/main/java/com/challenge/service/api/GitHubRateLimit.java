@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.MultivaluedMap;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+//GitHub API rate limit windows, as reported by the X-RateLimit-Remaining and X-RateLimit-Reset headers of every response.
+//REST (core) and GraphQL calls have a window each, told apart by the X-RateLimit-Resource header. Unless a resource is given, methods
+//look at the core window.
+//Once the remaining requests reach the reserve, requests skip GitHub (cached pages or git CLI) until the window resets.
+//Background work (count refreshes, prefetches) stops earlier, at background-reserve, so the quota left goes to user requests
+@ApplicationScoped
+@Slf4j
+public class GitHubRateLimit {
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final String RESET_HEADER = "X-RateLimit-Reset";
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    public static final String RESOURCE_HEADER = "X-RateLimit-Resource";
+    public static final String CORE = "core";
+    public static final String GRAPHQL = "graphql";
+
+    private static final int FORBIDDEN = 403;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    @ConfigProperty(name = "commit-viewer.rate-limit.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.rate-limit.reserve", defaultValue = "10")
+    Long reserve;
+
+    @ConfigProperty(name = "commit-viewer.rate-limit.background-reserve", defaultValue = "100")
+    Long backgroundReserve;
+
+    //window of each resource seen, GitHub has a handful of them
+    private final Map<String, AtomicReference<Window>> windows = new ConcurrentHashMap<>();
+
+    //Updates the window of the resource of a GitHub API response from its headers
+    public void update(final int status, final MultivaluedMap<String, String> headers) {
+        final String resource = getResource(headers.getFirst(RESOURCE_HEADER));
+        final AtomicReference<Window> window = windows.computeIfAbsent(resource, r -> new AtomicReference<>());
+        final Long remaining = parseLong(headers.getFirst(REMAINING_HEADER));
+        final Long reset = parseLong(headers.getFirst(RESET_HEADER));
+        final Long retryAfter = parseLong(headers.getFirst(RETRY_AFTER_HEADER));
+        final Window previous;
+        final Window updated;
+        if ((status == FORBIDDEN || status == TOO_MANY_REQUESTS) && retryAfter != null) {
+            //secondary rate limit, no requests until Retry-After whatever the primary window says
+            updated = new Window(0, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryAfter));
+            previous = window.getAndSet(updated);
+        } else if (remaining != null && reset != null) {
+            //responses of concurrent requests arrive in any order, within a window the lowest remaining is the latest
+            updated = new Window(remaining, TimeUnit.SECONDS.toMillis(reset));
+            previous = window.getAndUpdate(known -> known == null || updated.getResetAt() > known.getResetAt()
+                                                    || updated.getResetAt() == known.getResetAt() && updated.getRemaining() < known.getRemaining()
+                                                    ? updated : known);
+        } else {
+            return;
+        }
+        if (isExhausted(updated) && (previous == null || !isExhausted(previous))) {
+            log.warn("CommitViewer : GitHub API rate limit (" + resource + ") reached, using cached pages and git CLI until " + Instant.ofEpochMilli(updated.getResetAt()));
+        }
+    }
+
+    //No GitHub requests left for user requests in the current window
+    public boolean isExhausted() {
+        return isExhausted(CORE);
+    }
+
+    //No GitHub requests of the resource (core when null) left for user requests in its current window
+    public boolean isExhausted(final String resource) {
+        final Window current = getWindow(resource);
+        return enabled && current != null && isExhausted(current);
+    }
+
+    //No GitHub requests left at all until the window resets, the reserve included (e.g. a secondary rate limit)
+    public boolean isHardLimited() {
+        final Window current = getWindow(CORE);
+        return enabled && current != null && current.getRemaining() <= 0 && System.currentTimeMillis() < current.getResetAt();
+    }
+
+    //Background work may call GitHub
+    public boolean allowsBackgroundWork() {
+        return allowsBackgroundWork(CORE);
+    }
+
+    //Background work may call GitHub for the resource
+    public boolean allowsBackgroundWork(final String resource) {
+        return getBackgroundDelayMillis(resource) == 0;
+    }
+
+    //Time background work has to wait for the window to reset, 0 when it can call GitHub now
+    public long getBackgroundDelayMillis() {
+        return getBackgroundDelayMillis(CORE);
+    }
+
+    private long getBackgroundDelayMillis(final String resource) {
+        final Window current = getWindow(resource);
+        if (!enabled || current == null || current.getRemaining() > backgroundReserve) {
+            return 0;
+        }
+        return Math.max(0, current.getResetAt() - System.currentTimeMillis());
+    }
+
+    //Requests left in the current window, -1 when unknown
+    public long getRemaining() {
+        final Window current = getWindow(CORE);
+        return current == null ? -1 : current.getRemaining();
+    }
+
+    private Window getWindow(final String resource) {
+        return Optional.ofNullable(windows.get(getResource(resource))).map(AtomicReference::get).orElse(null);
+    }
+
+    //responses without the header (e.g. secondary rate limits) count against the REST API
+    private static String getResource(final String resource) {
+        return resource == null || resource.isBlank() ? CORE : resource.trim();
+    }
+
+    private boolean isExhausted(final Window current) {
+        return current.getRemaining() <= reserve && System.currentTimeMillis() < current.getResetAt();
+    }
+
+    private Long parseLong(final String value) {
+        try {
+            return value == null ? null : Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Value
+    private static class Window {
+        long remaining;
+        long resetAt;
+    }
+}
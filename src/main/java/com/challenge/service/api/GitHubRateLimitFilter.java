@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.api;
+
+import io.quarkus.arc.Arc;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+//Feeds GitHubRateLimit with the headers of every GitHub API response, successful or not, blocking or not
+public class GitHubRateLimitFilter implements ClientResponseFilter {
+
+    @Override
+    public void filter(final ClientRequestContext requestContext, final ClientResponseContext responseContext) {
+        //providers are created by the rest client, not by CDI
+        Arc.container().instance(GitHubRateLimit.class).get().update(responseContext.getStatus(), responseContext.getHeaders());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+//How the CLI fallback clones repositories. Only commit metadata is ever read, so trees and blobs can stay on the server
+public enum CloneStrategy {
+
+    //every commit, tree and blob
+    FULL,
+    //commits and trees, blobs are left on the server
+    BLOBLESS,
+    //commits only, trees and blobs are left on the server
+    TREELESS,
+    //latest commits only (enough for the requested page), deepened when later pages are requested
+    SHALLOW;
+
+    //depth asked by requests that need the whole history (e.g. cursor pages)
+    public static final int FULL_HISTORY = Integer.MAX_VALUE;
+
+    private static final String TREELESS_FILTER = "--filter=tree:0";
+
+    public List<String> getCloneArgs(final int depth) {
+        switch (this) {
+            case BLOBLESS:
+                return List.of("--filter=blob:none");
+            case TREELESS:
+                return List.of(TREELESS_FILTER);
+            case SHALLOW:
+                return depth == FULL_HISTORY ? List.of(TREELESS_FILTER) : List.of(TREELESS_FILTER, "--depth", String.valueOf(depth));
+            default:
+                return List.of();
+        }
+    }
+
+    //metric tag and query parameter value
+    public String getValue() {
+        return name().toLowerCase(Locale.US);
+    }
+
+    public static Optional<CloneStrategy> fromValue(final String value) {
+        return Arrays.stream(values()).filter(strategy -> strategy.name().equalsIgnoreCase(value)).findFirst();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+//Memory mapped commit index of a repository, made of two files kept next to the repository objects :
+//- records : header followed by fixed width records, oldest commit first, so new commits are appended
+//- heap : length prefixed UTF-8 strings (authors and messages) the records point to
+//Record : sha (20 bytes), commit time (epoch seconds), author offset and message offset in the heap.
+//The header is written last, a partially written update is ignored and overwritten by the next one
+public final class CommitIndexFile {
+
+    public static final String RECORDS_FILE = "commit-viewer-index.records";
+    public static final String HEAP_FILE = "commit-viewer-index.heap";
+
+    private static final int MAGIC = 0x43564958;
+    private static final int VERSION = 1;
+    private static final int SHA_BYTES = 20;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = SHA_BYTES + Long.BYTES * 3;
+    private static final int COUNT_OFFSET = 8;
+    private static final int HEAP_SIZE_OFFSET = 16;
+    private static final int HEAD_OFFSET = 24;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File folder;
+    private final long count;
+    private final long heapSize;
+    private final String headSha;
+    private final MappedByteBuffer records;
+    private final MappedByteBuffer heap;
+
+    private CommitIndexFile(final File indexFolder,
+                            final long recordCount,
+                            final long heapBytes,
+                            final String head,
+                            final MappedByteBuffer recordsBuffer,
+                            final MappedByteBuffer heapBuffer) {
+        this.folder = indexFolder;
+        this.count = recordCount;
+        this.heapSize = heapBytes;
+        this.headSha = head;
+        this.records = recordsBuffer;
+        this.heap = heapBuffer;
+    }
+
+    //Maps the index kept in the folder, empty when there's none or it's not readable (e.g. written by another version)
+    public static Optional<CommitIndexFile> open(final File folder) throws IOException {
+        final File recordsFile = new File(folder, RECORDS_FILE);
+        final File heapFile = new File(folder, HEAP_FILE);
+        if (!recordsFile.isFile() || !heapFile.isFile() || recordsFile.length() < HEADER_BYTES) {
+            return Optional.empty();
+        }
+
+        try (FileChannel recordsChannel = FileChannel.open(recordsFile.toPath(), StandardOpenOption.READ);
+             FileChannel heapChannel = FileChannel.open(heapFile.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer header = recordsChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+                return Optional.empty();
+            }
+            final long recordCount = header.getLong(COUNT_OFFSET);
+            final long heapBytes = header.getLong(HEAP_SIZE_OFFSET);
+            final long recordsBytes = HEADER_BYTES + recordCount * RECORD_BYTES;
+            if (recordCount < 0 || recordsBytes > recordsChannel.size() || heapBytes < 0 || heapBytes > heapChannel.size()
+                || recordsBytes > Integer.MAX_VALUE || heapBytes > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            final byte[] head = readSha(header, HEAD_OFFSET);
+            //mappings stay valid after the channels are closed
+            return Optional.of(new CommitIndexFile(folder,
+                                                   recordCount,
+                                                   heapBytes,
+                                                   recordCount == 0 ? null : toHex(head),
+                                                   recordsChannel.map(FileChannel.MapMode.READ_ONLY, 0, recordsBytes),
+                                                   heapChannel.map(FileChannel.MapMode.READ_ONLY, 0, heapBytes)));
+        }
+    }
+
+    //Writer of a new index, replacing any index in the folder
+    public static Writer create(final File folder) throws IOException {
+        return new Writer(folder, 0, 0);
+    }
+
+    //Writer appending commits newer than the ones already in this index
+    public Writer append() throws IOException {
+        return new Writer(folder, count, heapSize);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String getHeadSha() {
+        return headSha;
+    }
+
+    //Commits in git log order (newest first), skipping the first ones
+    public List<CommitInfoDto> getCommits(final long skip, final int limit) {
+        final List<CommitInfoDto> commits = new ArrayList<>((int) Math.max(0, Math.min(limit, count - skip)));
+        for (long position = skip; position < count && commits.size() < limit; position++) {
+            commits.add(getCommit(count - 1 - position));
+        }
+        return commits;
+    }
+
+    private CommitInfoDto getCommit(final long index) {
+        final int offset = (int) (HEADER_BYTES + index * RECORD_BYTES);
+        final byte[] sha = readSha(records, offset);
+        final long commitTime = records.getLong(offset + SHA_BYTES);
+        final long authorOffset = records.getLong(offset + SHA_BYTES + Long.BYTES);
+        final long messageOffset = records.getLong(offset + SHA_BYTES + Long.BYTES * 2);
+        return CommitInfoDto.of(toHex(sha), readString(messageOffset), Instant.ofEpochSecond(commitTime), readString(authorOffset));
+    }
+
+    private String readString(final long offset) {
+        final int length = heap.getInt((int) offset);
+        //decoded straight from the mapped file, the duplicate keeps concurrent readers from sharing a position
+        final ByteBuffer value = heap.duplicate();
+        value.position((int) offset + Integer.BYTES).limit((int) offset + Integer.BYTES + length);
+        return StandardCharsets.UTF_8.decode(value).toString();
+    }
+
+    private static byte[] readSha(final ByteBuffer buffer, final int offset) {
+        final byte[] sha = new byte[SHA_BYTES];
+        for (int i = 0; i < SHA_BYTES; i++) {
+            sha[i] = buffer.get(offset + i);
+        }
+        return sha;
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static byte[] fromHex(final String sha) {
+        if (sha.length() != SHA_BYTES * 2) {
+            //sha-256 repositories are not indexed
+            throw new IllegalArgumentException("Unsupported commit sha " + sha);
+        }
+        final byte[] bytes = new byte[SHA_BYTES];
+        for (int i = 0; i < SHA_BYTES; i++) {
+            bytes[i] = (byte) Integer.parseInt(sha, i * 2, i * 2 + 2, 16);
+        }
+        return bytes;
+    }
+
+    //Appends commits, oldest first, after the records of the index it was created from
+    public static final class Writer implements AutoCloseable {
+
+        private final File folder;
+        private final FileChannel recordsChannel;
+        private final FileChannel heapChannel;
+        private final DataOutputStream recordsOutput;
+        private final DataOutputStream heapOutput;
+        private long count;
+        private long heapSize;
+
+        private Writer(final File indexFolder, final long recordCount, final long heapBytes) throws IOException {
+            this.folder = indexFolder;
+            this.count = recordCount;
+            this.heapSize = heapBytes;
+            recordsChannel = FileChannel.open(new File(folder, RECORDS_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            heapChannel = FileChannel.open(new File(folder, HEAP_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (recordCount == 0) {
+                //new index, an empty header makes it unreadable until it's committed
+                recordsChannel.truncate(0);
+                heapChannel.truncate(0);
+                recordsChannel.write(ByteBuffer.allocate(HEADER_BYTES), 0);
+            }
+            //anything past the committed records and heap was left by an update that didn't finish
+            recordsChannel.position(HEADER_BYTES + recordCount * RECORD_BYTES);
+            heapChannel.position(heapBytes);
+            recordsOutput = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(recordsChannel)));
+            heapOutput = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(heapChannel)));
+        }
+
+        public void append(final CommitInfoDto commit) throws IOException {
+            recordsOutput.write(fromHex(commit.getSha()));
+            recordsOutput.writeLong(commit.getDate().getEpochSecond());
+            recordsOutput.writeLong(writeString(commit.getAuthor()));
+            recordsOutput.writeLong(writeString(commit.getMessage()));
+            count++;
+        }
+
+        //Makes the appended commits visible, headSha being the newest of them
+        public CommitIndexFile commit(final String headSha) throws IOException {
+            recordsOutput.flush();
+            heapOutput.flush();
+            if (HEADER_BYTES + count * RECORD_BYTES > Integer.MAX_VALUE || heapSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Commit index of " + folder.getAbsolutePath() + " is too large to be mapped");
+            }
+            heapChannel.force(false);
+            recordsChannel.force(false);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(heapSize);
+            header.put(headSha == null ? new byte[SHA_BYTES] : fromHex(headSha));
+            header.rewind();
+            recordsChannel.write(header, 0);
+            recordsChannel.force(false);
+            close();
+
+            return open(folder).orElseThrow(() -> new IOException("Failed to read commit index of " + folder.getAbsolutePath()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (FileChannel records = recordsChannel; FileChannel heapFile = heapChannel) {
+                recordsOutput.flush();
+                heapOutput.flush();
+            }
+        }
+
+        private long writeString(final String value) throws IOException {
+            final long offset = heapSize;
+            final byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            heapOutput.writeInt(bytes.length);
+            heapOutput.write(bytes);
+            heapSize += Integer.BYTES + bytes.length;
+            return offset;
+        }
+    }
+}
@@ -9,66 +9,418 @@ import com.challenge.model.api.dto.CommitInfoDto;
 import com.challenge.model.api.dto.CommitInfoPageDto;
 import com.challenge.model.api.exception.CommitViewerException;
 import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.common.CommitPageCache;
 import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.GitProcessExecutor;
+import com.challenge.service.common.PagePrefetcher;
+import com.challenge.service.common.RequestTimer;
+import com.challenge.service.common.SingleFlight;
+import io.quarkus.arc.Arc;
+import io.smallrye.mutiny.Uni;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 @Slf4j
 public class GitCliService {
 
+    @ConfigProperty(name = "commit-viewer.cli.max-concurrency", defaultValue = "8")
+    Integer maxConcurrency;
+
+    @ConfigProperty(name = "commit-viewer.cli.max-queued", defaultValue = "100")
+    Integer maxQueued;
+
+    @ConfigProperty(name = "commit-viewer.cli.clone-strategy", defaultValue = "TREELESS")
+    CloneStrategy cloneStrategy;
+
+    @ConfigProperty(name = "commit-viewer.cli.shallow-min-depth", defaultValue = "100")
+    Integer shallowMinDepth;
+
+    @ConfigProperty(name = "commit-viewer.export.max-concurrency", defaultValue = "2")
+    Integer exportMaxConcurrency;
+
+    //git log of an export runs as long as its client reads, it has a timeout of its own
+    @ConfigProperty(name = "commit-viewer.export.timeout-minutes", defaultValue = "60")
+    Long exportTimeoutMinutes;
+
     @Inject
     CommitViewerHelper commitViewerHelper;
 
+    @Inject
+    GitCommands gitCommands;
+
+    @Inject
+    GitMirrorCache gitMirrorCache;
+
+    @Inject
+    GitLogParser gitLogParser;
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    GitCommitIndex gitCommitIndex;
+
+    @Inject
+    RequestCloneStrategy requestCloneStrategy;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    PagePrefetcher pagePrefetcher;
+
+    @Inject
+    GitProcessExecutor gitProcessExecutor;
+
+    @Inject
+    GitObjectReader gitObjectReader;
+
+    private final SingleFlight<CommitPageCache.Key, CommitInfoPageDto> pageFlights = new SingleFlight<>("git CLI page request");
+
+    private ExecutorService cliExecutor;
+    private Semaphore exportPermits;
+
+    @PostConstruct
+    void init() {
+        cliExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxQueued));
+        exportPermits = new Semaphore(exportMaxConcurrency);
+        //no git process outlives its timeout, older temp clones were left by a previous run
+        commitViewerHelper.deleteStaleTempFolders(TimeUnit.SECONDS.toMillis(gitProcessExecutor.getProcessTimeoutSeconds()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        cliExecutor.shutdownNow();
+    }
+
+    //Same as getCommitList, run on the bounded CLI executor so slow clones never hold request threads.
+    //Requests over the queue capacity are rejected and cancelled requests interrupt the running git process.
+    //The clone strategy is taken when the Uni is created, call it on the request thread
+    public Uni<CommitInfoPageDto> getCommitListAsync(final String user,
+                                                     final String repo,
+                                                     final Integer page,
+                                                     final Integer perPage) {
+        final CloneStrategy strategy = getCloneStrategy();
+        final CommitPageCache.Key key = CommitPageCache.Key.of(user, repo, page, perPage);
+        return pageFlights.executeAsync(key, () -> Uni.createFrom().<CommitInfoPageDto>emitter(emitter -> {
+            log.info("CommitViewer : Request using GitHub API failed, will use the git CLI as fallback");
+            final Future<?> task;
+            try {
+                task = cliExecutor.submit(() -> {
+                    try {
+                        emitter.complete(loadCommitList(user, repo, page, perPage, strategy));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        emitter.fail(e);
+                    } catch (Exception e) {
+                        emitter.fail(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.error("CommitViewer : Too many git CLI requests queued, rejecting request");
+                emitter.fail(new CommitViewerException(ErrorCodeImpl.SERVICE_UNAVAILABLE, "Too many git CLI requests in progress"));
+                return;
+            }
+            emitter.onTermination(() -> task.cancel(true));
+        })).invoke(commitInfoPage -> pagePrefetcher.prefetchAdjacent(CommitViewerMetrics.CLI, user, repo, commitInfoPage, getPrefetchLoader(strategy)));
+    }
+
     public CommitInfoPageDto getCommitList(final String user,
                                            final String repo,
                                            final Integer page,
                                            final Integer perPage) throws IOException, InterruptedException {
         log.info("CommitViewer : Request using GitHub API failed, will use the git CLI as fallback");
+
+        //identical concurrent requests share a single clone/fetch and git log
+        final CloneStrategy strategy = getCloneStrategy();
+        final CommitInfoPageDto commitInfoPage = pageFlights.execute(CommitPageCache.Key.of(user, repo, page, perPage),
+                                                                     () -> loadCommitList(user, repo, page, perPage, strategy));
+        pagePrefetcher.prefetchAdjacent(CommitViewerMetrics.CLI, user, repo, commitInfoPage, getPrefetchLoader(strategy));
+        return commitInfoPage;
+    }
+
+    //Pages are not cached, prefetching one brings the mirror up to date (fetch, deepening of shallow clones, index update)
+    //so the request that follows only reads it. The page itself isn't read, the request reads it from the index.
+    //Prefetches run on other threads, they use the clone strategy of the request that served the adjacent page
+    private PagePrefetcher.PageLoader getPrefetchLoader(final CloneStrategy strategy) {
+        return new PagePrefetcher.PageLoader() {
+            @Override
+            public void load(final CommitPageCache.Key key) throws IOException, InterruptedException {
+                gitMirrorCache.withMirror(key.getUser(), key.getRepo(), strategy, getDepth(key.getPage(), key.getPerPage()), mirrorFolder -> null);
+            }
+
+            //a mirror fetched within fetch-interval-seconds (e.g. right after a sync) already serves the page.
+            //Temporary clones are discarded, nothing to warm without the mirror cache
+            @Override
+            public boolean isWarm(final CommitPageCache.Key key) {
+                return !gitMirrorCache.isEnabled()
+                       || gitMirrorCache.isUpToDate(key.getUser(), key.getRepo(), strategy, getDepth(key.getPage(), key.getPerPage()));
+            }
+        };
+    }
+
+    //New commits were pushed, the mirror fetches them now so the next request doesn't wait for it
+    public void refreshMirror(final String user, final String repo) throws IOException, InterruptedException {
+        gitMirrorCache.refresh(user, repo, cloneStrategy, shallowMinDepth);
+    }
+
+    public SingleFlight<CommitPageCache.Key, CommitInfoPageDto> getPageFlights() {
+        return pageFlights;
+    }
+
+    //Same as GitApiService.getCommitListAfter, read from the commit index of the mirror or walked from the pending commits of the cursor
+    public CommitInfoPageDto getCommitListAfter(final String user,
+                                                final String repo,
+                                                final CommitViewerHelper.Cursor cursor,
+                                                final Integer limit) throws IOException, InterruptedException {
+        log.info("CommitViewer : Request using GitHub API failed, will use the git CLI as fallback");
+        //the walk may go anywhere in the history, shallow clones need all of it
+        return withRepository(user, repo, getCloneStrategy(), CloneStrategy.FULL_HISTORY, repoFolder -> getCommitsAfter(repoFolder, cursor, limit));
+    }
+
+    //Whole history of the repo, newest first, handed to the writer while git log runs so memory doesn't depend on its size.
+    //The writer holds git log back: when it blocks (slow client), git blocks on its full pipe. A failing writer kills git log.
+    //The HEAD of the mirror is resolved under its lock and walked without it, fetches and pages of the repo don't wait for the export.
+    //Exports over export.max-concurrency are rejected
+    public long exportCommits(final String user, final String repo, final CommitWriter writer) throws IOException, InterruptedException {
+        if (!exportPermits.tryAcquire()) {
+            log.error("CommitViewer : Too many exports in progress, rejecting export of " + user + "/" + repo);
+            throw new CommitViewerException(ErrorCodeImpl.SERVICE_UNAVAILABLE, "Too many exports in progress");
+        }
+        try {
+            log.info("CommitViewer : Exporting commits using the git CLI");
+            //shallow mirrors are deepened, the export needs all of the history
+            if (gitMirrorCache.isEnabled()) {
+                return gitMirrorCache.withPinnedHead(user, repo, getCloneStrategy(), CloneStrategy.FULL_HISTORY,
+                                                     (mirrorFolder, head) -> head == null ? 0L : exportCommits(mirrorFolder, head, writer));
+            }
+            return withRepository(user, repo, getCloneStrategy(), CloneStrategy.FULL_HISTORY, repoFolder -> exportCommits(repoFolder, null, writer));
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    //Commits reachable from head (HEAD when null)
+    private long exportCommits(final File repoFolder, final String head, final CommitWriter writer) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        if (gitObjectReader.isEnabled()) {
+            final long exported = gitObjectReader.exportCommits(repoFolder, head, writer);
+            requestTimer.record("git-log", start);
+            return exported;
+        }
+        final long exported = commitViewerHelper.readProcessOutput(repoFolder, gitCommands.createGitLogExportCommand(head),
+                                                                   TimeUnit.MINUTES.toSeconds(exportTimeoutMinutes), inputStream -> {
+            final long[] count = new long[1];
+            try {
+                gitLogParser.parse(inputStream, commit -> {
+                    try {
+                        writer.write(commit);
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return count[0];
+        });
+        requestTimer.record("git-log", start);
+        return exported;
+    }
+
+    private CommitInfoPageDto loadCommitList(final String user,
+                                             final String repo,
+                                             final Integer page,
+                                             final Integer perPage,
+                                             final CloneStrategy strategy) throws IOException, InterruptedException {
+        return withRepository(user, repo, strategy, getDepth(page, perPage), repoFolder -> getCommitPage(repoFolder, page, perPage));
+    }
+
+    //Shallow clones hold the commits up to the requested page, at least shallow-min-depth so the next pages don't deepen them
+    private int getDepth(final Integer page, final Integer perPage) {
+        return (int) Math.min(CloneStrategy.FULL_HISTORY, Math.max((long) page * perPage, shallowMinDepth));
+    }
+
+    //Strategy asked by the request, or the configured one
+    private CloneStrategy getCloneStrategy() {
+        if (Arc.container().requestContext().isActive() && requestCloneStrategy.getCloneStrategy() != null) {
+            return requestCloneStrategy.getCloneStrategy();
+        }
+        return RequestCloneStrategy.getContinuationStrategy().orElse(cloneStrategy);
+    }
+
+    //Runs the task over the mirror of the repo, or over a temporary clone when the mirror cache is disabled
+    private <T> T withRepository(final String user,
+                                 final String repo,
+                                 final CloneStrategy strategy,
+                                 final int depth,
+                                 final GitMirrorCache.MirrorTask<T> task) throws IOException, InterruptedException {
+        if (gitMirrorCache.isEnabled()) {
+            log.debug("CommitViewer : Using mirror cache");
+            return gitMirrorCache.withMirror(user, repo, strategy, depth, task);
+        }
+
         log.debug("CommitViewer : Starting git clone");
 
         //Create tmp folder
         final File tmpFolder = commitViewerHelper.createTempFolder();
-        //Clone repo to tmp folder without checkout (-n flag)
-        log.debug("CommitViewer : Cloning repo : " + commitViewerHelper.getRepoUrl(user, repo));
-        final List<String> cloneOutput = commitViewerHelper.readProcessOutput(tmpFolder, commitViewerHelper.createGitCloneCommand(user, repo));
+        try {
+            //Clone repo to tmp folder without checkout (-n flag)
+            log.debug("CommitViewer : Cloning repo (" + strategy.getValue() + ") : " + commitViewerHelper.getRepoUrl(user, repo));
+            final long start = System.nanoTime();
+            final List<String> cloneOutput;
+            try {
+                cloneOutput = commitViewerHelper.readProcessOutput(tmpFolder, gitCommands.createGitCloneCommand(user, repo, strategy.getCloneArgs(depth)));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                commitViewerMetrics.recordClone(strategy.getValue(), "clone", start, false, 0);
+                throw e;
+            }
+            requestTimer.record("git-clone", start);
+            final File repoFolder = new File(tmpFolder.getAbsolutePath() + "/" + repo);
+            commitViewerMetrics.recordClone(strategy.getValue(), "clone", start, repoFolder.exists(), commitViewerHelper.getPackSize(repoFolder));
 
-        //check if clone was successful
-        if (Files.notExists(Path.of(tmpFolder.getAbsolutePath() + "/" + repo))) {
-            log.error("CommitViewer : Failed to clone repo : " + repo);
-            //clean tmp folder
-            commitViewerHelper.deleteFolder(tmpFolder);
+            //check if clone was successful
+            if (Files.notExists(repoFolder.toPath())) {
+                log.error("CommitViewer : Failed to clone repo : " + repo);
 
-            if (cloneOutput.size() == 3 && cloneOutput.get(1).contains("Repository not found")) {
-                throw new CommitViewerException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
+                if (commitViewerHelper.isRepositoryNotFound(cloneOutput)) {
+                    throw new CommitViewerException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
+                } else {
+                    throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to clone repo");
+                }
             } else {
-                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to clone repo");
+                log.debug("CommitViewer : git repo " + repo + " cloned");
             }
+
+            return task.run(repoFolder);
+        } finally {
+            //clean tmp folder
+            gitObjectReader.close(new File(tmpFolder, repo));
+            commitViewerHelper.deleteFolder(tmpFolder);
+        }
+    }
+
+    //Pages of the HEAD the mirror is indexed at are an offset lookup. Other walks go on from the pending commits of the cursor, so the commits
+    //already returned aren't walked again. Only cursors without pending commits make the walk of their HEAD skip them
+    private CommitInfoPageDto getCommitsAfter(final File repoFolder,
+                                              final CommitViewerHelper.Cursor cursor,
+                                              final Integer limit) throws IOException, InterruptedException {
+        log.debug("CommitViewer : Getting commits");
+        final String head = cursor == null ? null : cursor.getHead();
+        final int position = cursor == null ? 0 : cursor.getPosition();
+        final long indexStart = System.nanoTime();
+        List<CommitInfoDto> commitInfoList = gitCommitIndex.getCommits(repoFolder, head, position, limit + 1).orElse(null);
+        if (commitInfoList != null) {
+            requestTimer.record("git-index-read", indexStart);
         } else {
-            log.debug("CommitViewer : git repo " + repo + " cloned");
+            final boolean resumed = cursor != null && !cursor.getPending().isEmpty();
+            final List<String> starts = resumed ? cursor.getPending() : head == null ? List.of() : List.of(head);
+            final long start = System.nanoTime();
+            try {
+                commitInfoList = gitObjectReader.isEnabled()
+                                 ? gitObjectReader.getCommitsFrom(repoFolder, starts, resumed ? 0 : position, limit + 1)
+                                 : commitViewerHelper.readProcessOutput(repoFolder,
+                                                                        gitCommands.createGitLogAfterCommand(starts, resumed ? 0 : position, limit),
+                                                                        gitLogParser::parse);
+            } catch (CommitViewerException e) {
+                //git log fails the same way for any bad revision, only check the cursor when it did
+                for (final String sha : starts) {
+                    if (!isCommit(repoFolder, sha)) {
+                        throw new CommitViewerException(ErrorCodeImpl.BAD_REQUEST, "Commit not found : " + sha);
+                    }
+                }
+                throw e;
+            }
+            requestTimer.record("git-log", start);
+        }
+
+        //one extra commit was asked to know if there's a next page
+        final boolean hasNext = commitInfoList.size() > limit;
+        final List<CommitInfoDto> items = hasNext ? commitInfoList.subList(0, limit) : commitInfoList;
+        CommitViewerHelper.Cursor next = null;
+        if (hasNext) {
+            //the first page starts from the current HEAD, its first commit
+            final CommitViewerHelper.Cursor current = cursor != null ? cursor : CommitViewerHelper.Cursor.start(items.get(0).getSha());
+            next = current.next(items, current.getPending().isEmpty() ? Map.of() : getParents(repoFolder, items));
+        }
+        return CommitInfoPageDto.builder()
+                                .items(items)
+                                .perPage(limit)
+                                .count(items.size())
+                                .next(next == null ? null : commitViewerHelper.toCursor(next))
+                                .build();
+    }
+
+    //Parents of the commits of a page, they become the pending commits of its cursor
+    private Map<String, List<String>> getParents(final File repoFolder, final List<CommitInfoDto> commits) throws IOException, InterruptedException {
+        final List<String> shas = commits.stream().map(CommitInfoDto::getSha).collect(Collectors.toList());
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.getParents(repoFolder, shas);
+        }
+        final List<String> parentsOutput = commitViewerHelper.readProcessOutput(repoFolder, gitCommands.createGitParentsCommand(shas));
+        final Map<String, List<String>> parents = new HashMap<>();
+        //without parents the cursor only holds the position
+        if (commitViewerHelper.isGitError(parentsOutput)) {
+            return parents;
+        }
+        for (final String line : parentsOutput) {
+            final List<String> lineShas = List.of(line.trim().split(" "));
+            parents.put(lineShas.get(0), lineShas.subList(1, lineShas.size()));
+        }
+        return parents;
+    }
+
+    private CommitInfoPageDto getCommitPage(final File repoFolder,
+                                            final Integer page,
+                                            final Integer perPage) throws IOException, InterruptedException {
+        //mirrors are indexed, their pages don't need git at all
+        final long indexStart = System.nanoTime();
+        final Optional<CommitInfoPageDto> indexedPage = gitCommitIndex.getPage(repoFolder, page, perPage);
+        if (indexedPage.isPresent()) {
+            requestTimer.record("git-index-read", indexStart);
+            return indexedPage.get();
         }
 
         //Get commit stats
         log.debug("CommitViewer : Getting commits");
-        final File repoFolder = new File(tmpFolder.getAbsolutePath() + "/" + repo);
-        final List<String> logOutput = commitViewerHelper.readProcessOutput(repoFolder, commitViewerHelper.createGitLogCommand(page, perPage));
-        //parse git log response
-        log.debug("CommitViewer : Parsing git log response");
-        final List<CommitInfoDto> commitInfoList = commitViewerHelper.logOutputToCommitInfoDtoList(logOutput);
+        //parse git log response while it's read
+        long start = System.nanoTime();
+        final List<CommitInfoDto> commitInfoList = gitObjectReader.isEnabled()
+                                                   ? gitObjectReader.getCommits(repoFolder, null, (long) (page - 1) * perPage, perPage)
+                                                   : commitViewerHelper.readProcessOutput(repoFolder,
+                                                                                          gitCommands.createGitLogCommand(page, perPage),
+                                                                                          gitLogParser::parse);
+        requestTimer.record("git-log", start);
         //get total number of commits in repo
         log.debug("CommitViewer : Getting total number of commits");
-        final Integer totalNumberOfCommits = Integer.parseInt(commitViewerHelper.readProcessOutput(repoFolder, List.of("git", "rev-list", "--count", "HEAD")).get(0));
-
-        //clean tmp folder
-        FileUtils.deleteDirectory(tmpFolder);
+        start = System.nanoTime();
+        //shallow clones don't hold the whole history, their total is unknown
+        final Long totalNumberOfCommits = commitViewerHelper.isShallow(repoFolder) ? null : countCommits(repoFolder);
+        requestTimer.record("git-count", start);
 
         return CommitInfoPageDto.builder()
                                 .items(commitInfoList)
@@ -76,7 +428,27 @@ public class GitCliService {
                                 .perPage(perPage)
                                 .count(commitInfoList.size())
                                 .total(totalNumberOfCommits)
-                                .totalPages((int) Math.ceil((double) totalNumberOfCommits / (double) perPage))
+                                .totalPages(totalNumberOfCommits == null ? null : (int) Math.ceil((double) totalNumberOfCommits / (double) perPage))
                                 .build();
     }
+
+    private long countCommits(final File repoFolder) throws IOException, InterruptedException {
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.count(repoFolder);
+        }
+        return Long.parseLong(commitViewerHelper.readProcessOutput(repoFolder, gitCommands.createGitCountCommand()).get(0));
+    }
+
+    private boolean isCommit(final File repoFolder, final String sha) throws IOException, InterruptedException {
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.isCommit(repoFolder, sha);
+        }
+        return !commitViewerHelper.readProcessOutput(repoFolder, gitCommands.createGitVerifyCommitCommand(sha)).isEmpty();
+    }
+
+    //Receives the exported commits, may block (e.g. on a slow client) to hold back git log
+    @FunctionalInterface
+    public interface CommitWriter {
+        void write(CommitInfoDto commit) throws IOException;
+    }
 }
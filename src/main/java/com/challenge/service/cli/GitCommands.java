@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.service.common.CommitViewerHelper;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+
+//Command lines of the git processes run by the CLI backend (clones, fetches, git log and rev-list)
+@ApplicationScoped
+public class GitCommands {
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    public List<String> createGitCloneCommand(final String strUser, final String strRepo, final List<String> cloneArgs) {
+        final List<String> command = new ArrayList<>(List.of("git", "clone", "-n"));
+        command.addAll(cloneArgs);
+        command.add(commitViewerHelper.getRepoUrl(strUser, strRepo));
+        return command;
+    }
+
+    public List<String> createGitMirrorCloneCommand(final String strUser, final String strRepo, final String strFolder, final List<String> cloneArgs) {
+        final List<String> command = new ArrayList<>(List.of("git", "clone", "--bare"));
+        command.addAll(cloneArgs);
+        command.add(commitViewerHelper.getRepoUrl(strUser, strRepo));
+        command.add(strFolder);
+        return command;
+    }
+
+    //Fetches enough history for a shallow clone to hold depth commits, or all of it
+    public List<String> createGitDeepenCommand(final int depth) {
+        if (depth == CloneStrategy.FULL_HISTORY) {
+            return List.of("git", "fetch", "--prune", "--quiet", "--unshallow", "origin");
+        }
+        return List.of("git", "fetch", "--prune", "--quiet", "--depth", String.valueOf(depth), "origin");
+    }
+
+    public List<String> createGitCountCommand() {
+        return List.of("git", "rev-list", "--count", "HEAD");
+    }
+
+    public List<String> createGitConfigFetchRefspecCommand() {
+        return List.of("git", "config", "remote.origin.fetch", "+refs/heads/*:refs/heads/*");
+    }
+
+    public List<String> createGitFetchCommand() {
+        return List.of("git", "fetch", "--prune", "--quiet", "origin");
+    }
+
+    public List<String> createGitLogCommand(final Integer page, final Integer perPage) {
+        final Integer commitsToSkip = page * perPage - perPage;
+        return List.of("git", "log", "-z", GitLogParser.FORMAT, "--skip", commitsToSkip.toString(), "-n", perPage.toString());
+    }
+
+    //Commits reachable from the starts (HEAD when none), skipping the first ones. Asks for one extra commit to know if there's a next page
+    public List<String> createGitLogAfterCommand(final List<String> starts, final int skip, final Integer limit) {
+        final List<String> command = new ArrayList<>(List.of("git", "log", "-z", GitLogParser.FORMAT, "--skip", String.valueOf(skip),
+                                                             "-n", String.valueOf(limit + 1)));
+        command.addAll(starts.isEmpty() ? List.of("HEAD") : starts);
+        command.add("--");
+        return command;
+    }
+
+    //Every commit reachable from head (HEAD when null), newest first
+    public List<String> createGitLogExportCommand(final String head) {
+        return List.of("git", "log", "-z", GitLogParser.FORMAT, head == null ? "HEAD" : head, "--");
+    }
+
+    //Commits of the range (e.g. HEAD or oldHead..HEAD), oldest first
+    public List<String> createGitLogReverseCommand(final String range) {
+        return List.of("git", "log", "-z", GitLogParser.FORMAT, "--reverse", range, "--");
+    }
+
+    public List<String> createGitRevListParentsCommand(final String range) {
+        return List.of("git", "rev-list", "--parents", range, "--");
+    }
+
+    //Each commit followed by its parents, on one line
+    public List<String> createGitParentsCommand(final List<String> shas) {
+        final List<String> command = new ArrayList<>(List.of("git", "rev-list", "--parents", "--no-walk=unsorted"));
+        command.addAll(shas);
+        command.add("--");
+        return command;
+    }
+
+    public List<String> createGitVerifyCommitCommand(final String sha) {
+        return List.of("git", "rev-parse", "--quiet", "--verify", sha + "^{commit}");
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.RequestTimer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Commit indexes of the git mirrors (see CommitIndexFile), so a page is an offset lookup and the total a record count.
+//Indexes are built on clone, appended on fetch when the new commits sit on top of the indexed HEAD, and rebuilt otherwise.
+//Updates run under the mirror write lock, reads under its read lock
+@ApplicationScoped
+@Slf4j
+public class GitCommitIndex {
+
+    @ConfigProperty(name = "commit-viewer.commit-index.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitCommands gitCommands;
+
+    @Inject
+    GitLogParser gitLogParser;
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    GitObjectReader gitObjectReader;
+
+    private final Map<String, CommitIndexFile> indexes = new ConcurrentHashMap<>();
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+
+    //Brings the index of the mirror up to date with its HEAD, after a clone or fetch.
+    //Failures only disable the index of the mirror, pages are then walked from the mirror
+    public void update(final File mirrorFolder) throws IOException, InterruptedException {
+        update(mirrorFolder, false);
+    }
+
+    //Builds the index again, after older commits were fetched into a shallow mirror
+    public void rebuild(final File mirrorFolder) throws IOException, InterruptedException {
+        update(mirrorFolder, true);
+    }
+
+    private void update(final File mirrorFolder, final boolean rebuild) throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        final String key = mirrorFolder.getAbsolutePath();
+        final long start = System.nanoTime();
+        try {
+            final CommitIndexFile current = rebuild ? null : Optional.ofNullable(indexes.get(key)).or(() -> open(mirrorFolder)).orElse(null);
+            final Optional<String> head = resolveHead(mirrorFolder);
+            if (head.isEmpty()) {
+                log.debug("CommitViewer : Mirror " + key + " has no HEAD, not indexing it");
+                drop(mirrorFolder);
+                return;
+            }
+            final String headSha = head.get();
+            if (current != null && headSha.equals(current.getHeadSha())) {
+                indexes.put(key, current);
+                return;
+            }
+
+            final CommitIndexFile updated;
+            if (current != null && current.getHeadSha() != null && isLinearOnTop(mirrorFolder, current.getHeadSha(), headSha)) {
+                log.debug("CommitViewer : Appending new commits to index of " + key);
+                updated = write(mirrorFolder, current.append(), current.getHeadSha(), headSha);
+                appends.increment();
+            } else {
+                log.debug("CommitViewer : Building index of " + key);
+                updated = write(mirrorFolder, CommitIndexFile.create(mirrorFolder), null, headSha);
+                builds.increment();
+            }
+            indexes.put(key, updated);
+            log.debug("CommitViewer : Index of " + key + " has " + updated.getCount() + " commits");
+        } catch (IOException | RuntimeException e) {
+            log.error("CommitViewer : Failed to update commit index of " + key + ", pages will be walked from the mirror", e);
+            drop(mirrorFolder);
+        } finally {
+            requestTimer.record("git-index", start);
+        }
+    }
+
+    //Page read from the index of the mirror, empty when the folder has no index
+    public Optional<CommitInfoPageDto> getPage(final File repoFolder, final Integer page, final Integer perPage) {
+        final CommitIndexFile index = enabled ? indexes.get(repoFolder.getAbsolutePath()) : null;
+        if (index == null) {
+            return Optional.empty();
+        }
+        final List<CommitInfoDto> commitInfoList = index.getCommits((long) (page - 1) * perPage, perPage);
+        //shallow mirrors don't hold the whole history, their total is unknown
+        final Long total = commitViewerHelper.isShallow(repoFolder) ? null : index.getCount();
+        return Optional.of(CommitInfoPageDto.builder()
+                                            .items(commitInfoList)
+                                            .page(page)
+                                            .perPage(perPage)
+                                            .count(commitInfoList.size())
+                                            .total(total)
+                                            .totalPages(total == null ? null : (int) Math.ceil((double) total / (double) perPage))
+                                            .build());
+    }
+
+    //Commits of the walk of head read from the index of the mirror, skipping the first ones. Empty when the folder has no index
+    //or the index was built from another HEAD (any HEAD when null)
+    public Optional<List<CommitInfoDto>> getCommits(final File repoFolder, final String head, final long skip, final int limit) {
+        final CommitIndexFile index = enabled ? indexes.get(repoFolder.getAbsolutePath()) : null;
+        if (index == null || head != null && !head.equals(index.getHeadSha())) {
+            return Optional.empty();
+        }
+        return Optional.of(index.getCommits(skip, limit));
+    }
+
+    public long getAppends() {
+        return appends.sum();
+    }
+
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    //sha of HEAD, empty when the repository has no commit yet
+    public Optional<String> resolveHead(final File mirrorFolder) throws IOException, InterruptedException {
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.resolveHead(mirrorFolder);
+        }
+        final List<String> headOutput = commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitVerifyCommitCommand("HEAD"));
+        if (headOutput.isEmpty() || commitViewerHelper.isGitError(headOutput)) {
+            return Optional.empty();
+        }
+        return Optional.of(headOutput.get(0).trim());
+    }
+
+    //Forgets the index of the mirror, its files go with the mirror folder
+    public void drop(final File mirrorFolder) {
+        indexes.remove(mirrorFolder.getAbsolutePath());
+    }
+
+    private Optional<CommitIndexFile> open(final File mirrorFolder) {
+        try {
+            return CommitIndexFile.open(mirrorFolder);
+        } catch (IOException e) {
+            log.error("CommitViewer : Failed to read commit index of " + mirrorFolder.getAbsolutePath(), e);
+            return Optional.empty();
+        }
+    }
+
+    //New commits can be appended only if they form a chain ending at the indexed HEAD, git log then lists them right before it.
+    //Merges, force pushes and rewritten histories change the order of older commits, so the index is rebuilt
+    private boolean isLinearOnTop(final File mirrorFolder, final String indexedSha, final String headSha) throws IOException, InterruptedException {
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.isLinearOnTop(mirrorFolder, indexedSha, headSha);
+        }
+        final List<String> revList = commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitRevListParentsCommand(indexedSha + ".." + headSha));
+        if (revList.isEmpty() || commitViewerHelper.isGitError(revList)) {
+            return false;
+        }
+        String expected = headSha;
+        for (final String line : revList) {
+            final String[] shas = line.trim().split(" ");
+            if (shas.length != 2 || !shas[0].equals(expected)) {
+                return false;
+            }
+            expected = shas[1];
+        }
+        return expected.equals(indexedSha);
+    }
+
+    //Appends the commits of HEAD not reachable from indexedSha (all of them when null), oldest first
+    private CommitIndexFile write(final File mirrorFolder,
+                                  final CommitIndexFile.Writer writer,
+                                  final String indexedSha,
+                                  final String headSha) throws IOException, InterruptedException {
+        try (writer) {
+            if (gitObjectReader.isEnabled()) {
+                gitObjectReader.exportCommitsReverse(mirrorFolder, headSha, indexedSha, writer::append);
+                return writer.commit(headSha);
+            }
+            final String range = indexedSha == null ? headSha : indexedSha + ".." + headSha;
+            commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitLogReverseCommand(range), inputStream -> {
+                try {
+                    gitLogParser.parse(inputStream, commit -> {
+                        try {
+                            writer.append(commit);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                return null;
+            });
+            return writer.commit(headSha);
+        } catch (CommitViewerException e) {
+            throw new IOException("Failed to read commits of " + mirrorFolder.getAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+//Streaming parser of "git log -z" output in FORMAT, commits are emitted as soon as they are read.
+//Records are NUL terminated and fields separated by the unit separator, so messages can hold anything.
+//The raw message (%B) goes last, any separator inside it is kept as part of the message
+@ApplicationScoped
+@Slf4j
+public class GitLogParser {
+
+    public static final String FORMAT = "--pretty=tformat:%H%x1f%at%x1f%an <%ae>%x1f%B";
+
+    private static final char FIELD_SEPARATOR = '\u001f';
+    private static final char RECORD_SEPARATOR = '\0';
+    private static final int MESSAGE_FIELD = 3;
+    private static final int BUFFER_SIZE = 8192;
+
+    public List<CommitInfoDto> parse(final InputStream inputStream) throws IOException {
+        final List<CommitInfoDto> commitInfoList = new ArrayList<>();
+        parse(inputStream, commitInfoList::add);
+        return commitInfoList;
+    }
+
+    public void parse(final InputStream inputStream, final Consumer<CommitInfoDto> consumer) throws IOException {
+        final Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        final char[] buffer = new char[BUFFER_SIZE];
+        final StringBuilder field = new StringBuilder();
+        final String[] fields = new String[MESSAGE_FIELD];
+        int fieldIndex = 0;
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            int fieldStart = 0;
+            for (int i = 0; i < read; i++) {
+                final char c = buffer[i];
+                if (c == FIELD_SEPARATOR && fieldIndex < MESSAGE_FIELD) {
+                    field.append(buffer, fieldStart, i - fieldStart);
+                    fields[fieldIndex++] = field.toString();
+                    field.setLength(0);
+                    fieldStart = i + 1;
+                } else if (c == RECORD_SEPARATOR) {
+                    field.append(buffer, fieldStart, i - fieldStart);
+                    consumer.accept(toCommitInfoDto(fields, fieldIndex, field));
+                    field.setLength(0);
+                    fieldIndex = 0;
+                    fieldStart = i + 1;
+                }
+            }
+            field.append(buffer, fieldStart, read - fieldStart);
+        }
+
+        //last record may not be terminated
+        if (fieldIndex > 0 || field.length() > 0) {
+            consumer.accept(toCommitInfoDto(fields, fieldIndex, field));
+        }
+    }
+
+    private CommitInfoDto toCommitInfoDto(final String[] fields, final int fieldIndex, final StringBuilder message) {
+        if (fieldIndex != MESSAGE_FIELD) {
+            log.error("CommitViewer : Failed to parse git log response");
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse git log response");
+        }
+
+        //git ends raw messages with a new line, GitHub API doesn't
+        int messageLength = message.length();
+        while (messageLength > 0 && message.charAt(messageLength - 1) == '\n') {
+            messageLength--;
+        }
+
+        try {
+            return CommitInfoDto.of(fields[0],
+                                    message.substring(0, messageLength),
+                                    Instant.ofEpochSecond(Long.parseLong(fields[1])),
+                                    fields[2]);
+        } catch (NumberFormatException e) {
+            log.error("CommitViewer : Failed to parse git log date " + fields[1]);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse git log response", e);
+        }
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.RequestTimer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//On-disk cache of bare clones used by the CLI fallback, keyed by user/repo.
+//Mirrors are cloned once, updated with incremental fetches and evicted (LRU first) when over the size budget
+@ApplicationScoped
+@Slf4j
+public class GitMirrorCache {
+
+    private static final String MIRROR_SUFFIX = ".git";
+    private static final String CLONE = "clone";
+    private static final String DEEPEN = "deepen";
+
+    @ConfigProperty(name = "commit-viewer.mirror-cache.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.mirror-cache.path")
+    Optional<String> cachePath;
+
+    @ConfigProperty(name = "commit-viewer.mirror-cache.max-size-mb", defaultValue = "2048")
+    Long maxSizeMb;
+
+    @ConfigProperty(name = "commit-viewer.mirror-cache.fetch-interval-seconds", defaultValue = "30")
+    Long fetchIntervalSeconds;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitCommands gitCommands;
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    GitCommitIndex gitCommitIndex;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    GitObjectReader gitObjectReader;
+
+    //Lock of each repo requested, dropped once no request holds it
+    private final Map<String, RepoLock> locks = new ConcurrentHashMap<>();
+
+    //Number of tasks running over a pinned HEAD of each mirror, only taken under the repo lock
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>();
+
+    //Pinned mirrors to delete, by the last task over their pinned HEAD or the next update once unpinned
+    private final Set<String> deletions = ConcurrentHashMap.newKeySet();
+
+    //Access ordered map (LRU first) of mirror key to mirror size in bytes, guarded by itself
+    private final LinkedHashMap<String, Long> mirrorSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    //System.nanoTime of the last clone or fetch of each mirror
+    private final Map<String, Long> lastFetches = new ConcurrentHashMap<>();
+
+    //Commits shallow mirrors are known to hold (fetches only add to them)
+    private final Map<String, Long> shallowDepths = new ConcurrentHashMap<>();
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder coalescedUpdates = new LongAdder();
+
+    private File rootFolder;
+
+    @PostConstruct
+    void init() {
+        rootFolder = new File(cachePath.orElse(System.getProperty("java.io.tmpdir") + File.separator + "commit-viewer-mirrors"));
+        if (!rootFolder.exists() && !rootFolder.mkdirs()) {
+            log.error("CommitViewer : Failed to create mirror cache folder " + rootFolder.getAbsolutePath() + ", disabling mirror cache");
+            enabled = false;
+            return;
+        }
+        loadExistingMirrors();
+        log.debug("CommitViewer : Mirror cache at " + rootFolder.getAbsolutePath() + " with " + mirrorSizes.size() + " mirrors");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public File getRootFolder() {
+        return rootFolder;
+    }
+
+    public long getTotalSizeBytes() {
+        synchronized (mirrorSizes) {
+            return mirrorSizes.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeMb * FileUtils.ONE_MB;
+    }
+
+    //clones and fetches made
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    //requests that reused a clone or fetch made for a concurrent request
+    public long getCoalescedUpdates() {
+        return coalescedUpdates.sum();
+    }
+
+    //Runs the task over an up to date mirror holding at least depth commits (when the history has them). Missing mirrors are cloned
+    //with the given strategy. The task runs under the repo read lock, so concurrent readers of the same repo don't block each other.
+    //The write lock is only taken when a clone, fetch or deepen is due, readers then wait for it.
+    //A mirror is cloned once, with the strategy of the first request : only SHALLOW requests settle for depth commits, the others
+    //fetch the whole history of a shallow mirror, as their clone would have
+    public <T> T withMirror(final String user,
+                            final String repo,
+                            final CloneStrategy cloneStrategy,
+                            final int shallowDepth,
+                            final MirrorTask<T> task) throws IOException, InterruptedException {
+        final int depth = getRequiredDepth(cloneStrategy, shallowDepth);
+        final String key = getKey(user, repo);
+        final File mirrorFolder = getMirrorFolder(user, repo);
+
+        final T result;
+        final ReentrantReadWriteLock lock = acquireLock(key);
+        try {
+            //a clone or fetch finishing after this point is as good as one made for this request
+            final long start = System.nanoTime();
+            lock.readLock().lockInterruptibly();
+            if (isUpToDate(key, mirrorFolder, start, depth)) {
+                //read as is, still most recently used
+                touch(key, null);
+            } else {
+                //a read lock can't be upgraded, another request may update the mirror in between (updateMirror then skips the fetch)
+                lock.readLock().unlock();
+                lock.writeLock().lockInterruptibly();
+                try {
+                    //fetching more history of a shallow mirror also brings the latest commits
+                    if (!deepenIfTooShallow(key, mirrorFolder, depth)) {
+                        updateMirror(user, repo, mirrorFolder, start, cloneStrategy, depth);
+                    }
+                    requestTimer.record("git-sync", start);
+                    //downgrade to read lock, so other requests for the same repo can read the mirror
+                    lock.readLock().lock();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            try {
+                result = task.run(mirrorFolder);
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            releaseLock(key);
+        }
+
+        evictIfNeeded(key);
+        return result;
+    }
+
+    //Runs the task over the commit HEAD is at once the mirror is up to date (null when the repo has no commit yet), without holding
+    //the repo lock : fetches and the other requests of the repo don't wait for long tasks (e.g. exports). Fetches keep the objects
+    //of that commit, and the mirror is pinned so it's neither evicted nor cloned again until the task ends
+    public <T> T withPinnedHead(final String user,
+                                final String repo,
+                                final CloneStrategy cloneStrategy,
+                                final int shallowDepth,
+                                final PinnedTask<T> task) throws IOException, InterruptedException {
+        final String key = getKey(user, repo);
+        final File mirrorFolder = getMirrorFolder(user, repo);
+        final AtomicBoolean pinned = new AtomicBoolean();
+        try {
+            final String head = withMirror(user, repo, cloneStrategy, shallowDepth, folder -> {
+                final String resolved = gitCommitIndex.resolveHead(folder).orElse(null);
+                //pinned under the repo lock, the mirror can't be deleted in between
+                pins.merge(key, 1, Integer::sum);
+                pinned.set(true);
+                return resolved;
+            });
+            return task.run(mirrorFolder, head);
+        } finally {
+            //withMirror may also fail once pinned (e.g. evicting other mirrors)
+            if (pinned.get()) {
+                unpin(key, mirrorFolder);
+            }
+        }
+    }
+
+    //Whether withMirror would read the mirror as it is now, without a clone, fetch or deepen
+    public boolean isUpToDate(final String user, final String repo, final CloneStrategy cloneStrategy, final int shallowDepth) {
+        return isUpToDate(getKey(user, repo), getMirrorFolder(user, repo), System.nanoTime(), getRequiredDepth(cloneStrategy, shallowDepth));
+    }
+
+    //Fetches the mirror of the repo now instead of on the first request after fetch-interval-seconds (e.g. after a push).
+    //Repos without a mirror are left alone, a failed fetch clones the mirror again with the given strategy and depth
+    public void refresh(final String user,
+                        final String repo,
+                        final CloneStrategy cloneStrategy,
+                        final int depth) throws IOException, InterruptedException {
+        final String key = getKey(user, repo);
+        final File mirrorFolder = getMirrorFolder(user, repo);
+        if (!enabled || !mirrorFolder.exists()) {
+            return;
+        }
+        final ReentrantReadWriteLock lock = acquireLock(key);
+        try {
+            lock.writeLock().lockInterruptibly();
+            try {
+                if (mirrorFolder.exists()) {
+                    lastFetches.remove(key);
+                    updateMirror(user, repo, mirrorFolder, System.nanoTime(), cloneStrategy, depth);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            releaseLock(key);
+        }
+    }
+
+    public void evict(final String user, final String repo) {
+        final String key = getKey(user, repo);
+        final ReentrantReadWriteLock lock = acquireLock(key);
+        lock.writeLock().lock();
+        try {
+            deleteMirror(key, getMirrorFolder(user, repo));
+        } finally {
+            lock.writeLock().unlock();
+            releaseLock(key);
+        }
+    }
+
+    public File getMirrorFolder(final String user, final String repo) {
+        return new File(new File(rootFolder, commitViewerHelper.checkPathSegment(user)), commitViewerHelper.checkPathSegment(repo) + MIRROR_SUFFIX);
+    }
+
+    private static int getRequiredDepth(final CloneStrategy cloneStrategy, final int shallowDepth) {
+        return cloneStrategy == CloneStrategy.SHALLOW ? shallowDepth : CloneStrategy.FULL_HISTORY;
+    }
+
+    //Whether the mirror can be read as is : fetched since the request started or within fetch-interval-seconds, and holding depth
+    //commits when shallow. Only looks at what's known in memory, anything else (e.g. a mirror left by a previous run) takes the write lock
+    private boolean isUpToDate(final String key, final File mirrorFolder, final long requestedAt, final int depth) {
+        final Long lastFetch = lastFetches.get(key);
+        if (lastFetch == null || !mirrorFolder.exists()) {
+            return false;
+        }
+        if (lastFetch - requestedAt < 0 && System.nanoTime() - lastFetch >= TimeUnit.SECONDS.toNanos(fetchIntervalSeconds)) {
+            return false;
+        }
+        return !commitViewerHelper.isShallow(mirrorFolder) || shallowDepths.getOrDefault(key, 0L) >= depth;
+    }
+
+    private void updateMirror(final String user,
+                              final String repo,
+                              final File mirrorFolder,
+                              final long requestedAt,
+                              final CloneStrategy cloneStrategy,
+                              final int depth) throws IOException, InterruptedException {
+        final String key = getKey(user, repo);
+        //deleted while pinned, the first update once unpinned deletes it
+        if (deletions.contains(key)) {
+            deleteMirror(key, mirrorFolder);
+        }
+
+        if (mirrorFolder.exists() && fetchMirror(key, mirrorFolder, requestedAt)) {
+            return;
+        }
+
+        cloneMirror(user, repo, mirrorFolder, cloneStrategy, depth);
+        if (commitViewerHelper.isShallow(mirrorFolder)) {
+            shallowDepths.put(key, (long) depth);
+        }
+        gitCommitIndex.update(mirrorFolder);
+        lastFetches.put(key, System.nanoTime());
+        updates.increment();
+        touch(key, FileUtils.sizeOfDirectory(mirrorFolder));
+    }
+
+    //Fetches the mirror unless updated since the request started or within fetch-interval-seconds. Returns whether it can be read,
+    //a mirror failing to fetch is deleted to be cloned again
+    private boolean fetchMirror(final String key, final File mirrorFolder, final long requestedAt) throws IOException, InterruptedException {
+        final Long lastFetch = lastFetches.get(key);
+        //concurrent requests for the same repo wait on the lock of the first one, they reuse its clone or fetch
+        if (lastFetch != null && lastFetch - requestedAt >= 0) {
+            log.debug("CommitViewer : Mirror " + key + " updated while waiting for it, skipping fetch");
+            coalescedUpdates.increment();
+            touch(key, null);
+            return true;
+        }
+        if (lastFetch != null && System.nanoTime() - lastFetch < TimeUnit.SECONDS.toNanos(fetchIntervalSeconds)) {
+            log.debug("CommitViewer : Mirror " + key + " fetched recently, skipping fetch");
+            touch(key, null);
+            return true;
+        }
+
+        log.debug("CommitViewer : Fetching mirror " + key);
+        final List<String> fetchOutput = commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitFetchCommand());
+        if (commitViewerHelper.isGitError(fetchOutput)) {
+            //mirror may be corrupted or upstream was removed, start over with a fresh clone
+            log.error("CommitViewer : Failed to fetch mirror " + key);
+            if (deleteMirror(key, mirrorFolder)) {
+                log.debug("CommitViewer : Cloning mirror " + key + " again");
+                return false;
+            }
+            //fetched again by the next request, until the pinned tasks end and the mirror is deleted
+            log.warn("CommitViewer : Mirror " + key + " is pinned, reading it as it is");
+            return true;
+        }
+        deletions.remove(key);
+        gitCommitIndex.update(mirrorFolder);
+        lastFetches.put(key, System.nanoTime());
+        updates.increment();
+        touch(key, FileUtils.sizeOfDirectory(mirrorFolder));
+        return true;
+    }
+
+    private void cloneMirror(final String user,
+                             final String repo,
+                             final File mirrorFolder,
+                             final CloneStrategy cloneStrategy,
+                             final int depth) throws IOException, InterruptedException {
+        final File userFolder = mirrorFolder.getParentFile();
+        Files.createDirectories(userFolder.toPath());
+
+        log.debug("CommitViewer : Cloning mirror (" + cloneStrategy.getValue() + ") : " + commitViewerHelper.getRepoUrl(user, repo));
+        final long start = System.nanoTime();
+        final List<String> cloneOutput;
+        try {
+            cloneOutput = commitViewerHelper.readProcessOutput(userFolder, gitCommands.createGitMirrorCloneCommand(user, repo, mirrorFolder.getName(),
+                                                                                                                        cloneStrategy.getCloneArgs(depth)));
+        } catch (IOException | InterruptedException | CommitViewerException e) {
+            commitViewerMetrics.recordClone(cloneStrategy.getValue(), CLONE, start, false, 0);
+            //don't leave half cloned mirrors behind
+            FileUtils.deleteQuietly(mirrorFolder);
+            throw e;
+        }
+        commitViewerMetrics.recordClone(cloneStrategy.getValue(), CLONE, start, mirrorFolder.exists(),
+                                        mirrorFolder.exists() ? commitViewerHelper.getPackSize(mirrorFolder) : 0);
+
+        //check if clone was successful
+        if (!mirrorFolder.exists()) {
+            log.error("CommitViewer : Failed to clone repo : " + repo);
+            if (commitViewerHelper.isRepositoryNotFound(cloneOutput)) {
+                throw new CommitViewerException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + commitViewerHelper.getRepoUrl(user, repo));
+            } else {
+                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to clone repo");
+            }
+        }
+
+        //bare clones don't track branches, configure the refspec so following fetches update them
+        commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitConfigFetchRefspecCommand());
+        log.debug("CommitViewer : git repo " + repo + " mirrored");
+    }
+
+    //Deepens the mirror if it's shallow and holds less than depth commits, returns whether it did
+    private boolean deepenIfTooShallow(final String key, final File mirrorFolder, final int depth) throws IOException, InterruptedException {
+        if (!mirrorFolder.exists() || !commitViewerHelper.isShallow(mirrorFolder)) {
+            return false;
+        }
+        final long mirrorDepth = getDepth(mirrorFolder);
+        shallowDepths.put(key, mirrorDepth);
+        if (mirrorDepth >= depth) {
+            return false;
+        }
+
+        log.debug("CommitViewer : Deepening shallow mirror " + key + " to " + (depth == CloneStrategy.FULL_HISTORY ? "its whole history" : depth + " commits"));
+        final long start = System.nanoTime();
+        final long packSize = commitViewerHelper.getPackSize(mirrorFolder);
+        final List<String> deepenOutput = commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitDeepenCommand(depth));
+        final boolean success = !commitViewerHelper.isGitError(deepenOutput);
+        commitViewerMetrics.recordClone(CloneStrategy.SHALLOW.getValue(), DEEPEN, start, success, Math.max(0, commitViewerHelper.getPackSize(mirrorFolder) - packSize));
+        if (!success) {
+            log.error("CommitViewer : Failed to deepen mirror " + key);
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to fetch repo history");
+        }
+        shallowDepths.put(key, (long) depth);
+        //older commits came in, the index is rebuilt rather than appended
+        gitCommitIndex.rebuild(mirrorFolder);
+        lastFetches.put(key, System.nanoTime());
+        updates.increment();
+        touch(key, FileUtils.sizeOfDirectory(mirrorFolder));
+        return true;
+    }
+
+    //Number of commits the mirror holds
+    private long getDepth(final File mirrorFolder) throws IOException, InterruptedException {
+        if (gitObjectReader.isEnabled()) {
+            return gitObjectReader.count(mirrorFolder);
+        }
+        final List<String> countOutput = commitViewerHelper.readProcessOutput(mirrorFolder, gitCommands.createGitCountCommand());
+        try {
+            return countOutput.isEmpty() ? 0 : Long.parseLong(countOutput.get(0).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void evictIfNeeded(final String currentKey) {
+        final long maxSizeBytes = getMaxSizeBytes();
+        final List<String> candidates;
+        synchronized (mirrorSizes) {
+            candidates = new ArrayList<>(mirrorSizes.keySet());
+        }
+
+        for (final String key : candidates) {
+            if (getTotalSizeBytes() <= maxSizeBytes) {
+                return;
+            }
+            if (key.equals(currentKey)) {
+                continue;
+            }
+            final ReentrantReadWriteLock lock = acquireLock(key);
+            //skip mirrors in use, they will be evicted on a later request. No task pins a mirror while its write lock is held
+            final boolean locked = lock.writeLock().tryLock();
+            try {
+                if (locked && !isPinned(key)) {
+                    log.debug("CommitViewer : Mirror cache over budget, evicting " + key);
+                    deleteMirror(key, new File(rootFolder, key + MIRROR_SUFFIX));
+                }
+            } finally {
+                if (locked) {
+                    lock.writeLock().unlock();
+                }
+                releaseLock(key);
+            }
+        }
+    }
+
+    //Called under the repo write lock. Tasks running over a pinned HEAD read the mirror without the repo lock, rather than waiting
+    //for them a pinned mirror is only marked for deletion (and fetched again by the next request). Returns whether it was deleted
+    private boolean deleteMirror(final String key, final File mirrorFolder) {
+        if (isPinned(key)) {
+            deletions.add(key);
+            lastFetches.remove(key);
+            return false;
+        }
+        deletions.remove(key);
+        synchronized (mirrorSizes) {
+            mirrorSizes.remove(key);
+        }
+        lastFetches.remove(key);
+        shallowDepths.remove(key);
+        gitCommitIndex.drop(mirrorFolder);
+        gitObjectReader.close(mirrorFolder);
+        if (mirrorFolder.exists()) {
+            commitViewerHelper.deleteFolder(mirrorFolder);
+        }
+        return true;
+    }
+
+    //The last task over a pinned HEAD deletes the mirror if it was deleted meanwhile
+    private void unpin(final String key, final File mirrorFolder) {
+        final Integer pinnedTasks = pins.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+        if (pinnedTasks != null || !deletions.contains(key)) {
+            return;
+        }
+        final ReentrantReadWriteLock lock = acquireLock(key);
+        lock.writeLock().lock();
+        try {
+            if (deletions.contains(key)) {
+                deleteMirror(key, mirrorFolder);
+            }
+        } catch (CommitViewerException e) {
+            //left to the next update
+            log.error("CommitViewer : Failed to delete unpinned mirror " + key, e);
+        } finally {
+            lock.writeLock().unlock();
+            releaseLock(key);
+        }
+    }
+
+    //Lock of the repo, to release once done with it whether it was locked or not
+    private ReentrantReadWriteLock acquireLock(final String key) {
+        return locks.compute(key, (k, repoLock) -> Optional.ofNullable(repoLock).orElseGet(RepoLock::new).acquire()).getLock();
+    }
+
+    private void releaseLock(final String key) {
+        locks.computeIfPresent(key, (k, repoLock) -> repoLock.release());
+    }
+
+    private boolean isPinned(final String key) {
+        return pins.containsKey(key);
+    }
+
+    private void touch(final String key, final Long size) {
+        //folder modified time keeps the LRU order across restarts
+        new File(rootFolder, key + MIRROR_SUFFIX).setLastModified(System.currentTimeMillis());
+        synchronized (mirrorSizes) {
+            final Long knownSize = mirrorSizes.get(key);
+            mirrorSizes.put(key, size == null ? Optional.ofNullable(knownSize).orElse(0L) : size);
+        }
+    }
+
+    private void loadExistingMirrors() {
+        final File[] userFolders = Optional.ofNullable(rootFolder.listFiles(File::isDirectory)).orElse(new File[0]);
+        final List<File> mirrors = new ArrayList<>();
+        for (final File userFolder : userFolders) {
+            mirrors.addAll(Arrays.asList(Optional.ofNullable(userFolder.listFiles(file -> file.isDirectory()
+                                                                                          && file.getName().endsWith(MIRROR_SUFFIX)))
+                                                 .orElse(new File[0])));
+        }
+        //oldest first, so least recently used mirrors are evicted first
+        mirrors.sort(Comparator.comparingLong(File::lastModified));
+        synchronized (mirrorSizes) {
+            for (final File mirror : mirrors) {
+                final String repo = mirror.getName().substring(0, mirror.getName().length() - MIRROR_SUFFIX.length());
+                mirrorSizes.put(mirror.getParentFile().getName() + "/" + repo, FileUtils.sizeOfDirectory(mirror));
+            }
+        }
+    }
+
+    private String getKey(final String user, final String repo) {
+        return user + "/" + repo;
+    }
+
+    //Repo lock and the number of requests holding it, only updated within a compute of locks
+    private static final class RepoLock {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private int holders;
+
+        ReentrantReadWriteLock getLock() {
+            return lock;
+        }
+
+        RepoLock acquire() {
+            holders++;
+            return this;
+        }
+
+        //null once no request holds it, dropping it from locks
+        RepoLock release() {
+            holders--;
+            return holders == 0 ? null : this;
+        }
+    }
+
+    @FunctionalInterface
+    public interface MirrorTask<T> {
+        T run(File mirrorFolder) throws IOException, InterruptedException;
+    }
+
+    @FunctionalInterface
+    public interface PinnedTask<T> {
+        T run(File mirrorFolder, String head) throws IOException, InterruptedException;
+    }
+}
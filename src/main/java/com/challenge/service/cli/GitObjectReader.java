@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+//Reads the commits of clones and mirrors in process with JGit, straight from their packfiles and loose objects, instead of running
+//git log, rev-list and rev-parse and decoding their output. Clones and fetches still run git. Commits are listed in git log order
+//(newest first by commit date, shallow commits without parents). Repositories stay open between reads, they're closed with their folder
+@ApplicationScoped
+@Slf4j
+public class GitObjectReader {
+
+    private static final String JGIT_READER = "jgit";
+    private static final String DOT_GIT = ".git";
+
+    //jgit (commits read in process) or git (git log and rev-list processes)
+    @ConfigProperty(name = "commit-viewer.cli.reader", defaultValue = "jgit")
+    String reader;
+
+    private final Map<String, Repository> repositories = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    void shutdown() {
+        repositories.values().forEach(Repository::close);
+        repositories.clear();
+    }
+
+    public boolean isEnabled() {
+        return JGIT_READER.equals(reader);
+    }
+
+    //sha of HEAD, empty when the repository has no commit yet
+    public Optional<String> resolveHead(final File repoFolder) throws IOException {
+        return Optional.ofNullable(getRepository(repoFolder).resolve(Constants.HEAD)).map(ObjectId::getName);
+    }
+
+    //Same as git rev-parse --verify sha^{commit}
+    public boolean isCommit(final File repoFolder, final String sha) throws IOException {
+        final Repository repository = getRepository(repoFolder);
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            final ObjectId objectId = repository.resolve(sha);
+            return objectId != null && revWalk.parseCommit(objectId) != null;
+        } catch (MissingObjectException | IncorrectObjectTypeException e) {
+            return false;
+        }
+    }
+
+    //Up to maxCount commits reachable from revision (HEAD when null), after skipping the first skip ones
+    public List<CommitInfoDto> getCommits(final File repoFolder,
+                                          final String revision,
+                                          final long skip,
+                                          final int maxCount) throws IOException, InterruptedException {
+        return getCommitsFrom(repoFolder, revision == null ? List.of() : List.of(revision), skip, maxCount);
+    }
+
+    //Same walk from several revisions (HEAD when none), as git log rev1 rev2... lists them
+    public List<CommitInfoDto> getCommitsFrom(final File repoFolder,
+                                              final List<String> revisions,
+                                              final long skip,
+                                              final int maxCount) throws IOException, InterruptedException {
+        final List<CommitInfoDto> commits = new ArrayList<>();
+        walk(repoFolder, revisions, null, false, skip, maxCount, commits::add);
+        return commits;
+    }
+
+    //Parents of each commit, same as git rev-list --parents --no-walk. Unknown commits fail with an unknown error
+    public Map<String, List<String>> getParents(final File repoFolder, final List<String> shas) throws IOException {
+        final Map<String, List<String>> parents = new HashMap<>();
+        try (RevWalk revWalk = new RevWalk(getRepository(repoFolder))) {
+            revWalk.setRetainBody(false);
+            for (final String sha : shas) {
+                final RevCommit commit = revWalk.parseCommit(ObjectId.fromString(sha));
+                parents.put(sha, Arrays.stream(commit.getParents()).map(RevCommit::getName).collect(Collectors.toList()));
+            }
+        } catch (MissingObjectException | IncorrectObjectTypeException | IllegalArgumentException e) {
+            throw readFailure(repoFolder, String.join(" ", shas), e);
+        }
+        return parents;
+    }
+
+    //Every commit reachable from revision (HEAD when null), newest first, handed to the writer as soon as it's read
+    public long exportCommits(final File repoFolder,
+                              final String revision,
+                              final GitCliService.CommitWriter writer) throws IOException, InterruptedException {
+        return walk(repoFolder, revision == null ? List.of() : List.of(revision), null, false, 0, Long.MAX_VALUE, writer);
+    }
+
+    //Commits reachable from headSha and not from excludedSha (every one when null), oldest first
+    public long exportCommitsReverse(final File repoFolder,
+                                     final String headSha,
+                                     final String excludedSha,
+                                     final GitCliService.CommitWriter writer) throws IOException, InterruptedException {
+        return walk(repoFolder, List.of(headSha), excludedSha, true, 0, Long.MAX_VALUE, writer);
+    }
+
+    //Same as git rev-list --count HEAD, commit messages are not kept
+    public long count(final File repoFolder) throws IOException {
+        final Repository repository = getRepository(repoFolder);
+        final ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return 0;
+        }
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            revWalk.setRetainBody(false);
+            revWalk.markStart(revWalk.parseCommit(head));
+            long count = 0;
+            for (final RevCommit ignored : revWalk) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    //Whether the commits of indexedSha..headSha form a chain of single parent commits ending on top of indexedSha
+    public boolean isLinearOnTop(final File repoFolder, final String indexedSha, final String headSha) throws IOException {
+        try (RevWalk revWalk = new RevWalk(getRepository(repoFolder))) {
+            revWalk.setRetainBody(false);
+            revWalk.markStart(revWalk.parseCommit(ObjectId.fromString(headSha)));
+            revWalk.markUninteresting(revWalk.parseCommit(ObjectId.fromString(indexedSha)));
+            String expected = headSha;
+            for (final RevCommit commit : revWalk) {
+                if (!commit.getName().equals(expected) || commit.getParentCount() != 1) {
+                    return false;
+                }
+                expected = commit.getParent(0).getName();
+            }
+            return expected.equals(indexedSha);
+        } catch (MissingObjectException | IncorrectObjectTypeException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    //Closes the repository of the folder, before it's deleted
+    public void close(final File repoFolder) {
+        final Repository repository = repositories.remove(repoFolder.getAbsolutePath());
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    //Walks the commits of the revisions (HEAD when none, no commit when the repository is empty), as git log does. Walks started from
+    //several revisions order their commit date ties in the order of the revisions. Unknown revisions fail the same way git log does,
+    //with an unknown error
+    private long walk(final File repoFolder,
+                      final List<String> revisions,
+                      final String excludedSha,
+                      final boolean reverse,
+                      final long skip,
+                      final long maxCount,
+                      final GitCliService.CommitWriter writer) throws IOException, InterruptedException {
+        final Repository repository = getRepository(repoFolder);
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            if (revisions.isEmpty()) {
+                final ObjectId head = repository.resolve(Constants.HEAD);
+                if (head == null) {
+                    return 0;
+                }
+                revWalk.markStart(revWalk.parseCommit(head));
+            }
+            for (final String revision : revisions) {
+                final ObjectId start = repository.resolve(revision);
+                if (start == null) {
+                    throw readFailure(repoFolder, revision, null);
+                }
+                revWalk.markStart(revWalk.parseCommit(start));
+            }
+            if (excludedSha != null) {
+                revWalk.markUninteresting(revWalk.parseCommit(ObjectId.fromString(excludedSha)));
+            }
+            if (reverse) {
+                revWalk.sort(RevSort.REVERSE);
+            }
+
+            long position = 0;
+            long written = 0;
+            for (final RevCommit commit : revWalk) {
+                //nothing blocks while walking, interrupts (timeouts, cancelled requests) are checked between commits
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Commit walk interrupted");
+                }
+                if (position++ < skip) {
+                    continue;
+                }
+                if (written >= maxCount) {
+                    break;
+                }
+                writer.write(toCommitInfoDto(commit));
+                written++;
+            }
+            return written;
+        } catch (MissingObjectException | IncorrectObjectTypeException | IllegalArgumentException e) {
+            throw readFailure(repoFolder, revisions.isEmpty() ? Constants.HEAD : String.join(" ", revisions), e);
+        }
+    }
+
+    private CommitViewerException readFailure(final File repoFolder, final String revision, final Exception cause) {
+        log.error("CommitViewer : Failed to read commits of " + revision + " in " + repoFolder.getAbsolutePath());
+        return new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to read commits", cause);
+    }
+
+    //Same fields as GitLogParser.FORMAT
+    private CommitInfoDto toCommitInfoDto(final RevCommit commit) {
+        final PersonIdent author = commit.getAuthorIdent();
+        final String message = commit.getFullMessage();
+
+        //git ends raw messages with a new line, GitHub API doesn't
+        int messageLength = message.length();
+        while (messageLength > 0 && message.charAt(messageLength - 1) == '\n') {
+            messageLength--;
+        }
+
+        return CommitInfoDto.of(commit.getName(),
+                                message.substring(0, messageLength),
+                                author.getWhen().toInstant(),
+                                author.getName() + " <" + author.getEmailAddress() + ">");
+    }
+
+    private Repository getRepository(final File repoFolder) throws IOException {
+        try {
+            return repositories.computeIfAbsent(repoFolder.getAbsolutePath(), key -> open(repoFolder));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    //Mirrors are bare, temporary clones hold their repository in .git
+    private Repository open(final File repoFolder) {
+        final File dotGit = new File(repoFolder, DOT_GIT);
+        try {
+            return new FileRepositoryBuilder().setGitDir(dotGit.isDirectory() ? dotGit : repoFolder)
+                                              .setMustExist(true)
+                                              .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
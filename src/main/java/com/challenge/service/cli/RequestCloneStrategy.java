@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.cli;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.enterprise.context.RequestScoped;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+//Clone strategy asked by the current request (clone_strategy query parameter), null to use the configured one
+@RequestScoped
+public class RequestCloneStrategy {
+
+    //reactive continuations run outside of the request context, they carry the strategy of their request here
+    private static final ThreadLocal<CloneStrategy> CONTINUATION_STRATEGY = new ThreadLocal<>();
+
+    @Getter
+    @Setter
+    private CloneStrategy cloneStrategy;
+
+    //Runs the call with the given strategy, for code running outside of the request context
+    public static <T> T callWith(final CloneStrategy strategy, final Supplier<T> call) {
+        final CloneStrategy previous = CONTINUATION_STRATEGY.get();
+        CONTINUATION_STRATEGY.set(strategy);
+        try {
+            return call.get();
+        } finally {
+            CONTINUATION_STRATEGY.set(previous);
+        }
+    }
+
+    public static Optional<CloneStrategy> getContinuationStrategy() {
+        return Optional.ofNullable(CONTINUATION_STRATEGY.get());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+//Bounded in memory cache of commit pages. Entries are fresh for ttl-seconds, after that they are kept
+//(up to max-stale-minutes) so they can be revalidated against GitHub with the stored ETag
+@ApplicationScoped
+@Slf4j
+public class CommitPageCache {
+
+    //rough per object overhead used to estimate entry weights
+    private static final int OBJECT_OVERHEAD_BYTES = 64;
+
+    @ConfigProperty(name = "commit-viewer.page-cache.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.page-cache.ttl-seconds", defaultValue = "60")
+    Long ttlSeconds;
+
+    @ConfigProperty(name = "commit-viewer.page-cache.max-stale-minutes", defaultValue = "60")
+    Long maxStaleMinutes;
+
+    @ConfigProperty(name = "commit-viewer.page-cache.max-weight-mb", defaultValue = "64")
+    Long maxWeightMb;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    private Cache<Key, Entry> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                        .maximumWeight(maxWeightMb * 1024 * 1024)
+                        .weigher((final Key key, final Entry entry) -> entry.getWeight())
+                        .expireAfterWrite(Duration.ofMinutes(maxStaleMinutes))
+                        .build();
+    }
+
+    //Returns the cached entry, fresh or not. Callers must check isFresh and revalidate stale entries
+    public Optional<Entry> get(final Key key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            misses.increment();
+        } else if (isFresh(entry)) {
+            hits.increment();
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    public boolean isFresh(final Entry entry) {
+        return System.currentTimeMillis() - entry.getStoredAt() < TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    //Whether the page is the object cached for the key, i.e. it's sent again as is until it's replaced
+    public boolean holds(final Key key, final CommitInfoPageDto page) {
+        return enabled && Optional.ofNullable(cache.getIfPresent(key)).map(Entry::getPage).orElse(null) == page;
+    }
+
+    public void put(final Key key, final CommitInfoPageDto page, final String etag) {
+        if (enabled) {
+            cache.put(key, new Entry(page, etag, System.currentTimeMillis(), estimateWeight(key, page, etag)));
+        }
+    }
+
+    //Upstream answered 304 Not Modified, the entry is fresh again
+    public CommitInfoPageDto revalidated(final Key key, final Entry entry) {
+        revalidations.increment();
+        put(key, entry.getPage(), entry.getEtag());
+        return entry.getPage();
+    }
+
+    public void invalidate(final String user, final String repo) {
+        cache.asMap().keySet().removeIf(key -> key.getUser().equals(user) && key.getRepo().equals(repo));
+    }
+
+    //Commits (newest first) were pushed on top of the history the cached pages were built from. Pages stored between from and to
+    //(epoch millis, when that history was known to be the current one) are rebuilt from their commits moved down by the new ones.
+    //Other pages of the repo, and rebuilt pages missing some of their commits, are dropped. Returns the number of pages kept
+    public int shift(final String user, final String repo, final List<CommitInfoDto> newCommits, final long from, final long to) {
+        final List<Map.Entry<Key, Entry>> repoEntries = cache.asMap().entrySet().stream()
+                                                             .filter(cached -> cached.getKey().getUser().equals(user) && cached.getKey().getRepo().equals(repo))
+                                                             .collect(Collectors.toList());
+        cache.invalidateAll(repoEntries.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+
+        //commits of each page size by position in the new history, the new commits first
+        final Map<Integer, Map<Long, CommitInfoDto>> commitsByPerPage = new HashMap<>();
+        final Map<Integer, Long> totals = new HashMap<>();
+        final Map<Integer, Long> storedAts = new HashMap<>();
+        for (final Map.Entry<Key, Entry> cached : repoEntries) {
+            final Entry entry = cached.getValue();
+            if (entry.getStoredAt() < from || entry.getStoredAt() > to || entry.getPage().getItems() == null) {
+                continue;
+            }
+            final int perPage = cached.getKey().getPerPage();
+            final Map<Long, CommitInfoDto> commits = commitsByPerPage.computeIfAbsent(perPage, size -> {
+                final Map<Long, CommitInfoDto> moved = new HashMap<>();
+                for (int i = 0; i < newCommits.size(); i++) {
+                    moved.put((long) i, newCommits.get(i));
+                }
+                return moved;
+            });
+            final long start = (long) (cached.getKey().getPage() - 1) * perPage;
+            final List<CommitInfoDto> items = entry.getPage().getItems();
+            for (int i = 0; i < items.size(); i++) {
+                commits.put(start + i + newCommits.size(), items.get(i));
+            }
+            //a page short of commits is the last one, it tells the total
+            if (entry.getPage().getTotal() != null) {
+                totals.put(perPage, entry.getPage().getTotal() + newCommits.size());
+            } else if (items.size() < perPage) {
+                totals.put(perPage, start + items.size() + newCommits.size());
+            }
+            //rebuilt pages are no fresher than the pages they come from
+            storedAts.merge(perPage, entry.getStoredAt(), Math::min);
+        }
+
+        int kept = 0;
+        for (final Map.Entry<Integer, Map<Long, CommitInfoDto>> pageSize : commitsByPerPage.entrySet()) {
+            final int perPage = pageSize.getKey();
+            final Long total = totals.get(perPage);
+            final long lastPosition = total == null ? Collections.max(pageSize.getValue().keySet()) : total - 1;
+            for (int page = 1; (long) (page - 1) * perPage <= lastPosition; page++) {
+                final Optional<CommitInfoPageDto> rebuilt = rebuildPage(pageSize.getValue(), page, perPage, total);
+                if (rebuilt.isPresent()) {
+                    final Key key = Key.of(user, repo, page, perPage);
+                    //no ETag, once stale the page is fetched again
+                    cache.put(key, new Entry(rebuilt.get(), null, storedAts.get(perPage), estimateWeight(key, rebuilt.get(), null)));
+                    kept++;
+                }
+            }
+        }
+        log.debug("CommitViewer : " + newCommits.size() + " commits pushed to " + user + "/" + repo + ", kept " + kept + " of " + repoEntries.size() + " cached pages");
+        return kept;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    public long getWeight() {
+        return cache.asMap().values().stream().mapToLong(Entry::getWeight).sum();
+    }
+
+    //Page made of the commits at its positions, empty when one of them is unknown
+    private Optional<CommitInfoPageDto> rebuildPage(final Map<Long, CommitInfoDto> commits, final int page, final int perPage, final Long total) {
+        final long start = (long) (page - 1) * perPage;
+        final long end = total == null ? start + perPage : Math.min(start + perPage, total);
+        final List<CommitInfoDto> items = new ArrayList<>();
+        for (long position = start; position < end; position++) {
+            final CommitInfoDto commit = commits.get(position);
+            if (commit == null) {
+                return Optional.empty();
+            }
+            items.add(commit);
+        }
+        return Optional.of(CommitInfoPageDto.builder()
+                                            .items(items)
+                                            .page(page)
+                                            .perPage(perPage)
+                                            .count(items.size())
+                                            .total(total)
+                                            .totalPages(total == null ? null : (int) Math.ceil((double) total / (double) perPage))
+                                            .build());
+    }
+
+    private int estimateWeight(final Key key, final CommitInfoPageDto page, final String etag) {
+        long weight = OBJECT_OVERHEAD_BYTES * 2L + sizeOf(key.getUser()) + sizeOf(key.getRepo()) + sizeOf(etag);
+        if (page.getItems() != null) {
+            for (final CommitInfoDto item : page.getItems()) {
+                weight += OBJECT_OVERHEAD_BYTES * 2L + sizeOf(item.getSha()) + sizeOf(item.getMessage()) + sizeOf(item.getAuthor());
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private long sizeOf(final String value) {
+        return value == null ? 0 : OBJECT_OVERHEAD_BYTES + 2L * value.length();
+    }
+
+    @Value(staticConstructor = "of")
+    public static class Key {
+        String user;
+        String repo;
+        Integer page;
+        Integer perPage;
+    }
+
+    @Value
+    public static class Entry {
+        CommitInfoPageDto page;
+        String etag;
+        long storedAt;
+        int weight;
+    }
+}
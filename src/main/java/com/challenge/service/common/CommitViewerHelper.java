@@ -9,26 +9,30 @@ import com.challenge.model.api.dto.CommitInfoDto;
 import com.challenge.model.api.exception.CommitViewerException;
 import com.challenge.model.api.exception.ErrorCodeImpl;
 import com.challenge.model.api.exception.SkipFallbackException;
-import com.challenge.model.api.mapper.CommitViewerMapper;
-import com.challenge.service.api.GitHubApiClient;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.rest.client.inject.RestClient;
-import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,157 +40,130 @@ import java.util.regex.Pattern;
 @Slf4j
 public class CommitViewerHelper {
 
+    public static final String TEMP_FOLDER_PREFIX = "commit-viewer-tmp-dir-";
+
+    private static final String SHALLOW_FILE = "shallow";
+    private static final String PACK_FOLDER = "objects" + File.separator + "pack";
+    //full sha-1 or sha-256 object names, abbreviated ones could become ambiguous
+    private static final Pattern COMMIT_SHA = Pattern.compile("[0-9a-f]{40}|[0-9a-f]{64}");
+    private static final String CURSOR_SEPARATOR = ":";
+    private static final String PENDING_SEPARATOR = ",";
+    //walks of histories with many branches going on side by side stop carrying their pending commits, cursors would grow too long
+    private static final int MAX_CURSOR_PENDING = 16;
+    private static final String CURSOR_SHA = "(?:" + COMMIT_SHA.pattern() + ")";
+    private static final Pattern CURSOR = Pattern.compile("(" + CURSOR_SHA + ")(?:" + CURSOR_SEPARATOR + "([0-9]{1,9})"
+                                                          + "(?:" + CURSOR_SEPARATOR + "(" + CURSOR_SHA + "(?:" + PENDING_SEPARATOR + CURSOR_SHA + "){0,"
+                                                          + (MAX_CURSOR_PENDING - 1) + "}))?)?");
+
     @ConfigProperty(name = "commit-viewer.github-url", defaultValue = "https://github.com/")
     String gitHubUrl;
 
     @Inject
-    @RestClient
-    GitHubApiClient gitHubApiClient;
-
-    @Inject
-    CommitViewerMapper commitViewerMapper;
+    GitProcessExecutor gitProcessExecutor;
 
     public File createTempFolder() throws IOException {
-        final File tmpFile = Files.createTempDirectory("commit-viewer-tmp-dir-").toFile();
+        final File tmpFile = Files.createTempDirectory(TEMP_FOLDER_PREFIX).toFile();
         tmpFile.deleteOnExit();
         log.debug("CommitViewer : Created tmp folder at " + tmpFile.getAbsolutePath());
         return tmpFile;
     }
 
+    //Output lines of the process, stderr included. The exit code is not checked, callers look for git errors in the output
     public List<String> readProcessOutput(final File strTmpDirectory, final List<String> commandArgs) throws IOException, InterruptedException {
+        return gitProcessExecutor.run(strTmpDirectory, commandArgs, true, inputStream -> {
+            final List<String> strProcessOutput = new ArrayList<>();
+            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                strProcessOutput.add(line);
+            }
+            return strProcessOutput;
+        }).getOutput();
+    }
 
-        log.debug("CommitViewer : Starting process");
-        final List<String> strProcessOutput = new ArrayList<>();
-        String line;
-
-        final ProcessBuilder processBuilder = new ProcessBuilder(commandArgs)
-            .redirectErrorStream(true)
-            .directory(strTmpDirectory);
-
-        final Process process = processBuilder.start();
-
-        final BufferedReader bufferedReader = new BufferedReader(
-            new InputStreamReader(
-                process.getInputStream()));
+    //Streams the process output to the reader instead of buffering it, stderr is discarded so it can't corrupt the output
+    public <T> T readProcessOutput(final File strTmpDirectory,
+                                   final List<String> commandArgs,
+                                   final ProcessOutputReader<T> outputReader) throws IOException, InterruptedException {
+        return checkExitCode(commandArgs, gitProcessExecutor.run(strTmpDirectory, commandArgs, false, outputReader));
+    }
 
-        while ((line = bufferedReader.readLine()) != null) {
-            strProcessOutput.add(line);
-        }
+    //Same, killing the process after timeoutSeconds instead of the default git process timeout
+    public <T> T readProcessOutput(final File strTmpDirectory,
+                                   final List<String> commandArgs,
+                                   final long timeoutSeconds,
+                                   final ProcessOutputReader<T> outputReader) throws IOException, InterruptedException {
+        return checkExitCode(commandArgs, gitProcessExecutor.run(strTmpDirectory, commandArgs, false, timeoutSeconds, outputReader));
+    }
 
-        try {
-            process.waitFor();
-        } catch (Exception ex) {
-            log.error("CommitViewer : Error waiting for process");
-            deleteFolder(strTmpDirectory);
-            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to wait for process");
+    private <T> T checkExitCode(final List<String> commandArgs, final GitProcessExecutor.Result<T> result) {
+        if (result.getExitCode() != 0) {
+            log.error("CommitViewer : Process " + commandArgs.get(0) + " " + commandArgs.get(1) + " exited with code " + result.getExitCode());
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to run " + commandArgs.get(0) + " " + commandArgs.get(1));
         }
-        log.debug("CommitViewer : Process finished");
-        return strProcessOutput;
+        return result.getOutput();
     }
 
-    public List<String> createGitCloneCommand(final String strUser, final String strRepo) {
-        return List.of("git", "clone", "-n", getRepoUrl(strUser, strRepo));
+    //Shallow clones list the commits they hold, not the whole history
+    public boolean isShallow(final File repoFolder) {
+        return new File(repoFolder, SHALLOW_FILE).exists() || new File(new File(repoFolder, ".git"), SHALLOW_FILE).exists();
     }
 
-    public List<String> createGitLogCommand(final Integer page, final Integer perPage) {
-        final Integer commitsToSkip = page * perPage - perPage;
-        return List.of("git", "log", "--pretty=format:%H|||%s|||%b|||%aI|||%an <%ae>", "--skip", commitsToSkip.toString(), "-n", perPage.toString());
+    //Size of the packs received by a clone (bare or not), close to the bytes transferred
+    public long getPackSize(final File repoFolder) {
+        final File bareObjects = new File(repoFolder, PACK_FOLDER);
+        final File packFolder = bareObjects.isDirectory() ? bareObjects : new File(new File(repoFolder, ".git"), PACK_FOLDER);
+        final File[] packs = Optional.ofNullable(packFolder.listFiles((folder, name) -> name.endsWith(".pack"))).orElse(new File[0]);
+        long size = 0;
+        for (final File pack : packs) {
+            size += pack.length();
+        }
+        return size;
     }
 
-    //TODO: Need improvement!! If commit message has ||| parse will fail, try to use a mapper ??
-    public List<CommitInfoDto> logOutputToCommitInfoDtoList(final List<String> logOutput) {
-        final List<CommitInfoDto> commitInfoList = new ArrayList<>();
-
-        for (String temp : logOutput) {
-            final String[] data = temp.split("\\|\\|\\|");
-            if (data.length > 5) {
-                log.error("CommitViewer : Failed to parse git log response");
-                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to parse git log response");
-            }
-            commitInfoList.add(CommitInfoDto.of(data[0],
-                                                data[2].isEmpty() ? data[1] : data[1] + "\\n\\n" + data[2],
-                                                Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(data[3])),
-                                                data[4]));
+    //Cursors are opaque to clients, they hold the HEAD the walk started from, how many of its commits were returned and the commits
+    //the walk goes on from. Resuming from the last commit instead would only walk its ancestors, losing the commits merged in after it
+    public String toCursor(final Cursor cursor) {
+        final StringBuilder value = new StringBuilder(cursor.getHead()).append(CURSOR_SEPARATOR).append(cursor.getPosition());
+        if (!cursor.getPending().isEmpty()) {
+            value.append(CURSOR_SEPARATOR).append(String.join(PENDING_SEPARATOR, cursor.getPending()));
         }
-        return commitInfoList;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
     }
 
-    public Integer getTotalNumberOfCommitsFromLink(final String user, final String repo, final Integer perPage) {
-
-        final Response gitHubApiResponseFirstCall;
-        final Response gitHubApiResponseSecondCall;
-
-        int totalPages = 0;
-        int totalCommits = 0;
-        int firstPageItems = 0;
-        int lastPageItems = 0;
-
-        //Make first call to get last link
+    //Null when there's no cursor (first page). Cursors holding just a sha (before positions were added) resume after that commit
+    public Cursor fromCursor(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
         try {
-            log.debug("CommitViewer : Calling GitHub API");
-            gitHubApiResponseFirstCall = gitHubApiClient.getCommitsResponse(user, repo, 1, perPage);
-        } catch (ResteasyWebApplicationException e) {
-            log.error("CommitViewer : Error retrieving commits from GitHub API.");
-            if (e.unwrap().getResponse().getStatus() == 404) {
-                throw new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "Repository not found : " + getRepoUrl(user, repo));
-            } else {
-                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
+            final String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final Matcher matcher = CURSOR.matcher(value);
+            if (matcher.matches()) {
+                return Cursor.of(matcher.group(1),
+                                 matcher.group(2) == null ? 1 : Integer.parseInt(matcher.group(2)),
+                                 matcher.group(3) == null ? List.of() : List.of(matcher.group(3).split(PENDING_SEPARATOR)));
             }
+        } catch (IllegalArgumentException e) {
+            log.debug("CommitViewer : Cursor " + cursor + " is not valid");
         }
+        //a bad cursor is bad for the CLI too
+        throw new SkipFallbackException(ErrorCodeImpl.BAD_REQUEST, "Invalid cursor : " + cursor);
+    }
 
-        //Map response body to List of GitHubApiCommitDto and get total number of commits
-        try {
-            firstPageItems = commitViewerMapper.gitHubApiResponseToGitHubApiCommitDto(
-                gitHubApiResponseFirstCall.readEntity(String.class)).size();
-        } catch (Exception e) {
-            log.error("CommitViewer : Error retrieving commits from GitHub API.", e);
-            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
+    //Page number of a GitHub pagination link (e.g. rel="last"), if the response has it
+    public Optional<Integer> getPageFromLink(final Response response, final String rel) {
+        final Link link = response.getLink(rel);
+        if (link == null || link.getUri().getRawQuery() == null) {
+            return Optional.empty();
         }
-
-        //Get last link from headers (thanks GitHub)
-        final String lastLink = gitHubApiResponseFirstCall.getLink("last") == null ? "0" : gitHubApiResponseFirstCall.getLink("last").toString();
-
-        //only one page duhhh
-        if ("0".equals(lastLink)) {
-            totalCommits = firstPageItems;
-        } else {
-            // We need to get last page from link
-            final Pattern pattern = Pattern.compile("\\=(.*?)\\&");
-            final Matcher matcher = pattern.matcher(lastLink);
-
-            // now try to find the regex match and get total pages
-            if (matcher.find()) {
-                totalPages = Integer.parseInt(matcher.group(1));
-            } else {
-                log.error("CommitViewer : Did not find a match");
-            }
-
-            //Make second call to get last page items
-            try {
-                log.debug("CommitViewer : Calling GitHub API");
-                gitHubApiResponseSecondCall = gitHubApiClient.getCommitsResponse(user, repo, totalPages, perPage);
-            } catch (ResteasyWebApplicationException e) {
-                log.error("CommitViewer : Error retrieving commits from GitHub API.");
-                if (e.unwrap().getResponse().getStatus() == 404) {
-                    throw new SkipFallbackException(ErrorCodeImpl.NOT_FOUND,
-                                                    "Repository not found : " + getRepoUrl(user, repo));
-                } else {
-                    throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
-                }
-            }
-
-            //Map response body to List of GitHubApiCommitDto and get total number of commits
-            try {
-                lastPageItems = commitViewerMapper.gitHubApiResponseToGitHubApiCommitDto(
-                    gitHubApiResponseSecondCall.readEntity(String.class)).size();
-            } catch (Exception e) {
-                log.error("CommitViewer : Error retrieving commits from GitHub API.", e);
-                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to contact GitHub API");
+        for (final String param : link.getUri().getRawQuery().split("&")) {
+            if (param.startsWith("page=")) {
+                return Optional.of(Integer.parseInt(param.substring("page=".length())));
             }
-            totalCommits = ((totalPages - 1) * perPage) + lastPageItems;
         }
-
-        return totalCommits;
+        log.error("CommitViewer : Did not find page in link " + link);
+        return Optional.empty();
     }
 
     public void deleteFolder(final File folder) {
@@ -198,7 +175,78 @@ public class CommitViewerHelper {
         }
     }
 
+    //Temp clones left behind by a previous run (e.g. stopped while cloning). Younger ones may belong to a clone still running
+    public void deleteStaleTempFolders(final long olderThanMillis) {
+        final long now = System.currentTimeMillis();
+        final File[] staleFolders = Optional.ofNullable(new File(System.getProperty("java.io.tmpdir"))
+                                                            .listFiles(file -> file.isDirectory() && file.getName().startsWith(TEMP_FOLDER_PREFIX)
+                                                                               && now - file.lastModified() >= olderThanMillis))
+                                            .orElse(new File[0]);
+        for (final File staleFolder : staleFolders) {
+            try {
+                deleteFolder(staleFolder);
+            } catch (CommitViewerException e) {
+                log.error("CommitViewer : Failed to delete stale temp folder " + staleFolder.getAbsolutePath());
+            }
+        }
+    }
+
+    public boolean isRepositoryNotFound(final List<String> processOutput) {
+        return processOutput.stream().anyMatch(line -> line.contains("Repository not found"));
+    }
+
+    public boolean isGitError(final List<String> processOutput) {
+        return processOutput.stream().anyMatch(line -> line.startsWith("fatal:") || line.startsWith("error:"));
+    }
+
+    //user and repo are used as folder names, don't let them escape the parent folder
+    public String checkPathSegment(final String segment) {
+        if (segment == null || segment.isEmpty() || ".".equals(segment) || "..".equals(segment)
+            || segment.contains("/") || segment.contains("\\")) {
+            throw new CommitViewerException(ErrorCodeImpl.BAD_REQUEST, "Invalid user or repository name : " + segment);
+        }
+        return segment;
+    }
+
     public String getRepoUrl(final String user, final String repo) {
         return gitHubUrl + user + "/" + repo;
     }
+
+    @FunctionalInterface
+    public interface ProcessOutputReader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
+
+    //Position of a cursor in the walk from head : commits before it were already returned, the walk goes on from the pending ones.
+    //Pending commits are listed in the order the walk reached them, so a walk restarted from them breaks commit date ties the same way.
+    //Empty when they're not known, the walk of head is then resumed at position
+    @Value(staticConstructor = "of")
+    public static class Cursor {
+        String head;
+        int position;
+        List<String> pending;
+
+        //Cursor of the first page, the walk starts from head
+        public static Cursor start(final String head) {
+            return of(head, 0, List.of(head));
+        }
+
+        //Cursor after the commits of a page read from this one. Every commit popped by the walk was pending, its parents not reached yet
+        //become pending. The pending ones aren't known anymore when a commit wasn't pending or its parents are missing
+        public Cursor next(final List<CommitInfoDto> commits, final Map<String, List<String>> parents) {
+            final Set<String> nextPending = new LinkedHashSet<>(pending);
+            final Set<String> walked = new HashSet<>();
+            boolean known = !pending.isEmpty();
+            for (int i = 0; known && i < commits.size(); i++) {
+                final String sha = commits.get(i).getSha();
+                final List<String> commitParents = parents.get(sha);
+                known = commitParents != null && nextPending.remove(sha);
+                walked.add(sha);
+                if (known) {
+                    commitParents.stream().filter(parent -> !walked.contains(parent)).forEach(nextPending::add);
+                }
+            }
+            return of(head, position + commits.size(), known && nextPending.size() <= MAX_CURSOR_PENDING ? List.copyOf(nextPending) : List.of());
+        }
+    }
 }
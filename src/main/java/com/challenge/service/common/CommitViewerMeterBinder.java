@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.service.api.CommitCountIndex;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.api.GitHubApiConnections;
+import com.challenge.service.api.GitHubRateLimit;
+import com.challenge.service.cli.GitCliService;
+import com.challenge.service.cli.GitCommitIndex;
+import com.challenge.service.cli.GitMirrorCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import org.apache.commons.io.FileUtils;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Optional;
+
+//Gauges and counters over state kept by other beans (caches, request coalescing, disk usage), read when metrics are scraped
+@ApplicationScoped
+public class CommitViewerMeterBinder {
+
+    private static final String OUTCOME = "outcome";
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Inject
+    EncodedPageCache encodedPageCache;
+
+    @Inject
+    GitMirrorCache gitMirrorCache;
+
+    @Inject
+    GitCommitIndex gitCommitIndex;
+
+    @Inject
+    GitApiService gitApiService;
+
+    @Inject
+    CommitCountIndex commitCountIndex;
+
+    @Inject
+    GitCliService gitCliService;
+
+    @Inject
+    PagePrefetcher pagePrefetcher;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    @Inject
+    GitProcessExecutor gitProcessExecutor;
+
+    @Inject
+    GitHubApiConnections gitHubApiConnections;
+
+    void bind(@Observes final StartupEvent event) {
+        bindPageCache();
+        bindResponseCache();
+        bindMirrorCache();
+        bindSingleFlight("github_page", gitApiService.getPageFlights());
+        bindSingleFlight("github_count", commitCountIndex.getCountFlights());
+        bindSingleFlight("cli_page", gitCliService.getPageFlights());
+        Gauge.builder("commit_viewer.github.rate_limit.remaining", gitHubRateLimit, GitHubRateLimit::getRemaining)
+             .description("GitHub API requests left in the rate limit window, -1 until GitHub tells").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.github.requests.in_flight", gitHubApiConnections, GitHubApiConnections::getInFlight)
+             .description("GitHub API requests waiting for their response").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.prefetch.queued", pagePrefetcher, PagePrefetcher::getQueued)
+             .description("Prefetches of adjacent pages waiting for a thread").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.git.processes.running", gitProcessExecutor, GitProcessExecutor::getRunning)
+             .description("git processes running").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.git.processes.queued", gitProcessExecutor, GitProcessExecutor::getQueued)
+             .description("git processes waiting for a slot").strongReference(true).register(meterRegistry);
+    }
+
+    private void bindPageCache() {
+        FunctionCounter.builder("commit_viewer.page_cache.requests", commitPageCache, CommitPageCache::getHits)
+                       .description("Commit page cache lookups").tags(OUTCOME, "hit").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.page_cache.requests", commitPageCache, CommitPageCache::getMisses)
+                       .description("Commit page cache lookups").tags(OUTCOME, "miss").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.page_cache.requests", commitPageCache, CommitPageCache::getRevalidations)
+                       .description("Commit page cache lookups").tags(OUTCOME, "revalidated").register(meterRegistry);
+        Gauge.builder("commit_viewer.page_cache.size", commitPageCache, CommitPageCache::getSize)
+             .description("Commit pages cached").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.page_cache.weight", commitPageCache, CommitPageCache::getWeight)
+             .description("Estimated memory used by cached commit pages").baseUnit("bytes").strongReference(true).register(meterRegistry);
+    }
+
+    private void bindResponseCache() {
+        FunctionCounter.builder("commit_viewer.response_cache.requests", encodedPageCache, EncodedPageCache::getHits)
+                       .description("Commit pages sent from their encoded bytes").tags(OUTCOME, "hit").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.response_cache.requests", encodedPageCache, EncodedPageCache::getMisses)
+                       .description("Commit pages sent from their encoded bytes").tags(OUTCOME, "miss").register(meterRegistry);
+        Gauge.builder("commit_viewer.response_cache.size", encodedPageCache, EncodedPageCache::getSize)
+             .description("Commit pages kept encoded").strongReference(true).register(meterRegistry);
+    }
+
+    private void bindMirrorCache() {
+        Gauge.builder("commit_viewer.mirror_cache.size", gitMirrorCache, GitMirrorCache::getTotalSizeBytes)
+             .description("Disk used by git mirrors").baseUnit("bytes").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.mirror_cache.max_size", gitMirrorCache, GitMirrorCache::getMaxSizeBytes)
+             .description("Disk budget of git mirrors").baseUnit("bytes").strongReference(true).register(meterRegistry);
+        Gauge.builder("commit_viewer.mirror_cache.usable_space", gitMirrorCache, mirrorCache -> mirrorCache.getRootFolder().getUsableSpace())
+             .description("Usable space on the git mirrors disk").baseUnit("bytes").strongReference(true).register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.mirror_cache.updates", gitMirrorCache, GitMirrorCache::getUpdates)
+                       .description("Clones and fetches of git mirrors").tags(OUTCOME, "executed").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.mirror_cache.updates", gitMirrorCache, GitMirrorCache::getCoalescedUpdates)
+                       .description("Clones and fetches of git mirrors").tags(OUTCOME, "coalesced").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.commit_index.updates", gitCommitIndex, GitCommitIndex::getAppends)
+                       .description("Commit index updates of git mirrors").tags("type", "append").register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.commit_index.updates", gitCommitIndex, GitCommitIndex::getBuilds)
+                       .description("Commit index updates of git mirrors").tags("type", "build").register(meterRegistry);
+        Gauge.builder("commit_viewer.temp_clones.size", this, CommitViewerMeterBinder::getTempClonesSize)
+             .description("Disk used by temporary clones (mirror cache disabled)").baseUnit("bytes").strongReference(true).register(meterRegistry);
+    }
+
+    private void bindSingleFlight(final String flight, final SingleFlight<?, ?> singleFlight) {
+        FunctionCounter.builder("commit_viewer.coalescing", singleFlight, SingleFlight::getExecutions)
+                       .description("Requests that ran or joined an identical in-flight request").tags("flight", flight, OUTCOME, "executed")
+                       .register(meterRegistry);
+        FunctionCounter.builder("commit_viewer.coalescing", singleFlight, SingleFlight::getCoalesced)
+                       .description("Requests that ran or joined an identical in-flight request").tags("flight", flight, OUTCOME, "coalesced")
+                       .register(meterRegistry);
+    }
+
+    private double getTempClonesSize() {
+        final File[] tempFolders = Optional.ofNullable(new File(System.getProperty("java.io.tmpdir"))
+                                                           .listFiles(file -> file.isDirectory() && file.getName().startsWith(CommitViewerHelper.TEMP_FOLDER_PREFIX)))
+                                           .orElse(new File[0]);
+        return Arrays.stream(tempFolders).mapToLong(this::sizeOf).sum();
+    }
+
+    private long sizeOf(final File folder) {
+        try {
+            return FileUtils.sizeOfDirectory(folder);
+        } catch (RuntimeException e) {
+            //clone finished and its folder was deleted meanwhile
+            return 0;
+        }
+    }
+}
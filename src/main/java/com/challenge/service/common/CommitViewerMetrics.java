@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCode;
+import com.challenge.model.api.exception.RateLimitedException;
+import com.challenge.model.api.exception.SkipFallbackException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.microprofile.faulttolerance.exceptions.TimeoutException;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+//Timers and counters of upstream calls (GitHub API, git processes) and of the fault tolerance chain (failures, retries, fallbacks).
+//Every meter is tagged by outcome, gauges of caches and disk usage are bound by CommitViewerMeterBinder
+@ApplicationScoped
+public class CommitViewerMetrics {
+
+    public static final String API = "api";
+    public static final String CLI = "cli";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    private static final String OUTCOME = "outcome";
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    //status is -1 when GitHub didn't answer (e.g. connection failure)
+    public void recordGitHubCall(final String call, final long startNanos, final int status) {
+        Timer.builder("commit_viewer.github.requests")
+             .description("GitHub API calls")
+             .tags("call", call, OUTCOME, getGitHubOutcome(status))
+             .publishPercentileHistogram()
+             .register(meterRegistry)
+             .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    //outcome is success, error (non zero exit code, failed read), timeout or cancelled (killed by GitProcessExecutor)
+    public void recordProcess(final List<String> commandArgs, final long startNanos, final String outcome, final long outputBytes) {
+        //git sub command (clone, fetch, log, rev-list...), not the arguments
+        final String command = "git".equals(commandArgs.get(0)) && commandArgs.size() > 1 ? commandArgs.get(1) : commandArgs.get(0);
+        Timer.builder("commit_viewer.git.process")
+             .description("git process executions")
+             .tags("command", command, OUTCOME, outcome)
+             .publishPercentileHistogram()
+             .register(meterRegistry)
+             .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("commit_viewer.git.process.output")
+                           .description("Bytes read from git process stdout")
+                           .baseUnit("bytes")
+                           .tags("command", command, OUTCOME, outcome)
+                           .register(meterRegistry)
+                           .record(outputBytes);
+    }
+
+    //Time a git process waited for a slot of GitProcessExecutor, rejected ones included
+    public void recordProcessWait(final long startNanos) {
+        Timer.builder("commit_viewer.git.process.queue")
+             .description("Time git processes waited to start")
+             .publishPercentileHistogram()
+             .register(meterRegistry)
+             .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    //Clone (or deepening of a shallow clone) made with the given strategy, transferred bytes being the size of the received packs
+    public void recordClone(final String strategy, final String operation, final long startNanos, final boolean success, final long transferredBytes) {
+        final String outcome = success ? SUCCESS : ERROR;
+        Timer.builder("commit_viewer.git.clone")
+             .description("git clones of the CLI fallback, per clone strategy")
+             .tags("strategy", strategy, "operation", operation, OUTCOME, outcome)
+             .register(meterRegistry)
+             .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("commit_viewer.git.clone.transferred")
+                           .description("Bytes received by git clones of the CLI fallback, per clone strategy")
+                           .baseUnit("bytes")
+                           .tags("strategy", strategy, "operation", operation, OUTCOME, outcome)
+                           .register(meterRegistry)
+                           .record(transferredBytes);
+    }
+
+    //Prefetch of an adjacent page, scheduled and done (success, error) or dropped (paused, repo_busy, over_budget, rejected)
+    public void recordPrefetch(final String method, final String outcome) {
+        Counter.builder("commit_viewer.prefetches")
+               .description("Prefetches of adjacent pages, per backend and outcome")
+               .tags("method", method, OUTCOME, outcome)
+               .register(meterRegistry)
+               .increment();
+    }
+
+    //HEAD change of a repository learned by polling or from a webhook, cached pages and totals shifted or invalidated
+    public void recordSync(final String source, final String outcome) {
+        Counter.builder("commit_viewer.sync.changes")
+               .description("HEAD changes of synced repositories, per source and outcome")
+               .tags("source", source, OUTCOME, outcome)
+               .register(meterRegistry)
+               .increment();
+    }
+
+    //An attempt of a fault tolerant call ended. For the API the first attempt is the request itself and following ones are retries,
+    //for the CLI the first attempt is the fallback. Returns the failure reason, null on success
+    public String recordAttempt(final String method, final int attempt, final String previousFailure, final Throwable failure) {
+        final String outcome = failure == null ? SUCCESS : ERROR;
+        final String reason = failure == null ? null : getReason(failure);
+        if (failure != null) {
+            Counter.builder("commit_viewer.failures")
+                   .description("Failed GitHub API or git CLI attempts, per reason")
+                   .tags("method", method, "reason", reason, OUTCOME, ERROR)
+                   .register(meterRegistry)
+                   .increment();
+        }
+        if (attempt > 1) {
+            Counter.builder("commit_viewer.retries")
+                   .description("Retries of GitHub API or git CLI calls, per reason of the previous failure")
+                   .tags("method", method, "reason", String.valueOf(previousFailure), OUTCOME, outcome)
+                   .register(meterRegistry)
+                   .increment();
+        } else if (CLI.equals(method)) {
+            Counter.builder("commit_viewer.fallbacks")
+                   .description("Fallbacks to the git CLI, per reason of the GitHub API failure")
+                   .tags("reason", String.valueOf(previousFailure), OUTCOME, outcome)
+                   .register(meterRegistry)
+                   .increment();
+        }
+        return reason;
+    }
+
+    private String getReason(final Throwable failure) {
+        //timeouts interrupt the thread running the call, the TimeoutException is only seen by the caller
+        if (failure instanceof TimeoutException || failure instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+            return "timeout";
+        }
+        if (failure instanceof RateLimitedException) {
+            return "rate_limited";
+        }
+        if (failure instanceof CommitViewerException) {
+            return getReason(((CommitViewerException) failure).getErrorCode());
+        }
+        if (failure instanceof SkipFallbackException) {
+            return getReason(((SkipFallbackException) failure).getErrorCode());
+        }
+        return "unexpected";
+    }
+
+    private String getReason(final ErrorCode errorCode) {
+        return errorCode instanceof Enum ? ((Enum<?>) errorCode).name().toLowerCase(Locale.US) : "error_" + errorCode.getCode();
+    }
+
+    private String getGitHubOutcome(final int status) {
+        if (status < 0) {
+            return "io_error";
+        }
+        if (status == 304) {
+            return "not_modified";
+        }
+        if (status == 404) {
+            return "not_found";
+        }
+        if (status == 403 || status == 429) {
+            return "rate_limited";
+        }
+        return status < 300 ? SUCCESS : (status < 500 ? "client_error" : "server_error");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Value;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+//Commit pages as sent to clients : their JSON bytes, the gzip variant (built the first time a client accepts it) and a strong ETag.
+//Entries are tied to the page object they were encoded from (weak identity keys), so a page served again from the page cache reuses
+//its bytes, while pages fetched since (e.g. after a push) are new objects encoded once. Only pages of the page cache are encoded here,
+//see EncodedPageFilter. Bounded by the size of the bytes
+@ApplicationScoped
+public class EncodedPageCache {
+
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+    //first bytes of the SHA-256 of the JSON, enough to tell pages apart
+    private static final int ETAG_BYTES = 16;
+
+    @ConfigProperty(name = "commit-viewer.response-cache.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.response-cache.max-weight-mb", defaultValue = "32")
+    Long maxWeightMb;
+
+    //smaller pages are sent as is, gzip saves too little on them
+    @ConfigProperty(name = "commit-viewer.response-cache.gzip-min-bytes", defaultValue = "1024")
+    Integer gzipMinBytes;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private Cache<CommitInfoPageDto, EncodedPage> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                        .weakKeys()
+                        .maximumWeight(maxWeightMb * 1024 * 1024)
+                        .weigher((final CommitInfoPageDto page, final EncodedPage encoded) -> encoded.getWeight())
+                        .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //Encoded page, serialized only the first time this page object is sent
+    public EncodedPage get(final CommitInfoPageDto page) throws IOException {
+        final EncodedPage cached = cache.getIfPresent(page);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        final byte[] json = objectMapper.writeValueAsBytes(page);
+        final EncodedPage encoded = new EncodedPage(json, null, toEtag(json));
+        cache.put(page, encoded);
+        return encoded;
+    }
+
+    public boolean isCompressible(final EncodedPage encoded) {
+        return encoded.getJson().length >= gzipMinBytes;
+    }
+
+    //Gzip variant of the page, compressed the first time a client accepts it
+    public byte[] getGzip(final CommitInfoPageDto page, final EncodedPage encoded) throws IOException {
+        if (encoded.getGzip() != null) {
+            return encoded.getGzip();
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(encoded.getJson().length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed)) {
+            gzipOutputStream.write(encoded.getJson());
+        }
+        final byte[] gzip = compressed.toByteArray();
+        //replaced only if still cached, so the weight is updated with the gzip bytes
+        cache.asMap().replace(page, encoded, new EncodedPage(encoded.getJson(), gzip, encoded.getEtag()));
+        return gzip;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private String toEtag(final byte[] json) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            final StringBuilder etag = new StringBuilder(ETAG_BYTES * 2 + 2).append('"');
+            for (int i = 0; i < ETAG_BYTES; i++) {
+                etag.append(String.format("%02x", digest[i]));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Value
+    public static class EncodedPage {
+        byte[] json;
+        byte[] gzip;
+        //quoted, as sent in the ETag header
+        String etag;
+
+        //a representation has its own strong ETag, the gzip one differs from the JSON one
+        public String getGzipEtag() {
+            return etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+        }
+
+        int getWeight() {
+            return json.length + (gzip == null ? 0 : gzip.length) + etag.length() * 2;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.CountingInputStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Runs git processes, at most max-processes at once. Processes over it wait for a slot up to queue-timeout-seconds and are then rejected.
+//Reading a process output blocks on its pipe and ignores interrupts, so a watchdog kills (with their children, e.g. git-remote-https)
+//the processes running longer than their timeout and the ones whose caller was interrupted (fault tolerance timeout, cancelled request).
+//A killed process has exited when its caller gets the error, nothing writes into its folder anymore
+@ApplicationScoped
+@Slf4j
+public class GitProcessExecutor {
+
+    public static final String TIMEOUT = "timeout";
+    public static final String CANCELLED = "cancelled";
+
+    private static final long WATCHDOG_INTERVAL_MILLIS = 200;
+    private static final long KILL_WAIT_SECONDS = 10;
+
+    @ConfigProperty(name = "commit-viewer.git.max-processes", defaultValue = "8")
+    Integer maxProcesses;
+
+    @ConfigProperty(name = "commit-viewer.git.queue-timeout-seconds", defaultValue = "30")
+    Long queueTimeoutSeconds;
+
+    @ConfigProperty(name = "commit-viewer.git.process-timeout-seconds", defaultValue = "300")
+    Long processTimeoutSeconds;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    private final Set<RunningProcess> running = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private Semaphore permits;
+    private ScheduledExecutorService watchdog;
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(maxProcesses, true);
+        watchdog = Executors.newSingleThreadScheduledExecutor();
+        watchdog.scheduleWithFixedDelay(this::killStuckProcesses, WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        watchdog.shutdownNow();
+        running.forEach(process -> kill(process, CANCELLED));
+    }
+
+    //Runs the command with the default process timeout
+    public <T> Result<T> run(final File directory,
+                             final List<String> commandArgs,
+                             final boolean mergeErrors,
+                             final CommitViewerHelper.ProcessOutputReader<T> outputReader) throws IOException, InterruptedException {
+        return run(directory, commandArgs, mergeErrors, processTimeoutSeconds, outputReader);
+    }
+
+    //Runs the command, its stdout read by outputReader while it runs. stderr is merged into stdout or discarded
+    public <T> Result<T> run(final File directory,
+                             final List<String> commandArgs,
+                             final boolean mergeErrors,
+                             final long timeoutSeconds,
+                             final CommitViewerHelper.ProcessOutputReader<T> outputReader) throws IOException, InterruptedException {
+        acquire(commandArgs);
+        try {
+            log.debug("CommitViewer : Starting process");
+            final long start = System.nanoTime();
+            final ProcessBuilder processBuilder = new ProcessBuilder(commandArgs).directory(directory);
+            if (mergeErrors) {
+                processBuilder.redirectErrorStream(true);
+            } else {
+                processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            }
+            final RunningProcess process = new RunningProcess(processBuilder.start(), Thread.currentThread(), start + TimeUnit.SECONDS.toNanos(timeoutSeconds));
+            running.add(process);
+
+            final CountingInputStream countingInputStream = new CountingInputStream(process.getProcess().getInputStream());
+            final T output;
+            final int exitCode;
+            try (InputStream inputStream = countingInputStream) {
+                output = outputReader.read(inputStream);
+                exitCode = process.getProcess().waitFor();
+            } catch (IOException | RuntimeException e) {
+                kill(process, CANCELLED);
+                awaitExit(process);
+                commitViewerMetrics.recordProcess(commandArgs, start, getOutcome(process, false), countingInputStream.getByteCount());
+                checkKilled(process, commandArgs);
+                throw e;
+            } catch (InterruptedException e) {
+                kill(process, CANCELLED);
+                awaitExit(process);
+                commitViewerMetrics.recordProcess(commandArgs, start, CANCELLED, countingInputStream.getByteCount());
+                throw e;
+            } finally {
+                running.remove(process);
+            }
+            commitViewerMetrics.recordProcess(commandArgs, start, getOutcome(process, exitCode == 0), countingInputStream.getByteCount());
+            //output of a killed process ends early, it's not a result
+            checkKilled(process, commandArgs);
+            log.debug("CommitViewer : Process finished");
+            return new Result<>(output, exitCode);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public long getProcessTimeoutSeconds() {
+        return processTimeoutSeconds;
+    }
+
+    public int getRunning() {
+        return maxProcesses - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    private void acquire(final List<String> commandArgs) throws InterruptedException {
+        final long start = System.nanoTime();
+        queued.incrementAndGet();
+        final boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutSeconds, TimeUnit.SECONDS);
+        } finally {
+            queued.decrementAndGet();
+            commitViewerMetrics.recordProcessWait(start);
+        }
+        if (!acquired) {
+            log.error("CommitViewer : No git process slot after " + queueTimeoutSeconds + " seconds, rejecting " + String.join(" ", commandArgs));
+            throw new CommitViewerException(ErrorCodeImpl.SERVICE_UNAVAILABLE, "Too many git processes running");
+        }
+    }
+
+    private String getOutcome(final RunningProcess process, final boolean success) {
+        if (TIMEOUT.equals(process.getKilledBy().get())) {
+            return TIMEOUT;
+        }
+        if (process.getCaller().isInterrupted()) {
+            return CANCELLED;
+        }
+        return success ? CommitViewerMetrics.SUCCESS : CommitViewerMetrics.ERROR;
+    }
+
+    //Errors of a process killed by the watchdog, or by its caller when reading its output failed
+    private void checkKilled(final RunningProcess process, final List<String> commandArgs) throws InterruptedException {
+        final String killedBy = process.getKilledBy().get();
+        if (TIMEOUT.equals(killedBy)) {
+            log.error("CommitViewer : Process " + String.join(" ", commandArgs) + " killed after running for its timeout");
+            throw new CommitViewerException(ErrorCodeImpl.TIME_OUT, "git process timed out");
+        }
+        if (CANCELLED.equals(killedBy) && process.getCaller().isInterrupted()) {
+            log.debug("CommitViewer : Process " + String.join(" ", commandArgs) + " killed, its request was cancelled");
+            Thread.interrupted();
+            throw new InterruptedException("git process cancelled");
+        }
+    }
+
+    private void killStuckProcesses() {
+        final long now = System.nanoTime();
+        for (final RunningProcess process : running) {
+            if (process.getCaller().isInterrupted()) {
+                kill(process, CANCELLED);
+            } else if (now - process.getDeadline() >= 0) {
+                kill(process, TIMEOUT);
+            }
+        }
+    }
+
+    //Kills the process and its children (children of a dead process are not its descendants anymore) without waiting for it to exit,
+    //the watchdog goes on with the other processes. Its caller waits for it (awaitExit) before getting the error
+    private void kill(final RunningProcess process, final String reason) {
+        if (!process.getKilledBy().compareAndSet(null, reason) || !process.getProcess().isAlive()) {
+            return;
+        }
+        log.debug("CommitViewer : Killing git process (" + reason + ")");
+        process.getProcess().descendants().forEach(ProcessHandle::destroyForcibly);
+        process.getProcess().destroyForcibly();
+        process.getProcess().onExit()
+               .orTimeout(KILL_WAIT_SECONDS, TimeUnit.SECONDS)
+               .whenComplete((exited, e) -> {
+                   if (e != null) {
+                       log.error("CommitViewer : git process still running " + KILL_WAIT_SECONDS + " seconds after being killed");
+                   }
+               });
+    }
+
+    //Waits for a killed process to exit, so nothing writes into its folder anymore
+    private void awaitExit(final RunningProcess process) {
+        //the caller may be interrupted, the wait must not be
+        boolean interrupted = Thread.interrupted();
+        try {
+            //kill logs the processes still running by then
+            process.getProcess().waitFor(KILL_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //Output and exit code of a process
+    @Value
+    public static class Result<T> {
+        T output;
+        int exitCode;
+    }
+
+    @Value
+    private static class RunningProcess {
+        Process process;
+        Thread caller;
+        long deadline;
+        //null while the process is not killed, otherwise TIMEOUT or CANCELLED
+        AtomicReference<String> killedBy = new AtomicReference<>();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Warms the pages next to the one just served (users almost always ask the next one), on a small executor of its own so
+//prefetches never take threads from real requests. Pages already warm are skipped. Prefetches are dropped rather than queued when the queue is full,
+//when a repository already has max-per-repo of them pending, when the per minute budget is spent or while upstream is backing off
+//(after a failed prefetch, or GitHub API rate limit under its background reserve)
+@ApplicationScoped
+@Slf4j
+public class PagePrefetcher {
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @ConfigProperty(name = "commit-viewer.prefetch.enabled", defaultValue = "false")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.previous-page", defaultValue = "false")
+    Boolean previousPage;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.threads", defaultValue = "2")
+    Integer threads;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.max-queued", defaultValue = "20")
+    Integer maxQueued;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.max-per-repo", defaultValue = "1")
+    Integer maxPerRepo;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.max-per-minute", defaultValue = "30")
+    Integer maxPerMinute;
+
+    @ConfigProperty(name = "commit-viewer.prefetch.failure-pause-seconds", defaultValue = "60")
+    Long failurePauseSeconds;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    private final Set<CommitPageCache.Key> pending = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> pendingPerRepo = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor prefetchExecutor;
+    private long budgetWindowStart;
+    private int budgetUsed;
+    private volatile long pausedUntil;
+
+    @PostConstruct
+    void init() {
+        prefetchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxQueued));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    //Schedules the pages around the served one with the loader of the backend that served it
+    public void prefetchAdjacent(final String backend, final String user, final String repo, final CommitInfoPageDto servedPage, final PageLoader loader) {
+        if (!enabled || servedPage.getPage() == null) {
+            return;
+        }
+        final int page = servedPage.getPage();
+        //no next page past the last one, or after a page that isn't full
+        final boolean lastPage = servedPage.getTotalPages() != null ? page >= servedPage.getTotalPages() : servedPage.getCount() < servedPage.getPerPage();
+        if (!lastPage) {
+            schedule(backend, CommitPageCache.Key.of(user, repo, page + 1, servedPage.getPerPage()), loader);
+        }
+        if (previousPage && page > 1) {
+            schedule(backend, CommitPageCache.Key.of(user, repo, page - 1, servedPage.getPerPage()), loader);
+        }
+    }
+
+    public int getQueued() {
+        return prefetchExecutor.getQueue().size();
+    }
+
+    private void schedule(final String backend, final CommitPageCache.Key key, final PageLoader loader) {
+        final String repoKey = key.getUser() + "/" + key.getRepo();
+        if (!pending.add(key)) {
+            return;
+        }
+        //checked before anything is taken, a page already fresh in the backend caches costs no budget
+        if (loader.isWarm(key)) {
+            pending.remove(key);
+            commitViewerMetrics.recordPrefetch(backend, "warm");
+            return;
+        }
+        final String dropReason = getDropReason(repoKey, loader);
+        if (dropReason != null) {
+            release(key, repoKey);
+            commitViewerMetrics.recordPrefetch(backend, dropReason);
+            return;
+        }
+
+        try {
+            prefetchExecutor.execute(() -> prefetch(backend, key, repoKey, loader));
+        } catch (RejectedExecutionException e) {
+            release(key, repoKey);
+            commitViewerMetrics.recordPrefetch(backend, "rejected");
+        }
+    }
+
+    //Why a prefetch of the repo can't be scheduled now, null when it can. The repo slot is taken either way, release gives it back
+    private String getDropReason(final String repoKey, final PageLoader loader) {
+        if (pendingPerRepo.merge(repoKey, 1, Integer::sum) > maxPerRepo) {
+            return "repo_busy";
+        }
+        //upstream keeps what it has left for real requests, the prefetch is dropped rather than queued
+        if (!loader.allowsBackgroundWork()) {
+            return "rate_limited";
+        }
+        if (System.currentTimeMillis() < pausedUntil) {
+            return "paused";
+        }
+        return tryAcquireBudget() ? null : "over_budget";
+    }
+
+    private void prefetch(final String backend, final CommitPageCache.Key key, final String repoKey, final PageLoader loader) {
+        String outcome = "success";
+        try {
+            log.debug("CommitViewer : Prefetching page " + key.getPage() + " of " + repoKey);
+            loader.load(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = "interrupted";
+        } catch (Exception e) {
+            //upstream is failing or rate limiting us, leave its budget to real requests for a while
+            log.debug("CommitViewer : Prefetch of page " + key.getPage() + " of " + repoKey + " failed, pausing prefetches", e);
+            pausedUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(failurePauseSeconds);
+            outcome = "error";
+        } finally {
+            release(key, repoKey);
+        }
+        commitViewerMetrics.recordPrefetch(backend, outcome);
+    }
+
+    private synchronized boolean tryAcquireBudget() {
+        final long now = System.currentTimeMillis();
+        if (now - budgetWindowStart >= MINUTE_MILLIS) {
+            budgetWindowStart = now;
+            budgetUsed = 0;
+        }
+        if (budgetUsed >= maxPerMinute) {
+            return false;
+        }
+        budgetUsed++;
+        return true;
+    }
+
+    private void release(final CommitPageCache.Key key, final String repoKey) {
+        pending.remove(key);
+        pendingPerRepo.computeIfPresent(repoKey, (repoName, count) -> count > 1 ? count - 1 : null);
+    }
+
+    //Loads the page into the backend caches, the page itself is not needed
+    @FunctionalInterface
+    public interface PageLoader {
+        void load(CommitPageCache.Key key) throws IOException, InterruptedException;
+
+        //Whether the backend takes background work now (e.g. GitHub API rate limit over its background reserve)
+        default boolean allowsBackgroundWork() {
+            return true;
+        }
+
+        //Whether loading the page now would change nothing (e.g. already fresh in the page cache)
+        default boolean isWarm(final CommitPageCache.Key key) {
+            return false;
+        }
+    }
+}
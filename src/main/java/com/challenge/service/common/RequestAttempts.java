@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.enterprise.context.RequestScoped;
+import java.util.HashMap;
+import java.util.Map;
+
+//Attempts made by the fault tolerance chain (retries, fallback) while serving the current request.
+//Retries and the fallback run on the request thread, so they see the failure of the attempt before them
+@RequestScoped
+public class RequestAttempts {
+
+    private final Map<String, Integer> attempts = new HashMap<>();
+
+    @Getter
+    @Setter
+    private String lastFailure;
+
+    //Returns the number of the attempt starting, 1 for the first one
+    public int next(final String method) {
+        return attempts.merge(method, 1, Integer::sum);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import io.quarkus.arc.Arc;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+//Times upstream calls (GitHub API, git processes) so the critical path of a request can be seen.
+//Durations are logged and, for calls made within the request, returned in the Server-Timing response header
+@ApplicationScoped
+@Slf4j
+public class RequestTimer {
+
+    @ConfigProperty(name = "commit-viewer.server-timing.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @Inject
+    RequestTimings requestTimings;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //Records the time elapsed since startNanos (System.nanoTime) under the given name
+    public void record(final String name, final long startNanos) {
+        final long durationNanos = System.nanoTime() - startNanos;
+        log.debug("CommitViewer : " + name + " took " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms");
+        //async continuations (e.g. reactive endpoint) run outside the request context, those are only logged
+        if (enabled && Arc.container().requestContext().isActive()) {
+            requestTimings.add(name, durationNanos);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import javax.enterprise.context.RequestScoped;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+//Durations of the calls made while serving the current request, in Server-Timing format (name;dur=millis)
+@RequestScoped
+public class RequestTimings {
+
+    private final List<String> timings = new CopyOnWriteArrayList<>();
+
+    public void add(final String name, final long durationNanos) {
+        timings.add(String.format(Locale.US, "%s;dur=%.1f", name, durationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    public List<String> getTimings() {
+        return timings;
+    }
+}
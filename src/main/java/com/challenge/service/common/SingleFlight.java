@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.common;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Request coalescing: concurrent callers asking for the same key share a single in-flight computation.
+//Results are not kept, a call arriving once the computation finished starts a new one (caching is done elsewhere)
+@Slf4j
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(final String flightName) {
+        this.name = flightName;
+    }
+
+    public <E extends Exception> V execute(final K key, final Call<V, E> call) throws E, InterruptedException {
+        final Flight<V> flight = new Flight<>();
+        Flight<V> existing;
+        while ((existing = inFlight.putIfAbsent(key, flight)) != null) {
+            if (existing.tryJoin()) {
+                log.debug("CommitViewer : Joining in-flight " + name + " " + key);
+                coalesced.increment();
+                return this.<E>await(key, existing);
+            }
+            //every caller of an async flight went away, it's being cancelled
+            inFlight.remove(key, existing);
+        }
+
+        executions.increment();
+        try {
+            final V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    //The call runs on a subscription of its own, callers of the flight only wait for its result. It's cancelled once all of them
+    //cancelled (e.g. client disconnects, timeouts), so a cancelled first caller doesn't fail the ones that joined it
+    public Uni<V> executeAsync(final K key, final Supplier<Uni<V>> call) {
+        return Uni.createFrom().deferred(() -> {
+            final Flight<V> flight = new Flight<>();
+            Flight<V> existing;
+            while ((existing = inFlight.putIfAbsent(key, flight)) != null) {
+                if (existing.tryJoin()) {
+                    log.debug("CommitViewer : Joining in-flight " + name + " " + key);
+                    coalesced.increment();
+                    return waitFor(key, existing);
+                }
+                inFlight.remove(key, existing);
+            }
+
+            executions.increment();
+            flight.start(Uni.createFrom().deferred(call::get).subscribe().with(value -> {
+                inFlight.remove(key, flight);
+                flight.complete(value);
+            }, failure -> {
+                inFlight.remove(key, flight);
+                flight.completeExceptionally(failure);
+            }));
+            return waitFor(key, flight);
+        });
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    //failures of the shared call are thrown as they are, callers of the same flight run the same call
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> V await(final K key, final Flight<V> flight) throws E, InterruptedException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            leave(key, flight);
+            throw e;
+        } catch (CancellationException e) {
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "In-flight " + name + " cancelled", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                //the call was interrupted on the thread that ran it, this one wasn't
+                throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "In-flight " + name + " interrupted", cause);
+            }
+            throw (E) cause;
+        }
+    }
+
+    //a copy of the flight for each caller, so a cancelled caller doesn't cancel the shared one
+    private Uni<V> waitFor(final K key, final Flight<V> flight) {
+        return Uni.createFrom().completionStage(flight.copy()).onCancellation().invoke(() -> leave(key, flight));
+    }
+
+    private void leave(final K key, final Flight<V> flight) {
+        final Cancellable upstream = flight.leave();
+        if (upstream != null) {
+            log.debug("CommitViewer : Every caller left in-flight " + name + " " + key + ", cancelling it");
+            inFlight.remove(key, flight);
+            upstream.cancel();
+            flight.completeExceptionally(new CancellationException("In-flight " + name + " cancelled"));
+        }
+    }
+
+    //Result of a call and the callers waiting for it (the first one included)
+    private static final class Flight<V> extends CompletableFuture<V> {
+        private int waiting = 1;
+        private boolean abandoned;
+        private Cancellable subscription;
+
+        //false when every caller left, the flight can't be joined anymore
+        private synchronized boolean tryJoin() {
+            if (abandoned) {
+                return false;
+            }
+            waiting++;
+            return true;
+        }
+
+        private void start(final Cancellable callSubscription) {
+            final boolean cancel;
+            synchronized (this) {
+                subscription = callSubscription;
+                cancel = abandoned;
+            }
+            if (cancel) {
+                callSubscription.cancel();
+            }
+        }
+
+        //Subscription of the call to cancel when the last caller left before it completed, null otherwise
+        private Cancellable leave() {
+            synchronized (this) {
+                waiting--;
+                if (waiting > 0 || isDone() || abandoned) {
+                    return null;
+                }
+                abandoned = true;
+                return subscription == null ? () -> { } : subscription;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V call() throws E, InterruptedException;
+    }
+}
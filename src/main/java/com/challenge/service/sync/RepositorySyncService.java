@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.service.sync;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.GitHubApiCommitDto;
+import com.challenge.model.api.dto.GitHubApiCompareDto;
+import com.challenge.model.api.dto.GitHubPushEventDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.challenge.service.api.CommitCountIndex;
+import com.challenge.service.api.GitHubApiClient;
+import com.challenge.service.api.GitHubApiErrors;
+import com.challenge.service.api.GitHubRateLimit;
+import com.challenge.service.cli.GitCliService;
+import com.challenge.service.common.CommitPageCache;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.runtime.StartupEvent;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.jboss.resteasy.client.exception.ResteasyWebApplicationException;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Keeps the cached pages, totals and mirrors of repositories in step with their default branch. HEAD changes are learned by polling
+//the watched repositories (conditional requests, answered 304 while nothing is pushed) or from GitHub push webhooks.
+//When the pushed commits sit on top of the previous HEAD, cached pages are moved down by them and totals increased instead of
+//being dropped, and mirrors fetch them. Other changes (force pushes, merges) drop the cached pages and totals of the repository.
+//Changes are handled one at a time on the sync thread
+@ApplicationScoped
+@Slf4j
+public class RepositorySyncService {
+
+    private static final String POLL = "poll";
+    private static final String WEBHOOK = "webhook";
+    private static final String SYNC_CALL = "sync";
+    private static final String COMPARE_CALL = "compare";
+    private static final String PUSH_EVENT = "push";
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String AHEAD = "ahead";
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+    //the history a HEAD was seen for is unknown, pages can't be moved
+    private static final long UNKNOWN = -1;
+
+    //user/repo of the repositories polled for HEAD changes
+    @ConfigProperty(name = "commit-viewer.sync.repositories")
+    Optional<List<String>> repositories;
+
+    @ConfigProperty(name = "commit-viewer.sync.poll-seconds", defaultValue = "60")
+    Long pollSeconds;
+
+    //webhooks are refused without it, their payload signature can't be checked
+    @ConfigProperty(name = "commit-viewer.sync.webhook-secret")
+    Optional<String> webhookSecret;
+
+    @Inject
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Inject
+    CommitCountIndex commitCountIndex;
+
+    @Inject
+    GitCliService gitCliService;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    @Inject
+    CommitViewerMapper commitViewerMapper;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    GitHubApiErrors gitHubApiErrors;
+
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    //last HEAD seen for each repo
+    private final Map<String, Head> heads = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService syncExecutor;
+
+    void onStart(@Observes final StartupEvent startupEvent) {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor();
+        final List<String> watched = repositories.orElse(Collections.emptyList());
+        watched.forEach(repository -> {
+            final String[] userRepo = repository.split("/");
+            if (userRepo.length != 2) {
+                throw new IllegalArgumentException("commit-viewer.sync.repositories entries must be user/repo : " + repository);
+            }
+            commitViewerHelper.checkPathSegment(userRepo[0]);
+            commitViewerHelper.checkPathSegment(userRepo[1]);
+        });
+        if (!watched.isEmpty()) {
+            log.info("CommitViewer : Polling " + watched.size() + " repositories for new commits every " + pollSeconds + " seconds");
+            syncExecutor.scheduleWithFixedDelay(() -> watched.forEach(this::poll), 0, pollSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+    }
+
+    //Checks the signature of a webhook delivery, then handles pushes to the default branch in background.
+    //Returns whether the delivery was a change to handle, other events and branches are ignored
+    public boolean receiveWebhook(final String event, final String signature, final byte[] payload) {
+        checkSignature(signature, payload);
+        if (!PUSH_EVENT.equals(event)) {
+            log.debug("CommitViewer : Ignoring webhook event " + event);
+            return false;
+        }
+
+        final GitHubPushEventDto push;
+        try {
+            push = objectMapper.readValue(payload, GitHubPushEventDto.class);
+        } catch (IOException e) {
+            throw new CommitViewerException(ErrorCodeImpl.BAD_REQUEST, "Push event not valid");
+        }
+        final GitHubPushEventDto.Repository repository = push.getRepository();
+        if (repository == null || repository.getOwner() == null || push.getBefore() == null || push.getAfter() == null) {
+            throw new CommitViewerException(ErrorCodeImpl.BAD_REQUEST, "Push event not valid");
+        }
+        if (!(BRANCH_REF_PREFIX + repository.getDefaultBranch()).equals(push.getRef())) {
+            log.debug("CommitViewer : Ignoring push to " + push.getRef() + ", not the default branch");
+            return false;
+        }
+
+        final String user = Optional.ofNullable(repository.getOwner().getLogin()).orElse(repository.getOwner().getName());
+        final String repo = repository.getName();
+        commitViewerHelper.checkPathSegment(user);
+        commitViewerHelper.checkPathSegment(repo);
+        final long pushedAt = repository.getPushedAt() == null ? System.currentTimeMillis() : TimeUnit.SECONDS.toMillis(repository.getPushedAt());
+        try {
+            syncExecutor.execute(() -> onPush(user, repo, push.getBefore(), push.getAfter(), pushedAt));
+        } catch (RejectedExecutionException e) {
+            throw new CommitViewerException(ErrorCodeImpl.SERVICE_UNAVAILABLE, "Sync stopped");
+        }
+        return true;
+    }
+
+    //HEAD of the repo as last seen by polls and webhooks
+    public Optional<String> getHead(final String user, final String repo) {
+        return Optional.ofNullable(heads.get(getKey(user, repo))).map(Head::getSha);
+    }
+
+    private void checkSignature(final String signature, final byte[] payload) {
+        if (webhookSecret.isEmpty()) {
+            throw new CommitViewerException(ErrorCodeImpl.UNAUTHORIZED, "Webhook secret not configured");
+        }
+        final byte[] expected;
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(webhookSecret.get().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            expected = (SIGNATURE_PREFIX + toHex(mac.doFinal(payload))).getBytes(StandardCharsets.US_ASCII);
+        } catch (GeneralSecurityException e) {
+            throw new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "Failed to check webhook signature", e);
+        }
+        //constant time comparison, the signature can't be guessed byte by byte
+        if (signature == null || !MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+            log.error("CommitViewer : Webhook signature not valid");
+            throw new CommitViewerException(ErrorCodeImpl.UNAUTHORIZED, "Webhook signature not valid");
+        }
+    }
+
+    private void poll(final String repository) {
+        final String[] userRepo = repository.split("/");
+        //polls wait while the rate limit is low, requests come first
+        if (!gitHubRateLimit.allowsBackgroundWork()) {
+            log.debug("CommitViewer : GitHub API rate limit low, skipping poll of " + repository);
+            return;
+        }
+        try {
+            pollHead(userRepo[0], userRepo[1]);
+        } catch (Exception e) {
+            log.error("CommitViewer : Failed to poll " + repository + " for new commits", e);
+        }
+    }
+
+    //The first commit of the default branch with the ETag of the last answer, 304 Not Modified while it's the same
+    private void pollHead(final String user, final String repo) throws IOException {
+        final String key = getKey(user, repo);
+        final Head known = heads.get(key);
+        final long checkedAt = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        final Response gitHubApiResponse;
+        try {
+            gitHubApiResponse = gitHubApiClient.getCommitsResponse(user, repo, 1, 1, known == null ? null : known.getEtag());
+            commitViewerMetrics.recordGitHubCall(SYNC_CALL, start, gitHubApiResponse.getStatus());
+        } catch (ResteasyWebApplicationException e) {
+            commitViewerMetrics.recordGitHubCall(SYNC_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw gitHubApiErrors.toGitHubApiException(user, repo, e);
+        } catch (RuntimeException e) {
+            commitViewerMetrics.recordGitHubCall(SYNC_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            throw e;
+        }
+
+        try {
+            if (known != null && gitHubApiResponse.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                heads.put(key, new Head(known.getSha(), known.getEtag(), known.getSince(), checkedAt));
+            } else {
+                final List<CommitInfoDto> headCommit = commitViewerMapper.gitHubApiResponseToCommitInfoDto(gitHubApiResponse.readEntity(InputStream.class));
+                //empty repositories have no HEAD yet
+                final String headSha = headCommit.isEmpty() ? null : headCommit.get(0).getSha();
+                final String etag = gitHubApiResponse.getHeaderString(HttpHeaders.ETAG);
+                if (known != null && known.getSha() != null && headSha != null && !known.getSha().equals(headSha)) {
+                    onHeadChanged(user, repo, known, headSha, POLL);
+                }
+                final boolean changed = known == null || !Objects.equals(headSha, known.getSha());
+                heads.put(key, new Head(headSha, etag, changed ? checkedAt : known.getSince(), checkedAt));
+                //the answer holds the total, with one commit per page the last page number is the number of commits
+                if (headSha != null) {
+                    commitCountIndex.update(user, repo, headSha, commitViewerHelper.getPageFromLink(gitHubApiResponse, "last").map(Integer::longValue).orElse(1L));
+                }
+            }
+        } finally {
+            gitHubApiResponse.close();
+        }
+    }
+
+    //The pushed-over HEAD was the current one from when it was seen (or pushed) until this push
+    private void onPush(final String user, final String repo, final String before, final String after, final long pushedAt) {
+        final String key = getKey(user, repo);
+        final Head known = heads.get(key);
+        if (known != null && after.equals(known.getSha())) {
+            log.debug("CommitViewer : Push to " + key + " already seen");
+            return;
+        }
+        final long since = known != null && before.equals(known.getSha()) ? known.getSince() : UNKNOWN;
+        try {
+            if (NO_COMMIT.equals(before) || NO_COMMIT.equals(after)) {
+                onHeadChanged(user, repo, new Head(null, null, UNKNOWN, pushedAt), after, WEBHOOK);
+            } else {
+                onHeadChanged(user, repo, new Head(before, null, since, pushedAt), after, WEBHOOK);
+            }
+        } catch (RuntimeException e) {
+            log.error("CommitViewer : Failed to sync " + key + " after a push", e);
+        }
+        //no ETag, the next poll gets the new HEAD with its own
+        heads.put(key, new Head(NO_COMMIT.equals(after) ? null : after, null, pushedAt, pushedAt));
+    }
+
+    private void onHeadChanged(final String user, final String repo, final Head previous, final String headSha, final String source) {
+        final String key = getKey(user, repo);
+        final Optional<List<CommitInfoDto>> pushed = previous.getSha() == null || NO_COMMIT.equals(headSha)
+                                                     ? Optional.empty()
+                                                     : getCommitsOnTop(user, repo, previous.getSha(), headSha);
+        final String outcome;
+        if (pushed.isPresent()) {
+            log.info("CommitViewer : " + pushed.get().size() + " commits pushed on top of the HEAD of " + key + ", moving cached pages");
+            if (previous.getSince() != UNKNOWN) {
+                commitPageCache.shift(user, repo, pushed.get(), previous.getSince(), previous.getCheckedAt());
+            } else {
+                commitPageCache.invalidate(user, repo);
+            }
+            commitCountIndex.shift(user, repo, previous.getSha(), headSha, pushed.get().size());
+            outcome = "shifted";
+        } else {
+            log.info("CommitViewer : HEAD of " + key + " rewritten, dropping cached pages");
+            commitPageCache.invalidate(user, repo);
+            commitCountIndex.invalidate(user, repo);
+            outcome = "invalidated";
+        }
+        commitViewerMetrics.recordSync(source, outcome);
+
+        try {
+            gitCliService.refreshMirror(user, repo);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.error("CommitViewer : Failed to fetch new commits of " + key + " into its mirror", e);
+        }
+    }
+
+    //Commits of headSha not reachable from baseSha, newest first, when they form a chain of single parent commits on top of baseSha.
+    //Only then are older commits listed in the same order as before, moved down by the new ones. Empty otherwise
+    private Optional<List<CommitInfoDto>> getCommitsOnTop(final String user, final String repo, final String baseSha, final String headSha) {
+        return compare(user, repo, baseSha, headSha)
+            .filter(comparison -> isChainOnTop(comparison, baseSha, headSha))
+            .map(comparison -> {
+                final List<CommitInfoDto> newestFirst = new ArrayList<>(commitViewerMapper.gitHubApiCommitDtoListToCommitInfoDtoList(comparison.getCommits()));
+                Collections.reverse(newestFirst);
+                return newestFirst;
+            });
+    }
+
+    //Failures only mean the cached pages can't be moved, they are dropped instead
+    private Optional<GitHubApiCompareDto> compare(final String user, final String repo, final String baseSha, final String headSha) {
+        final long start = System.nanoTime();
+        try {
+            final Response gitHubApiResponse = gitHubApiClient.compareCommitsResponse(user, repo, baseSha, headSha);
+            commitViewerMetrics.recordGitHubCall(COMPARE_CALL, start, gitHubApiResponse.getStatus());
+            try {
+                return Optional.of(objectMapper.readValue(gitHubApiResponse.readEntity(InputStream.class), GitHubApiCompareDto.class));
+            } finally {
+                gitHubApiResponse.close();
+            }
+        } catch (IOException e) {
+            log.error("CommitViewer : Error parsing comparison from GitHub API.", e);
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            commitViewerMetrics.recordGitHubCall(COMPARE_CALL, start, gitHubApiErrors.getHttpStatus(e));
+            log.error("CommitViewer : Failed to compare " + baseSha + " with " + headSha + " in " + getKey(user, repo), e);
+            return Optional.empty();
+        }
+    }
+
+    //compare lists at most 250 commits, oldest first
+    private boolean isChainOnTop(final GitHubApiCompareDto comparison, final String baseSha, final String headSha) {
+        final List<GitHubApiCommitDto> commits = Optional.ofNullable(comparison.getCommits()).orElse(Collections.emptyList());
+        if (!AHEAD.equals(comparison.getStatus()) || comparison.getAheadBy() != commits.size()) {
+            return false;
+        }
+        String expectedParent = baseSha;
+        for (final GitHubApiCommitDto commit : commits) {
+            if (commit.getParents() == null || commit.getParents().size() != 1 || !expectedParent.equals(commit.getParents().get(0).getSha())) {
+                return false;
+            }
+            expectedParent = commit.getSha();
+        }
+        return headSha.equals(expectedParent);
+    }
+
+    private String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private String getKey(final String user, final String repo) {
+        return user + "/" + repo;
+    }
+
+    @Value
+    private static class Head {
+        //null while the repository is empty
+        String sha;
+        String etag;
+        //epoch millis since the HEAD is known to be the current one (UNKNOWN when it was never seen)
+        long since;
+        //epoch millis of the last time it was seen current
+        long checkedAt;
+    }
+}
@@ -5,21 +5,30 @@
 
 package com.challenge.web.api;
 
+import com.challenge.model.api.dto.CommitInfoDto;
 import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.dto.CommitPageRequestDto;
+import com.challenge.model.api.dto.CommitPageResultDto;
+import io.smallrye.mutiny.Uni;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
+import org.eclipse.microprofile.openapi.annotations.parameters.RequestBody;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.Max;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -27,8 +36,10 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import java.io.IOException;
+import java.util.List;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.HEADER;
 import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.PATH;
 import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.QUERY;
 
@@ -37,6 +48,11 @@ import static org.eclipse.microprofile.openapi.annotations.enums.ParameterIn.QUE
 @Produces(APPLICATION_JSON)
 public interface CommitViewerResource {
 
+    String APPLICATION_NDJSON = "application/x-ndjson";
+    int MAX_BATCH_SIZE = 100;
+    String EVENT_HEADER = "X-GitHub-Event";
+    String SIGNATURE_HEADER = "X-Hub-Signature-256";
+
     @GET
     @Path("/{user}/{repository}")
     @Operation(
@@ -96,4 +112,218 @@ public interface CommitViewerResource {
         @Valid
         @Digits(integer = 3, fraction = 0)
         @Positive Integer perPage) throws IOException, InterruptedException;
+
+    @GET
+    @Path("/{user}/{repository}/cursor")
+    @Operation(
+        summary = "Get repo commit list by cursor",
+        description = "Returns a list of commits for a repo, resuming from the cursor of the previous page. Unlike page numbers, "
+                      + "the cost of a page doesn't depend on how deep it is and pages keep listing the history of the first page HEAD while new commits are pushed. "
+                      + "Pages may hold less than limit commits, follow next until it's absent."
+    )
+    @APIResponse(description = "List containing commits and the cursor of the next page",
+                 responseCode = "200", content = @Content(mediaType = APPLICATION_JSON, schema = @Schema(implementation = CommitInfoPageDto.class)))
+    @APIResponse(description = "Bad Request",
+                 responseCode = "400", content = @Content(schema = @Schema(implementation = String.class), example = "Request not valid"))
+    @APIResponse(description = "Not Found",
+                 responseCode = "403", content = @Content(schema = @Schema(implementation = String.class),
+                                                          example = "Repository not found or you don't have the necessary permissions"))
+    @APIResponse(description = "Request Timeout",
+                 responseCode = "408", content = @Content(schema = @Schema(implementation = String.class), example = "Request Timeout"))
+    @APIResponse(description = "Internal Server Error",
+                 responseCode = "500", content = @Content(schema = @Schema(implementation = String.class), example = "An unknown error has occurred."))
+    Response getCommitListAfter(
+        @PathParam("user")
+        @Parameter(
+        name = "user",
+        description = "Name of the user that owns the repo",
+        required = true,
+        example = "pjcarrasqueira",
+        in = PATH,
+        schema = @Schema(type = SchemaType.STRING))
+        String user,
+        @PathParam("repository")
+        @Parameter(
+            name = "repository",
+            description = "Name of the repo to get the commits",
+            required = true,
+            example = "commit-viewer",
+            in = PATH,
+            schema = @Schema(type = SchemaType.STRING))
+            String repo,
+        @QueryParam("after")
+        @Parameter(
+           name = "after",
+           description = "Cursor of the page, as returned in next by the previous page. Absent for the first page",
+           in = QUERY,
+           schema = @Schema(type = SchemaType.STRING))
+        String after,
+        @QueryParam("limit")
+        @Parameter(
+           name = "limit",
+           description = "Max number of the items in the page",
+           example = "50",
+           in = QUERY,
+           schema = @Schema(type = SchemaType.INTEGER, minimum = "1", maximum = "100", defaultValue = "10"))
+        @DefaultValue("10")
+        @Max(100)
+        @Valid
+        @Digits(integer = 3, fraction = 0)
+        @Positive Integer limit) throws IOException, InterruptedException;
+
+    @GET
+    @Path("/{user}/{repository}/reactive")
+    @Operation(
+        summary = "Get repo commit list (non blocking)",
+        description = "Returns a list of commits for a repo. Same as the commit list, without holding a worker thread while GitHub or the git CLI answer."
+    )
+    @APIResponse(description = "List containing paginated commits",
+                 responseCode = "200", content = @Content(mediaType = APPLICATION_JSON, schema = @Schema(implementation = CommitInfoPageDto.class)))
+    @APIResponse(description = "Bad Request",
+                 responseCode = "400", content = @Content(schema = @Schema(implementation = String.class), example = "Request not valid"))
+    @APIResponse(description = "Not Found",
+                 responseCode = "403", content = @Content(schema = @Schema(implementation = String.class),
+                                                          example = "Repository not found or you don't have the necessary permissions"))
+    @APIResponse(description = "Request Timeout",
+                 responseCode = "408", content = @Content(schema = @Schema(implementation = String.class), example = "Request Timeout"))
+    @APIResponse(description = "Service Unavailable",
+                 responseCode = "503", content = @Content(schema = @Schema(implementation = String.class), example = "Service busy, try again later"))
+    @APIResponse(description = "Internal Server Error",
+                 responseCode = "500", content = @Content(schema = @Schema(implementation = String.class), example = "An unknown error has occurred."))
+    Uni<CommitInfoPageDto> getCommitListReactive(
+        @PathParam("user")
+        @Parameter(
+        name = "user",
+        description = "Name of the user that owns the repo",
+        required = true,
+        example = "pjcarrasqueira",
+        in = PATH,
+        schema = @Schema(type = SchemaType.STRING))
+        String user,
+        @PathParam("repository")
+        @Parameter(
+            name = "repository",
+            description = "Name of the repo to get the commits",
+            required = true,
+            example = "commit-viewer",
+            in = PATH,
+            schema = @Schema(type = SchemaType.STRING))
+            String repo,
+        @QueryParam("page")
+        @Parameter(
+           name = "page",
+           description = "Number of the requested page",
+           example = "1",
+           in = QUERY,
+           schema = @Schema(type = SchemaType.INTEGER, minimum = "1", defaultValue = "1"))
+        @DefaultValue("1")
+        @Valid
+        @Digits(integer = 10, fraction = 0)
+        @Positive Integer page,
+        @QueryParam("per_page")
+        @Parameter(
+           name = "per_page",
+           description = "Max number of the items in the page",
+           example = "50",
+           in = QUERY,
+           schema = @Schema(type = SchemaType.INTEGER, minimum = "1", maximum = "100", defaultValue = "5"))
+        @DefaultValue("10")
+        @Max(100)
+        @Valid
+        @Digits(integer = 3, fraction = 0)
+        @Positive Integer perPage);
+
+    @GET
+    @Path("/{user}/{repository}/export")
+    @Produces(APPLICATION_NDJSON)
+    @Operation(
+        summary = "Export repo commit history",
+        description = "Returns every commit of a repo, newest first, one JSON commit per line (NDJSON). Commits are written while git log reads them, "
+                      + "so a whole history comes in a single response. An export interrupted by an error ends without its last line."
+    )
+    @APIResponse(description = "Commits of the repo",
+                 responseCode = "200", content = @Content(mediaType = APPLICATION_NDJSON, schema = @Schema(implementation = CommitInfoDto.class)))
+    @APIResponse(description = "Not Found",
+                 responseCode = "403", content = @Content(schema = @Schema(implementation = String.class),
+                                                          example = "Repository not found or you don't have the necessary permissions"))
+    @APIResponse(description = "Service Unavailable",
+                 responseCode = "503", content = @Content(schema = @Schema(implementation = String.class), example = "Service busy, try again later"))
+    @APIResponse(description = "Internal Server Error",
+                 responseCode = "500", content = @Content(schema = @Schema(implementation = String.class), example = "An unknown error has occurred."))
+    Response exportCommits(
+        @PathParam("user")
+        @Parameter(
+        name = "user",
+        description = "Name of the user that owns the repo",
+        required = true,
+        example = "pjcarrasqueira",
+        in = PATH,
+        schema = @Schema(type = SchemaType.STRING))
+        String user,
+        @PathParam("repository")
+        @Parameter(
+            name = "repository",
+            description = "Name of the repo to export the commits",
+            required = true,
+            example = "commit-viewer",
+            in = PATH,
+            schema = @Schema(type = SchemaType.STRING))
+            String repo);
+
+    @POST
+    @Path("/batch")
+    @Produces(APPLICATION_NDJSON)
+    @Operation(
+        summary = "Get the commit lists of several repos",
+        description = "Returns a page of commits for each requested repo, one JSON result per line (NDJSON) written as soon as the repo is done, "
+                      + "so results don't come in request order. Each result holds the page or the error the commit list endpoint would have answered."
+    )
+    @APIResponse(description = "One result per requested page",
+                 responseCode = "200", content = @Content(mediaType = APPLICATION_NDJSON, schema = @Schema(implementation = CommitPageResultDto.class)))
+    @APIResponse(description = "Bad Request",
+                 responseCode = "400", content = @Content(schema = @Schema(implementation = String.class), example = "Request not valid"))
+    Response getCommitListBatch(
+        @RequestBody(
+            description = "Requested pages",
+            required = true,
+            content = @Content(mediaType = APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = CommitPageRequestDto.class)))
+        @NotNull
+        @Size(min = 1, max = MAX_BATCH_SIZE)
+        @Valid
+        List<@Valid @NotNull CommitPageRequestDto> requests);
+
+    @POST
+    @Path("/webhook")
+    @Operation(
+        summary = "Receive GitHub push events",
+        description = "GitHub webhook for push events, signed with the configured secret. Pushes to the default branch move the cached pages of the repo "
+                      + "down by the new commits (or drop them when history was rewritten) and fetch the new commits into its mirror, in background."
+    )
+    @APIResponse(description = "Push to the default branch, the repo is synced in background", responseCode = "202")
+    @APIResponse(description = "Other events and branches, nothing to do", responseCode = "204")
+    @APIResponse(description = "Bad Request",
+                 responseCode = "400", content = @Content(schema = @Schema(implementation = String.class), example = "Request not valid"))
+    @APIResponse(description = "Unauthorized",
+                 responseCode = "401", content = @Content(schema = @Schema(implementation = String.class), example = "Request signature not valid"))
+    Response receiveWebhook(
+        @HeaderParam(EVENT_HEADER)
+        @Parameter(
+            name = EVENT_HEADER,
+            description = "GitHub event name",
+            example = "push",
+            in = HEADER,
+            schema = @Schema(type = SchemaType.STRING))
+        String event,
+        @HeaderParam(SIGNATURE_HEADER)
+        @Parameter(
+            name = SIGNATURE_HEADER,
+            description = "HMAC SHA-256 of the payload with the webhook secret",
+            in = HEADER,
+            schema = @Schema(type = SchemaType.STRING))
+        String signature,
+        @RequestBody(
+            description = "GitHub event payload",
+            required = true,
+            content = @Content(mediaType = APPLICATION_JSON))
+        byte[] payload);
 }
@@ -5,38 +5,103 @@
 
 package com.challenge.web.impl;
 
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.dto.CommitPageRequestDto;
+import com.challenge.model.api.dto.CommitPageResultDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCode;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.exception.RateLimitedException;
 import com.challenge.model.api.exception.SkipFallbackException;
 import com.challenge.service.api.GitApiService;
+import com.challenge.service.cli.CloneStrategy;
 import com.challenge.service.cli.GitCliService;
+import com.challenge.service.cli.RequestCloneStrategy;
+import com.challenge.service.common.CommitViewerHelper;
+import com.challenge.service.common.CommitViewerMetrics;
+import com.challenge.service.common.RequestAttempts;
+import com.challenge.service.sync.RepositorySyncService;
 import com.challenge.web.api.CommitViewerResource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.vertx.ext.web.RoutingContext;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.faulttolerance.Fallback;
 import org.eclipse.microprofile.faulttolerance.Retry;
 import org.eclipse.microprofile.faulttolerance.Timeout;
+import org.eclipse.microprofile.faulttolerance.exceptions.TimeoutException;
 
 import javax.inject.Inject;
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Positive;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+@Slf4j
 public class CommitViewerResourceImpl implements CommitViewerResource {
 
+    @ConfigProperty(name = "commit-viewer.reactive.timeout-seconds", defaultValue = "300")
+    Long reactiveTimeoutSeconds;
+
+    @ConfigProperty(name = "commit-viewer.reactive.max-retries", defaultValue = "1")
+    Integer reactiveMaxRetries;
+
+    @ConfigProperty(name = "commit-viewer.batch.max-concurrency", defaultValue = "8")
+    Integer batchMaxConcurrency;
+
     @Inject
     GitCliService gitCliService;
 
     @Inject
     GitApiService gitApiService;
 
+    @Inject
+    CommitViewerMetrics commitViewerMetrics;
+
+    @Inject
+    RequestAttempts requestAttempts;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    @Inject
+    RequestCloneStrategy requestCloneStrategy;
+
+    @Inject
+    CurrentVertxRequest currentVertxRequest;
+
+    @Inject
+    RepositorySyncService repositorySyncService;
+
+    @Inject
+    ObjectMapper objectMapper;
+
     @Override
-    @Retry
+    @Retry(abortOn = RateLimitedException.class)
     @Timeout()
     @Fallback(fallbackMethod = "getCommitListCli", skipOn = SkipFallbackException.class)
     public Response getCommitList(final String user,
                                   final String repo,
                                   final Integer page,
-                                  final Integer perPage) throws InterruptedException {
-        return Response.ok(gitApiService.getCommitList(user, repo, page, perPage)).build();
+                                  final Integer perPage) throws IOException, InterruptedException {
+        return withAttemptMetrics(CommitViewerMetrics.API, () -> Response.ok(gitApiService.getCommitList(user, repo, page, perPage)).build());
     }
 
     @Retry
@@ -45,6 +110,209 @@ public class CommitViewerResourceImpl implements CommitViewerResource {
                                      final String repo,
                                      final @Positive @Digits(integer = 10, fraction = 0) Integer page,
                                      final @Positive @Digits(integer = 3, fraction = 0) @Max(100) Integer perPage) throws IOException, InterruptedException {
-        return Response.ok(gitCliService.getCommitList(user, repo, page, perPage)).build();
+        return withAttemptMetrics(CommitViewerMetrics.CLI, () -> Response.ok(gitCliService.getCommitList(user, repo, page, perPage)).build());
+    }
+
+    @Override
+    @Retry(abortOn = RateLimitedException.class)
+    @Timeout()
+    @Fallback(fallbackMethod = "getCommitListAfterCli", skipOn = SkipFallbackException.class)
+    public Response getCommitListAfter(final String user,
+                                       final String repo,
+                                       final String after,
+                                       final Integer limit) throws IOException, InterruptedException {
+        return withAttemptMetrics(CommitViewerMetrics.API,
+            () -> Response.ok(gitApiService.getCommitListAfter(user, repo, commitViewerHelper.fromCursor(after), limit)).build());
+    }
+
+    @Retry
+    @Timeout
+    public Response getCommitListAfterCli(final String user,
+                                          final String repo,
+                                          final String after,
+                                          final @Positive @Digits(integer = 3, fraction = 0) @Max(100) Integer limit) throws IOException, InterruptedException {
+        return withAttemptMetrics(CommitViewerMetrics.CLI,
+            () -> Response.ok(gitCliService.getCommitListAfter(user, repo, commitViewerHelper.fromCursor(after), limit)).build());
+    }
+
+    //Retries and fallbacks run on the request thread, so attempts of the same request are counted in RequestAttempts
+    private Response withAttemptMetrics(final String method, final ResourceCall call) throws IOException, InterruptedException {
+        final int attempt = requestAttempts.next(method);
+        try {
+            final Response response = call.run();
+            commitViewerMetrics.recordAttempt(method, attempt, requestAttempts.getLastFailure(), null);
+            return response;
+        } catch (RuntimeException | IOException | InterruptedException e) {
+            requestAttempts.setLastFailure(commitViewerMetrics.recordAttempt(method, attempt, requestAttempts.getLastFailure(), e));
+            throw e;
+        }
+    }
+
+    //Fault tolerance annotations don't apply to Uni, the same timeout, retry and fallback chain is built with Mutiny
+    @Override
+    public Uni<CommitInfoPageDto> getCommitListReactive(final String user,
+                                                        final String repo,
+                                                        final Integer page,
+                                                        final Integer perPage) {
+        //read on the request thread, the fallback is created outside of the request context
+        return getCommitPageReactive(user, repo, page, perPage, requestCloneStrategy.getCloneStrategy());
+    }
+
+    //Pages run through the same chain as the reactive endpoint, at most batch.max-concurrency at once. Each result is written
+    //and flushed as soon as its page is done, so a slow repository doesn't hold the others back
+    @Override
+    public Response getCommitListBatch(final List<CommitPageRequestDto> requests) {
+        final CloneStrategy cloneStrategy = requestCloneStrategy.getCloneStrategy();
+        final Multi<CommitPageResultDto> pages =
+            Multi.createFrom().iterable(requests)
+                 .onItem().transformToUni(request -> getCommitPageReactive(request.getUser(), request.getRepository(), request.getPage(),
+                                                                           request.getPerPage(), cloneStrategy)
+                     .map(commitInfoPage -> toBatchResult(request, Response.Status.OK.getStatusCode(), commitInfoPage, null))
+                     .onFailure().recoverWithItem(failure -> toBatchError(request, failure)))
+                 .merge(batchMaxConcurrency);
+
+        //writes to a connection the client closed are dropped without failing, so the end of the request is watched instead.
+        //It fails the results and cancels the pages still running or waiting (merging them with a failing stream wouldn't,
+        //Mutiny 1.0 keeps the other streams of a failed merge running)
+        final CompletableFuture<Void> clientGone = new CompletableFuture<>();
+        final RoutingContext routingContext = currentVertxRequest.getCurrent();
+        final int endHandler = routingContext.addEndHandler(end -> {
+            if (end.failed()) {
+                clientGone.completeExceptionally(new CancellationException("Client of the batch request went away"));
+            }
+        });
+        final Multi<CommitPageResultDto> results = Multi.createFrom().emitter(emitter -> {
+            final Cancellable subscription = pages.subscribe().with(emitter::emit, emitter::fail, emitter::complete);
+            emitter.onTermination(subscription::cancel);
+            clientGone.whenComplete((ignored, failure) -> emitter.fail(failure));
+        });
+
+        //the writing thread only waits, pages are fetched by the reactive chain. Closing the stream cancels the pages still running,
+        //e.g. when a write fails
+        final StreamingOutput output = outputStream -> {
+            try (Stream<CommitPageResultDto> stream = results.subscribe().asStream()) {
+                final Iterator<CommitPageResultDto> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                }
+            } catch (CancellationException e) {
+                log.debug("CommitViewer : Batch of " + requests.size() + " pages cancelled, " + e.getMessage());
+            } finally {
+                routingContext.removeEndHandler(endHandler);
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    //Commits are written as git log reads them, the output stream holds git back when the client reads slowly.
+    //Errors before the first commit (e.g. repository not found) are answered as usual, later ones cut the response short
+    @Override
+    public Response exportCommits(final String user, final String repo) {
+        final StreamingOutput output = outputStream -> {
+            final long start = System.nanoTime();
+            try {
+                final long exported = gitCliService.exportCommits(user, repo, commit -> {
+                    outputStream.write(objectMapper.writeValueAsBytes(commit));
+                    outputStream.write('\n');
+                });
+                log.info("CommitViewer : Exported " + exported + " commits of " + user + "/" + repo + " in "
+                         + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export of " + user + "/" + repo + " interrupted");
+            }
+        };
+        return Response.ok(output).build();
+    }
+
+    //The payload is read as sent, its signature is computed over the raw bytes
+    @Override
+    public Response receiveWebhook(final String event, final String signature, final byte[] payload) {
+        return repositorySyncService.receiveWebhook(event, signature, payload) ? Response.accepted().build() : Response.noContent().build();
+    }
+
+    private Uni<CommitInfoPageDto> getCommitPageReactive(final String user,
+                                                         final String repo,
+                                                         final Integer page,
+                                                         final Integer perPage,
+                                                         final CloneStrategy cloneStrategy) {
+        //continuations don't run in the request context, attempts are tracked here instead of in RequestAttempts
+        final AtomicReference<String> lastFailure = new AtomicReference<>();
+        return withTimeoutAndRetry(CommitViewerMetrics.API, lastFailure, () -> gitApiService.getCommitListAsync(user, repo, page, perPage))
+            .onFailure(this::isFallbackAllowed)
+            .recoverWithUni(() -> withTimeoutAndRetry(CommitViewerMetrics.CLI, lastFailure, () -> RequestCloneStrategy.callWith(
+                cloneStrategy, () -> gitCliService.getCommitListAsync(user, repo, page, perPage))));
+    }
+
+    private <T> Uni<T> withTimeoutAndRetry(final String method, final AtomicReference<String> lastFailure, final Supplier<Uni<T>> call) {
+        final AtomicInteger attempts = new AtomicInteger();
+        final Uni<T> withTimeout = Uni.createFrom().deferred(() -> {
+            final int attempt = attempts.incrementAndGet();
+            return call.get()
+                       .ifNoItem()
+                       .after(Duration.ofSeconds(reactiveTimeoutSeconds))
+                       .failWith(() -> new TimeoutException("Request timeout after " + reactiveTimeoutSeconds + " seconds"))
+                       .onItemOrFailure()
+                       .invoke((item, failure) -> {
+                           final String reason = commitViewerMetrics.recordAttempt(method, attempt, lastFailure.get(), failure);
+                           if (failure != null) {
+                               lastFailure.set(reason);
+                           }
+                       });
+        });
+        return reactiveMaxRetries > 0 ? withTimeout.onFailure(this::isRetryAllowed).retry().atMost(reactiveMaxRetries) : withTimeout;
+    }
+
+    //same as abortOn of the blocking endpoint, GitHub won't answer before its rate limit window resets
+    private boolean isRetryAllowed(final Throwable throwable) {
+        return isFallbackAllowed(throwable) && !(throwable instanceof RateLimitedException);
+    }
+
+    //Same error the commit list endpoint would have answered, see the exception mappers
+    private CommitPageResultDto toBatchError(final CommitPageRequestDto request, final Throwable failure) {
+        log.error("CommitViewer : Batch request of " + request.getUser() + "/" + request.getRepository() + " failed", failure);
+        final ErrorCode errorCode;
+        final String description;
+        if (failure instanceof CommitViewerException) {
+            errorCode = ((CommitViewerException) failure).getErrorCode();
+            description = ((CommitViewerException) failure).getDescription();
+        } else if (failure instanceof SkipFallbackException) {
+            errorCode = ((SkipFallbackException) failure).getErrorCode();
+            description = ((SkipFallbackException) failure).getDescription();
+        } else {
+            errorCode = failure instanceof TimeoutException ? ErrorCodeImpl.TIME_OUT : ErrorCodeImpl.UNKNOWN_ERROR;
+            description = null;
+        }
+        return toBatchResult(request, errorCode.getHttpStatusCode(), null, CommitPageResultDto.ErrorDto.builder()
+                                                                                                      .code(errorCode.getCode())
+                                                                                                      .message(errorCode.getMessage())
+                                                                                                      .description(description)
+                                                                                                      .build());
+    }
+
+    private CommitPageResultDto toBatchResult(final CommitPageRequestDto request,
+                                              final int status,
+                                              final CommitInfoPageDto commitInfoPage,
+                                              final CommitPageResultDto.ErrorDto error) {
+        return CommitPageResultDto.builder()
+                                  .user(request.getUser())
+                                  .repository(request.getRepository())
+                                  .page(request.getPage())
+                                  .perPage(request.getPerPage())
+                                  .status(status)
+                                  .result(commitInfoPage)
+                                  .error(error)
+                                  .build();
+    }
+
+    private boolean isFallbackAllowed(final Throwable throwable) {
+        return !(throwable instanceof SkipFallbackException);
+    }
+
+    @FunctionalInterface
+    private interface ResourceCall {
+        Response run() throws IOException, InterruptedException;
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.web.impl.filter;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.cli.CloneStrategy;
+import com.challenge.service.cli.RequestCloneStrategy;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.ext.Provider;
+
+//Reads the clone strategy asked by the request, e.g. ?clone_strategy=shallow, for the git CLI fallback
+@Provider
+public class CloneStrategyFilter implements ContainerRequestFilter {
+
+    public static final String CLONE_STRATEGY = "clone_strategy";
+
+    @Inject
+    RequestCloneStrategy requestCloneStrategy;
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        final String value = requestContext.getUriInfo().getQueryParameters().getFirst(CLONE_STRATEGY);
+        if (value == null) {
+            return;
+        }
+        requestCloneStrategy.setCloneStrategy(CloneStrategy.fromValue(value)
+                                                           .orElseThrow(() -> new CommitViewerException(ErrorCodeImpl.BAD_REQUEST,
+                                                                                                        "Unknown clone strategy : " + value)));
+    }
+}
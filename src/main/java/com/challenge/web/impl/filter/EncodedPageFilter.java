@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.web.impl.filter;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.common.CommitPageCache;
+import com.challenge.service.common.EncodedPageCache;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+//Sends commit pages from their encoded bytes (see EncodedPageCache) instead of serializing them on every response, gzip compressed
+//when the client accepts it. Pages carry a strong ETag, clients sending it back in If-None-Match get 304 Not Modified without a body.
+//Only pages held by the page cache are encoded: pages built for a single response (e.g. by the CLI, which has no page cache) would pay
+//the encoding, its hash and a cache insert without ever being sent again, they're serialized as usual
+@Provider
+public class EncodedPageFilter implements ContainerResponseFilter {
+
+    private static final String GZIP = "gzip";
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String USER = "user";
+    private static final String REPOSITORY = "repository";
+
+    @Inject
+    EncodedPageCache encodedPageCache;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) throws IOException {
+        if (!encodedPageCache.isEnabled() || responseContext.getStatus() != Response.Status.OK.getStatusCode()
+            || !(responseContext.getEntity() instanceof CommitInfoPageDto)) {
+            return;
+        }
+        final CommitInfoPageDto page = (CommitInfoPageDto) responseContext.getEntity();
+        final MultivaluedMap<String, String> pathParameters = requestContext.getUriInfo().getPathParameters();
+        if (!commitPageCache.holds(CommitPageCache.Key.of(pathParameters.getFirst(USER), pathParameters.getFirst(REPOSITORY), page.getPage(), page.getPerPage()),
+                                   page)) {
+            return;
+        }
+        final EncodedPageCache.EncodedPage encoded = encodedPageCache.get(page);
+        final boolean gzip = encodedPageCache.isCompressible(encoded) && acceptsGzip(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        final String etag = gzip ? encoded.getGzipEtag() : encoded.getEtag();
+        responseContext.getHeaders().putSingle(HttpHeaders.ETAG, etag);
+        responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (matches(requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH), etag)) {
+            responseContext.setStatus(Response.Status.NOT_MODIFIED.getStatusCode());
+            responseContext.setEntity(null);
+            return;
+        }
+        if (gzip) {
+            responseContext.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+            responseContext.setEntity(encodedPageCache.getGzip(page, encoded), responseContext.getEntityAnnotations(), responseContext.getMediaType());
+        } else {
+            responseContext.setEntity(encoded.getJson(), responseContext.getEntityAnnotations(), responseContext.getMediaType());
+        }
+    }
+
+    //e.g. "gzip, deflate, br" or "gzip;q=0.8, identity". gzip;q=0 refuses it
+    private boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parameters[0].trim())) {
+                return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    //If-None-Match compares ETags weakly, W/ prefixes are ignored
+    private boolean matches(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String tag = candidate.trim();
+            if (ANY.equals(tag) || etag.equals(tag.startsWith(WEAK_PREFIX) ? tag.substring(WEAK_PREFIX.length()) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
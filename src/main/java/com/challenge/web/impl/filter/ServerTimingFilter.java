@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.web.impl.filter;
+
+import com.challenge.service.common.RequestTimer;
+import com.challenge.service.common.RequestTimings;
+import io.quarkus.arc.Arc;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+//Adds the durations recorded by RequestTimer to the response, e.g. Server-Timing: github-page;dur=212.4, github-count;dur=198.0
+@Provider
+public class ServerTimingFilter implements ContainerResponseFilter {
+
+    private static final String SERVER_TIMING = "Server-Timing";
+
+    @Inject
+    RequestTimer requestTimer;
+
+    @Inject
+    RequestTimings requestTimings;
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+        if (!requestTimer.isEnabled() || !Arc.container().requestContext().isActive() || requestTimings.getTimings().isEmpty()) {
+            return;
+        }
+        responseContext.getHeaders().add(SERVER_TIMING, String.join(", ", requestTimings.getTimings()));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge.web.impl.health;
+
+import com.challenge.service.api.GitHubApiConnections;
+import com.challenge.service.api.GitHubRateLimit;
+import com.challenge.service.cli.GitMirrorCache;
+import com.challenge.service.common.GitProcessExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Not ready while requests would mostly wait or fail : git processes queued, GitHub connection pool nearly full, mirrors over their disk
+//budget or disk almost full, GitHub hard rate limited. The load balancer then sends requests to other instances until it recovers
+@Slf4j
+@Readiness
+@ApplicationScoped
+public class ReadinessCheck implements HealthCheck {
+
+    @ConfigProperty(name = "commit-viewer.readiness.enabled", defaultValue = "true")
+    Boolean enabled;
+
+    @ConfigProperty(name = "commit-viewer.readiness.git-queued-processes", defaultValue = "16")
+    Integer maxQueuedProcesses;
+
+    @ConfigProperty(name = "commit-viewer.readiness.github-pool-usage", defaultValue = "0.9")
+    Double maxPoolUsage;
+
+    @ConfigProperty(name = "commit-viewer.readiness.mirror-cache-usage", defaultValue = "1.2")
+    Double maxMirrorCacheUsage;
+
+    @ConfigProperty(name = "commit-viewer.readiness.min-usable-disk-mb", defaultValue = "512")
+    Long minUsableDiskMb;
+
+    //instances sharing a token (or an IP without one) are rate limited together, all of them would go unready at once
+    @ConfigProperty(name = "commit-viewer.readiness.rate-limited", defaultValue = "false")
+    Boolean downWhenRateLimited;
+
+    @Inject
+    GitProcessExecutor gitProcessExecutor;
+
+    @Inject
+    GitHubApiConnections gitHubApiConnections;
+
+    @Inject
+    GitMirrorCache gitMirrorCache;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    private final AtomicBoolean ready = new AtomicBoolean(true);
+
+    @Override
+    public HealthCheckResponse call() {
+        final int running = gitProcessExecutor.getRunning();
+        final int queued = gitProcessExecutor.getQueued();
+        final int inFlight = gitHubApiConnections.getInFlight();
+        final int poolSize = gitHubApiConnections.getPoolSize();
+        final long mirrorsSize = gitMirrorCache.isEnabled() ? gitMirrorCache.getTotalSizeBytes() : 0;
+        final long mirrorsMaxSize = gitMirrorCache.getMaxSizeBytes();
+        final long usableDisk = getUsableSpace(gitMirrorCache.isEnabled() ? gitMirrorCache.getRootFolder() : new File(System.getProperty("java.io.tmpdir")));
+        final boolean rateLimited = gitHubRateLimit.isHardLimited();
+
+        final List<String> reasons = new ArrayList<>();
+        if (queued > maxQueuedProcesses) {
+            reasons.add(queued + " git processes queued");
+        }
+        if (poolSize > 0 && inFlight >= maxPoolUsage * poolSize) {
+            reasons.add(inFlight + " GitHub API requests in flight for " + poolSize + " connections");
+        }
+        if (mirrorsMaxSize > 0 && mirrorsSize > maxMirrorCacheUsage * mirrorsMaxSize) {
+            reasons.add("git mirrors use " + FileUtils.byteCountToDisplaySize(mirrorsSize) + " of " + FileUtils.byteCountToDisplaySize(mirrorsMaxSize));
+        }
+        if (usableDisk < minUsableDiskMb * FileUtils.ONE_MB) {
+            reasons.add(FileUtils.byteCountToDisplaySize(usableDisk) + " of disk left");
+        }
+        if (downWhenRateLimited && rateLimited) {
+            reasons.add("GitHub API rate limited");
+        }
+
+        final boolean up = !enabled || reasons.isEmpty();
+        if (ready.getAndSet(up) != up) {
+            log.warn("CommitViewer : " + (up ? "ready again" : "not ready, " + String.join(", ", reasons)));
+        }
+        final HealthCheckResponseBuilder response = HealthCheckResponse.named(ReadinessCheck.class.getSimpleName())
+                                                                       .status(up)
+                                                                       .withData("git-processes-running", running)
+                                                                       .withData("git-processes-queued", queued)
+                                                                       .withData("github-requests-in-flight", inFlight)
+                                                                       .withData("github-connection-pool-size", poolSize)
+                                                                       .withData("mirror-cache-size-bytes", mirrorsSize)
+                                                                       .withData("mirror-cache-max-size-bytes", mirrorsMaxSize)
+                                                                       .withData("usable-disk-bytes", usableDisk)
+                                                                       .withData("github-rate-limit-remaining", gitHubRateLimit.getRemaining())
+                                                                       .withData("github-rate-limited", rateLimited);
+        if (!reasons.isEmpty()) {
+            response.withData("reason", String.join(", ", reasons));
+        }
+        return response.build();
+    }
+
+    //the mirrors folder is created with the first clone, until then its closest existing parent tells the disk
+    private long getUsableSpace(final File folder) {
+        File existing = folder.getAbsoluteFile();
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        return existing == null ? 0 : existing.getUsableSpace();
+    }
+}
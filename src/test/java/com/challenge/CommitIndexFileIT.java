@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.service.cli.CommitIndexFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.util.List;
+
+public class CommitIndexFileIT {
+
+    private static final String AUTHOR = "Paulo Carrasqueira <pjcarrasqueira@gmail.com>";
+
+    private static final CommitInfoDto FIRST = CommitInfoDto.of("7d54a55f60082c42dbdb8e586cbcb15023971922", "Initial commit",
+                                                                Instant.parse("2021-09-26T21:53:49Z"), AUTHOR);
+    private static final CommitInfoDto SECOND = CommitInfoDto.of("b56845e4fc80a8eec0c873708f72e9a55b6d2668", "Secondo commit ✓",
+                                                                 Instant.parse("2021-09-26T21:54:43Z"), AUTHOR);
+    private static final CommitInfoDto THIRD = CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba282", "Add new line\n\nAdded new line on readme",
+                                                                Instant.parse("2021-09-26T21:55:26Z"), "Someone Else <someone@example.com>");
+
+    @TempDir
+    File folder;
+
+    @Test
+    public void readPagesNewestFirstAfterAppend() throws IOException {
+        try (CommitIndexFile.Writer writer = CommitIndexFile.create(folder)) {
+            writer.append(FIRST);
+            writer.append(SECOND);
+            writer.commit(SECOND.getSha());
+        }
+        final CommitIndexFile index = CommitIndexFile.open(folder).orElseThrow();
+        try (CommitIndexFile.Writer writer = index.append()) {
+            writer.append(THIRD);
+            writer.commit(THIRD.getSha());
+        }
+
+        //reopened from disk, as after a restart
+        final CommitIndexFile reopened = CommitIndexFile.open(folder).orElseThrow();
+        Assertions.assertEquals(3, reopened.getCount());
+        Assertions.assertEquals(THIRD.getSha(), reopened.getHeadSha());
+        Assertions.assertEquals(List.of(THIRD, SECOND), reopened.getCommits(0, 2));
+        Assertions.assertEquals(List.of(FIRST), reopened.getCommits(2, 2));
+        Assertions.assertTrue(reopened.getCommits(3, 2).isEmpty());
+    }
+
+    @Test
+    public void unfinishedAppendIsIgnored() throws IOException {
+        try (CommitIndexFile.Writer writer = CommitIndexFile.create(folder)) {
+            writer.append(FIRST);
+            writer.commit(FIRST.getSha());
+        }
+        //appended but never committed, e.g. the process died during a fetch
+        try (CommitIndexFile.Writer writer = CommitIndexFile.open(folder).orElseThrow().append()) {
+            writer.append(SECOND);
+        }
+
+        final CommitIndexFile index = CommitIndexFile.open(folder).orElseThrow();
+        Assertions.assertEquals(1, index.getCount());
+        Assertions.assertEquals(List.of(FIRST), index.getCommits(0, 10));
+    }
+
+    @Test
+    public void corruptedIndexIsNotOpened() throws IOException {
+        try (CommitIndexFile.Writer writer = CommitIndexFile.create(folder)) {
+            writer.append(FIRST);
+            writer.commit(FIRST.getSha());
+        }
+        try (RandomAccessFile records = new RandomAccessFile(new File(folder, CommitIndexFile.RECORDS_FILE), "rw")) {
+            records.writeInt(0);
+        }
+
+        Assertions.assertTrue(CommitIndexFile.open(folder).isEmpty());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.mapper.CommitViewerMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+@QuarkusTest
+public class CommitViewerMapperIT {
+
+    //trimmed GitHub API commit, with the subtrees the mapper skips
+    private static final String COMMIT = "{\"sha\":\"ce206ff99e275fd99d57d1e024cc22e3db9ba282\","
+                                         + "\"node_id\":\"C_kwDOGJ\","
+                                         + "\"commit\":{\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26Z\"},"
+                                         + "\"committer\":{\"name\":\"GitHub\",\"email\":\"noreply@github.com\",\"date\":\"2021-09-26T21:56:00Z\"},"
+                                         + "\"message\":\"Add new line\\n\\nAdded new line on readme\","
+                                         + "\"tree\":{\"sha\":\"9c3e1f0\",\"url\":\"https://api.github.com/repos/pjcarrasqueira/commit-viewer/git/trees/9c3e1f0\"},"
+                                         + "\"comment_count\":0,"
+                                         + "\"verification\":{\"verified\":false,\"reason\":\"unsigned\",\"signature\":null,\"payload\":null}},"
+                                         + "\"author\":{\"login\":\"pjcarrasqueira\",\"id\":1},"
+                                         + "\"committer\":null,"
+                                         + "\"parents\":[{\"sha\":\"b56845e4fc80a8eec0c873708f72e9a55b6d2668\",\"url\":\"https://api.github.com\"}]}";
+
+    @Inject
+    CommitViewerMapper commitViewerMapper;
+
+    @Test
+    public void readCommitsSkippingOtherFields() throws IOException {
+        final List<CommitInfoDto> commits = commitViewerMapper.gitHubApiResponseToCommitInfoDto(
+            IOUtils.toInputStream("[" + COMMIT + "," + COMMIT.replace("ce206ff", "a0b1c2d") + "]", StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(2, commits.size());
+        Assertions.assertEquals(CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba282",
+                                                 "Add new line\n\nAdded new line on readme",
+                                                 Instant.parse("2021-09-26T21:55:26Z"),
+                                                 "Paulo Carrasqueira <pjcarrasqueira@gmail.com>"), commits.get(0));
+        Assertions.assertEquals("a0b1c2d99e275fd99d57d1e024cc22e3db9ba282", commits.get(1).getSha());
+    }
+
+    @Test
+    public void readEmptyList() throws IOException {
+        Assertions.assertTrue(commitViewerMapper.gitHubApiResponseToCommitInfoDto(IOUtils.toInputStream("[]", StandardCharsets.UTF_8)).isEmpty());
+    }
+
+    @Test
+    public void readErrorBodyFails() {
+        Assertions.assertThrows(JsonProcessingException.class, () -> commitViewerMapper.gitHubApiResponseToCommitInfoDto(
+            IOUtils.toInputStream("{\"message\":\"Not Found\"}", StandardCharsets.UTF_8)));
+        Assertions.assertThrows(JsonProcessingException.class, () -> commitViewerMapper.gitHubApiResponseToCommitInfoDto(
+            IOUtils.toInputStream("[" + COMMIT, StandardCharsets.UTF_8)));
+    }
+}
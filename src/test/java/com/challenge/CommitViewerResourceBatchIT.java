@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.dto.CommitPageRequestDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.exception.SkipFallbackException;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.cli.GitCliService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.restassured.path.json.JsonPath;
+import io.smallrye.mutiny.Uni;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.OK;
+
+@QuarkusTest
+public class CommitViewerResourceBatchIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/batch";
+
+    @TestHTTPResource(RESOURCE_URL)
+    URL url;
+
+    @InjectMock
+    GitApiService gitApiService;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Test
+    public void getCommitsBatch() {
+
+        final CommitInfoDto commitInfo = CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba282",
+                                                          "Add new line",
+                                                          Instant.parse("2021-09-26T21:55:26Z"),
+                                                          "Paulo Carrasqueira <pjcarrasqueira@gmail.com>");
+        final CommitInfoPageDto commitInfoPage = CommitInfoPageDto.builder().page(2).perPage(1).count(1).total(4L).totalPages(4).items(List.of(commitInfo)).build();
+
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("commit-viewer-test"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().item(commitInfoPage));
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("unknown"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "API")));
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("cli-test"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "API")));
+        Mockito.when(gitCliService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("cli-test"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().item(commitInfoPage));
+
+        final String body = given()
+            .contentType(APPLICATION_JSON)
+            .body(List.of(CommitPageRequestDto.of("pcarrasqueira", "commit-viewer-test", 2, 1),
+                          CommitPageRequestDto.of("pcarrasqueira", "unknown", 1, 10),
+                          CommitPageRequestDto.of("pcarrasqueira", "cli-test", 2, 1)))
+            .post(RESOURCE_URL)
+            .then()
+            .statusCode(OK.getStatusCode())
+            .contentType("application/x-ndjson")
+            .extract().asString();
+
+        //one line per repository, in completion order
+        final Map<String, JsonPath> results = Arrays.stream(body.split("\n"))
+                                                    .map(JsonPath::from)
+                                                    .collect(Collectors.toMap(result -> result.getString("repository"), Function.identity()));
+        Assertions.assertEquals(3, results.size());
+        Assertions.assertEquals(200, results.get("commit-viewer-test").getInt("status"));
+        Assertions.assertEquals(commitInfo.getSha(), results.get("commit-viewer-test").getString("result.items[0].sha"));
+        Assertions.assertEquals(2, results.get("commit-viewer-test").getInt("page"));
+        Assertions.assertEquals(404, results.get("unknown").getInt("status"));
+        Assertions.assertEquals(ErrorCodeImpl.NOT_FOUND.getCode(), results.get("unknown").getString("error.code"));
+        Assertions.assertEquals("API", results.get("unknown").getString("error.description"));
+        Assertions.assertEquals(200, results.get("cli-test").getInt("status"));
+        Mockito.verify(gitCliService, Mockito.never()).getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.eq("unknown"),
+                                                                          ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void getCommitsBatchStreamsResultsAsTheyComplete() throws Exception {
+
+        final CommitInfoPageDto commitInfoPage = CommitInfoPageDto.builder().page(1).perPage(10).count(0).items(List.of()).build();
+        final CompletableFuture<CommitInfoPageDto> slowPage = new CompletableFuture<>();
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("slow"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().completionStage(slowPage));
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("fast"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().item(commitInfoPage));
+
+        final HttpURLConnection connection = postBatch(List.of(CommitPageRequestDto.of("pcarrasqueira", "slow", 1, 10),
+                                                               CommitPageRequestDto.of("pcarrasqueira", "fast", 1, 10)));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            //the fast result is written while the slow one is still running
+            Assertions.assertEquals("fast", JsonPath.from(reader.readLine()).getString("repository"));
+            Assertions.assertFalse(slowPage.isDone());
+
+            slowPage.complete(commitInfoPage);
+            Assertions.assertEquals("slow", JsonPath.from(reader.readLine()).getString("repository"));
+            Assertions.assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void getCommitsBatchCancelledWhenClientLeaves() throws Exception {
+
+        final CommitInfoPageDto commitInfoPage = CommitInfoPageDto.builder().page(1).perPage(10).count(0).items(List.of()).build();
+        final CompletableFuture<CommitInfoPageDto> neverPage = new CompletableFuture<>();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        neverPage.whenComplete((item, failure) -> cancelled.countDown());
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("never"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().completionStage(neverPage));
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.eq("pcarrasqueira"), ArgumentMatchers.eq("fast"),
+                                                      ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().item(commitInfoPage));
+
+        //a plain socket, closed for sure once the first result is read
+        final byte[] body = new ObjectMapper().writeValueAsBytes(List.of(CommitPageRequestDto.of("pcarrasqueira", "never", 1, 10),
+                                                                         CommitPageRequestDto.of("pcarrasqueira", "fast", 1, 10)));
+        try (Socket socket = new Socket(url.getHost(), url.getPort())) {
+            socket.setSoTimeout(10000);
+            final OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("POST " + url.getPath() + " HTTP/1.1\r\nHost: " + url.getHost() + "\r\nContent-Type: " + APPLICATION_JSON
+                                + "\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            outputStream.write(body);
+            outputStream.flush();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            while (line != null && !line.startsWith("{")) {
+                line = reader.readLine();
+            }
+            Assertions.assertEquals("fast", JsonPath.from(line).getString("repository"));
+        }
+
+        //the page still running is cancelled rather than left to run for nobody, well before commit-viewer.reactive.timeout-seconds
+        Assertions.assertTrue(cancelled.await(3, TimeUnit.SECONDS));
+        Assertions.assertTrue(neverPage.isCancelled());
+    }
+
+    @Test
+    public void getCommitsBatchNotValid() {
+
+        //errors are a single JSON line too
+        final String body = given()
+            .contentType(APPLICATION_JSON)
+            .body(List.of(CommitPageRequestDto.of("pcarrasqueira", "commit-viewer-test", 1, 101)))
+            .post(RESOURCE_URL)
+            .then()
+            .statusCode(ErrorCodeImpl.BAD_REQUEST.getHttpStatusCode())
+            .extract().asString();
+
+        Assertions.assertEquals(ErrorCodeImpl.BAD_REQUEST.getCode(), JsonPath.from(body).getString("code"));
+    }
+
+    private HttpURLConnection postBatch(final List<CommitPageRequestDto> requests) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", APPLICATION_JSON);
+        connection.setDoOutput(true);
+        connection.setReadTimeout(10000);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(new ObjectMapper().writeValueAsBytes(requests));
+        }
+        Assertions.assertEquals(OK.getStatusCode(), connection.getResponseCode());
+        return connection;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.service.api.GitHubApiClient;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectMock;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+@QuarkusTest
+public class CommitViewerResourceCursorIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}/cursor";
+    private static final String AFTER_SHA = "ce206ff99e275fd99d57d1e024cc22e3db9ba282";
+    private static final String SECOND_SHA = "9a4b1c2f0e2d7d35a1f8f6c3b8e4a0d2c1b3e5f7";
+    private static final String THIRD_SHA = "1f2e3d4c5b6a79880716253443526170a9b8c7d6";
+    private static final String FOURTH_SHA = "5d2c8e7f1a3b4c6d9e0f1a2b3c4d5e6f7a8b9c0d";
+    private static final String FIFTH_SHA = "0a1b2c3d4e5f60718293a4b5c6d7e8f901234567";
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @Test
+    public void getCommitsAfterCursor() {
+
+        //a cursor without pending commits after the first page of 1 commit, resumed with a limit of 2 : the page of 3 commits of its HEAD
+        //holds them, without its first one
+        Mockito.when(gitHubApiClient.getCommitsFromResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq(AFTER_SHA), ArgumentMatchers.eq(1),
+                                                            ArgumentMatchers.eq(3)))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream("[" + commit(AFTER_SHA) + "," + commit(SECOND_SHA) + "," + commit(THIRD_SHA) + "]",
+                                                                       StandardCharsets.UTF_8))
+                                                 .link(URI.create("https://api.github.com/repositories/1/commits?page=2&per_page=3"), "next")
+                                                 .build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", toCursor(AFTER_SHA + ":1"))
+            .queryParam("limit", 2)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items.size()", is(2),
+                  "items[0].sha", is(SECOND_SHA),
+                  "items[1].sha", is(THIRD_SHA),
+                  "count", is(2),
+                  "next", is(toCursor(AFTER_SHA + ":3")),
+                  "$", not(hasKey("page")),
+                  "$", not(hasKey("total")));
+    }
+
+    @Test
+    public void getCommitsLastPageHasNoCursor() {
+
+        Mockito.when(gitHubApiClient.getCommitsFromResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq(1),
+                                                            ArgumentMatchers.eq(10)))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream("[" + commit(AFTER_SHA) + "]", StandardCharsets.UTF_8)).build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items[0].sha", is(AFTER_SHA),
+                  "count", is(1),
+                  "$", not(hasKey("next")));
+    }
+
+    @Test
+    public void getCommitsFirstPageCursorHoldsPendingCommits() {
+
+        //the second commit merges two branches, the walk goes on from both parents
+        Mockito.when(gitHubApiClient.getCommitsFromResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq(1),
+                                                            ArgumentMatchers.eq(2)))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream("[" + commit(AFTER_SHA, SECOND_SHA) + "," + commit(SECOND_SHA, THIRD_SHA, FOURTH_SHA) + "]",
+                                                                       StandardCharsets.UTF_8))
+                                                 .link(URI.create("https://api.github.com/repositories/1/commits?page=2&per_page=2"), "next")
+                                                 .build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("limit", 2)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items.size()", is(2),
+                  "next", is(toCursor(AFTER_SHA + ":2:" + THIRD_SHA + "," + FOURTH_SHA)));
+    }
+
+    @Test
+    public void getCommitsResumedFromPendingCommit() {
+
+        //a single pending commit, its commits are the rest of the walk : no page of the cursor HEAD is counted to the position
+        Mockito.when(gitHubApiClient.getCommitsFromResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq(THIRD_SHA), ArgumentMatchers.eq(1),
+                                                            ArgumentMatchers.eq(2)))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream("[" + commit(THIRD_SHA, FOURTH_SHA) + "," + commit(FOURTH_SHA, FIFTH_SHA) + "]",
+                                                                       StandardCharsets.UTF_8))
+                                                 .link(URI.create("https://api.github.com/repositories/1/commits?page=2&per_page=2"), "next")
+                                                 .build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", toCursor(AFTER_SHA + ":40:" + THIRD_SHA))
+            .queryParam("limit", 2)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items[0].sha", is(THIRD_SHA),
+                  "items[1].sha", is(FOURTH_SHA),
+                  "next", is(toCursor(AFTER_SHA + ":42:" + FIFTH_SHA)));
+    }
+
+    @Test
+    public void getCommitsCursorInsideGitHubPage() {
+
+        //commits 5 and 6 are not on the same GitHub page of 2 or 3 commits, they are on the second one of 4
+        Mockito.when(gitHubApiClient.getCommitsFromResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq(AFTER_SHA), ArgumentMatchers.eq(2),
+                                                            ArgumentMatchers.eq(4)))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream("[" + commit(AFTER_SHA) + "," + commit(SECOND_SHA) + "," + commit(THIRD_SHA) + ","
+                                                                           + commit(AFTER_SHA) + "]", StandardCharsets.UTF_8))
+                                                 .build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", toCursor(AFTER_SHA + ":5"))
+            .queryParam("limit", 2)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items.size()", is(2),
+                  "items[0].sha", is(SECOND_SHA),
+                  "items[1].sha", is(THIRD_SHA),
+                  "next", is(toCursor(AFTER_SHA + ":7")));
+    }
+
+    @Test
+    public void getCommitsInvalidCursor() {
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", "not-a-cursor")
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(BAD_REQUEST.getStatusCode());
+
+        Mockito.verifyNoInteractions(gitHubApiClient);
+    }
+
+    private static String commit(final String sha, final String... parents) {
+        final StringBuilder parentList = new StringBuilder();
+        for (final String parent : parents) {
+            parentList.append(parentList.length() == 0 ? "" : ",").append("{\"sha\":\"").append(parent).append("\",\"url\":\"\"}");
+        }
+        return "{\"sha\":\"" + sha + "\",\"commit\":{\"message\":\"Add new line\","
+               + "\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26Z\"}},"
+               + "\"parents\":[" + parentList + "]}";
+    }
+
+    private static String toCursor(final String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -12,10 +12,13 @@ import com.challenge.model.api.exception.ErrorCodeImpl;
 import com.challenge.model.api.exception.SkipFallbackException;
 import com.challenge.service.api.GitApiService;
 import com.challenge.service.cli.GitCliService;
+import com.challenge.web.api.CommitViewerResource;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.mockito.InjectMock;
 import io.restassured.config.RestAssuredConfig;
+import io.restassured.path.json.JsonPath;
 import org.eclipse.microprofile.faulttolerance.exceptions.TimeoutException;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
@@ -62,7 +65,7 @@ public class CommitViewerResourceMockitoIT {
                              .page(1)
                              .perPage(10)
                              .count(4)
-                             .total(4)
+                             .total(4L)
                              .totalPages(1)
                              .items(list)
                              .build());
@@ -102,7 +105,7 @@ public class CommitViewerResourceMockitoIT {
                              .page(1)
                              .perPage(10)
                              .count(4)
-                             .total(4)
+                             .total(4L)
                              .totalPages(1)
                              .items(list)
                              .build());
@@ -159,6 +162,21 @@ public class CommitViewerResourceMockitoIT {
                   "description", is("Constraint violation(s) occurred during method validation"));
     }
 
+    @Test
+    public void getCommitsUnknownCloneStrategy() {
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .queryParam("clone_strategy", "sparse")
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.BAD_REQUEST.getHttpStatusCode())
+            .body("code", is(ErrorCodeImpl.BAD_REQUEST.getCode()),
+                  "message", is(ErrorCodeImpl.BAD_REQUEST.getMessage()),
+                  "description", is("Unknown clone strategy : sparse"));
+    }
+
     @Test
     public void getCommitsSkipFallbackException() throws IOException, InterruptedException {
 
@@ -274,7 +292,7 @@ public class CommitViewerResourceMockitoIT {
                              .page(1)
                              .perPage(10)
                              .count(4)
-                             .total(4)
+                             .total(4L)
                              .totalPages(1)
                              .items(apiList)
                              .build());
@@ -283,7 +301,7 @@ public class CommitViewerResourceMockitoIT {
                              .page(1)
                              .perPage(10)
                              .count(4)
-                             .total(4)
+                             .total(4L)
                              .totalPages(1)
                              .items(cliList)
                              .build());
@@ -304,4 +322,48 @@ public class CommitViewerResourceMockitoIT {
                   "total", is(4),
                   "total_pages", is(1));
     }
+
+    @Test
+    public void exportCommits() throws IOException, InterruptedException {
+
+        Mockito.when(gitCliService.exportCommits(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any())).thenAnswer(invocation -> {
+            final GitCliService.CommitWriter writer = invocation.getArgument(2);
+            for (int i = 0; i < 3; i++) {
+                writer.write(CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba28" + i,
+                                              "Commit " + i + "\n\nwith a body",
+                                              Instant.parse("2021-09-26T21:55:26Z"),
+                                              "Paulo Carrasqueira <pjcarrasqueira@gmail.com>"));
+            }
+            return 3L;
+        });
+
+        final String body = given()
+            .get(RESOURCE_URL + "/export", "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .contentType(CommitViewerResource.APPLICATION_NDJSON)
+            .extract().asString();
+
+        //one commit per line, new lines of messages are escaped
+        final String[] lines = body.split("\n");
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertEquals("ce206ff99e275fd99d57d1e024cc22e3db9ba280", JsonPath.from(lines[0]).getString("sha"));
+        Assertions.assertEquals("Commit 2\n\nwith a body", JsonPath.from(lines[2]).getString("message"));
+        Mockito.verifyNoInteractions(gitApiService);
+    }
+
+    @Test
+    public void exportCommitsNotFound() throws IOException, InterruptedException {
+
+        Mockito.when(gitCliService.exportCommits(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenThrow(new CommitViewerException(ErrorCodeImpl.NOT_FOUND, "CLI"));
+
+        //nothing was written yet, the error is answered as usual
+        final String body = given()
+            .get(RESOURCE_URL + "/export", "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.NOT_FOUND.getHttpStatusCode())
+            .extract().asString();
+        Assertions.assertEquals(ErrorCodeImpl.NOT_FOUND.getCode(), JsonPath.from(body).getString("code"));
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.model.api.exception.SkipFallbackException;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.cli.GitCliService;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.smallrye.mutiny.Uni;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.hamcrest.Matchers.is;
+
+@QuarkusTest
+public class CommitViewerResourceReactiveIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}/reactive";
+
+    @InjectMock
+    GitApiService gitApiService;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Test
+    public void getCommitsReactiveFallbackToCli() {
+
+        final CommitInfoDto commitInfo = CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba282",
+                                                          "Add new line\n\nAdded new line on readme",
+                                                          Instant.parse("2021-09-26T21:55:26Z"),
+                                                          "Paulo Carrasqueira <pjcarrasqueira@gmail.com>");
+
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "API")));
+        Mockito.when(gitCliService.getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().item(CommitInfoPageDto.builder()
+                                                                  .page(1)
+                                                                  .perPage(10)
+                                                                  .count(1)
+                                                                  .total(1L)
+                                                                  .totalPages(1)
+                                                                  .items(List.of(commitInfo))
+                                                                  .build()));
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items[0].sha", is(commitInfo.getSha()),
+                  "items[0].message", is(commitInfo.getMessage()),
+                  "page", is(1),
+                  "count", is(1),
+                  "total", is(1));
+    }
+
+    @Test
+    public void getCommitsReactiveSkipFallbackException() {
+
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new SkipFallbackException(ErrorCodeImpl.NOT_FOUND, "API")));
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.NOT_FOUND.getHttpStatusCode())
+            .body("code", is(ErrorCodeImpl.NOT_FOUND.getCode()),
+                  "description", is("API"));
+
+        Mockito.verify(gitCliService, Mockito.never()).getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void getCommitsReactiveCliBusy() {
+
+        Mockito.when(gitApiService.getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "API")));
+        Mockito.when(gitCliService.getCommitListAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(Uni.createFrom().failure(new CommitViewerException(ErrorCodeImpl.SERVICE_UNAVAILABLE, "CLI")));
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.SERVICE_UNAVAILABLE.getHttpStatusCode())
+            .body("code", is(ErrorCodeImpl.SERVICE_UNAVAILABLE.getCode()),
+                  "description", is("CLI"));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.service.cli.GitCommands;
+import com.challenge.service.cli.GitLogParser;
+import com.challenge.service.common.CommitViewerHelper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.OK;
+
+//Cursor pages of a history with merges, served by the git CLI from a local repository
+@QuarkusTest
+@TestProfile(CursorMergeHistoryIT.CliProfile.class)
+public class CursorMergeHistoryIT {
+
+    private static final File REPOSITORIES = new File("target/test-repositories/cursor");
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}/cursor";
+    private static final String USER = "pcarrasqueira";
+    private static final String REPO = "merge-history";
+    private static final int LIMIT = 2;
+
+    @Inject
+    GitCommands gitCommands;
+
+    @Inject
+    GitLogParser gitLogParser;
+
+    @Inject
+    CommitViewerHelper commitViewerHelper;
+
+    private LocalGitRepository repository;
+
+    //main and side interleave in time, so git log lists side commits between main ones and after the parent of the last page commit
+    @BeforeEach
+    public void createRepository() throws Exception {
+        repository = LocalGitRepository.create(REPOSITORIES, USER, REPO);
+        repository.commit(3, "Base");
+        repository.git("checkout", "-q", "-b", "side");
+        repository.commit(2, "Side");
+        repository.git("checkout", "-q", "main");
+        repository.commit(2, "Main");
+        repository.merge("side", "Merge side");
+        repository.git("checkout", "-q", "-b", "other", "HEAD~1");
+        repository.commit(3, "Other");
+        repository.git("checkout", "-q", "main");
+        repository.commit(1, "Main after merge");
+        repository.merge("other", "Merge other");
+    }
+
+    @Test
+    public void cursorPagesListWholeHistory() throws Exception {
+        final List<String> expected = repository.lines("log", "--format=%H", "HEAD");
+
+        final List<String> shas = new ArrayList<>();
+        String after = null;
+        do {
+            final JsonPath page = getPage(after);
+            shas.addAll(page.getList("items.sha"));
+            after = page.getString("next");
+        } while (after != null && shas.size() <= expected.size());
+
+        Assertions.assertEquals(expected, shas);
+    }
+
+    @Test
+    public void cursorKeepsWalkingHeadOfFirstPage() throws Exception {
+        final List<String> expected = repository.lines("log", "--format=%H", "HEAD");
+        final JsonPath firstPage = getPage(null);
+
+        //the mirror index moves to the new HEAD, following pages are walked from the pending commits of their cursor
+        repository.commit(2, "Pushed");
+        final List<String> shas = new ArrayList<>(firstPage.getList("items.sha"));
+        String after = firstPage.getString("next");
+        while (after != null && shas.size() <= expected.size()) {
+            Assertions.assertEquals(3, new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8).split(":").length);
+            final JsonPath page = getPage(after);
+            shas.addAll(page.getList("items.sha"));
+            after = page.getString("next");
+        }
+
+        Assertions.assertEquals(expected, shas);
+    }
+
+    //git log (commit-viewer.cli.reader=git) restarted from the pending commits of each page, never skipping any
+    @Test
+    public void gitLogPagesListWholeHistory() throws Exception {
+        final List<String> expected = repository.lines("log", "--format=%H", "HEAD");
+
+        final List<String> shas = new ArrayList<>();
+        CommitViewerHelper.Cursor cursor = CommitViewerHelper.Cursor.start(repository.head());
+        while (!cursor.getPending().isEmpty() && shas.size() <= expected.size()) {
+            final List<CommitInfoDto> commits = commitViewerHelper.readProcessOutput(repository.getFolder(),
+                                                                                     gitCommands.createGitLogAfterCommand(cursor.getPending(), 0, LIMIT),
+                                                                                     gitLogParser::parse);
+            final List<CommitInfoDto> page = commits.subList(0, Math.min(LIMIT, commits.size()));
+            final Map<String, List<String>> parents = new HashMap<>();
+            for (final CommitInfoDto commit : page) {
+                final List<String> line = List.of(repository.lines("rev-list", "--parents", "-n", "1", commit.getSha()).get(0).split(" "));
+                parents.put(line.get(0), line.subList(1, line.size()));
+            }
+            shas.addAll(page.stream().map(CommitInfoDto::getSha).collect(Collectors.toList()));
+            cursor = cursor.next(page, parents);
+        }
+
+        Assertions.assertEquals(expected, shas);
+    }
+
+    private JsonPath getPage(final String after) {
+        return given()
+            .accept(APPLICATION_JSON)
+            .queryParam("limit", LIMIT)
+            .queryParams(after == null ? Map.of() : Map.of("after", after))
+            .get(RESOURCE_URL, USER, REPO)
+            .then()
+            .statusCode(OK.getStatusCode())
+            .extract()
+            .jsonPath();
+    }
+
+    public static class CliProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.github-url", LocalGitRepository.url(REPOSITORIES),
+                          "commit-viewer.mirror-cache.path", new File("target/test-mirrors/cursor").getAbsolutePath(),
+                          "commit-viewer.force-use-cli", "true");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.cli.GitCliService;
+import com.challenge.service.common.CommitPageCache;
+import com.challenge.service.common.EncodedPageCache;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.restassured.config.DecoderConfig;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.NOT_MODIFIED;
+import static javax.ws.rs.core.Response.Status.OK;
+
+@QuarkusTest
+public class EncodedPageCacheIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}";
+
+    @InjectMock
+    GitApiService gitApiService;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Inject
+    EncodedPageCache encodedPageCache;
+
+    @Inject
+    CommitPageCache commitPageCache;
+
+    @Test
+    public void pageEncodedOnceAndRevalidatedWithEtag() throws Exception {
+
+        //same page object on every call, as served by the page cache
+        final CommitInfoPageDto page = getCachedPage("encoded-once", 2);
+        Mockito.when(gitApiService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.eq("encoded-once"), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(page);
+
+        final long misses = encodedPageCache.getMisses();
+        final ExtractableResponse<Response> first = getCommits("encoded-once", null, false);
+        final ExtractableResponse<Response> second = getCommits("encoded-once", null, false);
+
+        Assertions.assertEquals(OK.getStatusCode(), first.statusCode());
+        Assertions.assertEquals("sha-0", first.jsonPath().getString("items[0].sha"));
+        Assertions.assertEquals(first.asString(), second.asString());
+        Assertions.assertEquals(first.header(HttpHeaders.ETAG), second.header(HttpHeaders.ETAG));
+        Assertions.assertTrue(first.header(HttpHeaders.ETAG).matches("\"[0-9a-f]{32}\""));
+        Assertions.assertEquals(1, encodedPageCache.getMisses() - misses);
+
+        final ExtractableResponse<Response> notModified = getCommits("encoded-once", first.header(HttpHeaders.ETAG), false);
+        Assertions.assertEquals(NOT_MODIFIED.getStatusCode(), notModified.statusCode());
+        Assertions.assertEquals(first.header(HttpHeaders.ETAG), notModified.header(HttpHeaders.ETAG));
+        Assertions.assertEquals("", notModified.asString());
+    }
+
+    @Test
+    public void largePageSentCompressed() throws Exception {
+
+        final CommitInfoPageDto page = getCachedPage("compressed", 100);
+        Mockito.when(gitApiService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.eq("compressed"), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(page);
+
+        final ExtractableResponse<Response> compressed = getCommits("compressed", null, true);
+        final ExtractableResponse<Response> identity = getCommits("compressed", null, false);
+
+        Assertions.assertEquals("gzip", compressed.header(HttpHeaders.CONTENT_ENCODING));
+        Assertions.assertNull(identity.header(HttpHeaders.CONTENT_ENCODING));
+        //rest assured decompresses the body
+        Assertions.assertEquals(identity.asString(), compressed.asString());
+        Assertions.assertNotEquals(identity.header(HttpHeaders.ETAG), compressed.header(HttpHeaders.ETAG));
+        final ExtractableResponse<Response> notModified = getCommits("compressed", compressed.header(HttpHeaders.ETAG), true);
+        Assertions.assertEquals(NOT_MODIFIED.getStatusCode(), notModified.statusCode());
+        Assertions.assertEquals(compressed.header(HttpHeaders.ETAG), notModified.header(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void pageBuiltForEachResponseNotEncoded() throws Exception {
+
+        //a new page object on every call, as read by the git CLI
+        Mockito.when(gitApiService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.eq("not-cached"), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenAnswer(invocation -> getPage("not-cached", 100));
+
+        final long misses = encodedPageCache.getMisses();
+        final ExtractableResponse<Response> first = getCommits("not-cached", null, false);
+        final ExtractableResponse<Response> second = getCommits("not-cached", null, false);
+
+        Assertions.assertEquals(OK.getStatusCode(), second.statusCode());
+        Assertions.assertEquals(first.asString(), second.asString());
+        Assertions.assertEquals(100, second.jsonPath().getList("items").size());
+        Assertions.assertNull(second.header(HttpHeaders.ETAG));
+        Assertions.assertEquals(0, encodedPageCache.getMisses() - misses);
+    }
+
+    //rest assured asks for gzip (and decompresses) unless its decoders are removed
+    private ExtractableResponse<Response> getCommits(final String repo, final String ifNoneMatch, final boolean gzip) {
+        return given().config(gzip ? RestAssuredConfig.config() : RestAssuredConfig.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                      .accept(APPLICATION_JSON)
+                      .header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch == null ? "" : ifNoneMatch)
+                      .get(RESOURCE_URL, "pcarrasqueira", repo)
+                      .then()
+                      .extract();
+    }
+
+    private CommitInfoPageDto getCachedPage(final String repo, final int size) {
+        final CommitInfoPageDto page = getPage(repo, size);
+        commitPageCache.put(CommitPageCache.Key.of("pcarrasqueira", repo, page.getPage(), page.getPerPage()), page, null);
+        return page;
+    }
+
+    private CommitInfoPageDto getPage(final String repo, final int size) {
+        final List<CommitInfoDto> items = IntStream.range(0, size)
+                                                   .mapToObj(i -> CommitInfoDto.of("sha-" + i, "Commit " + i + " of " + repo,
+                                                                                   Instant.parse("2021-09-26T21:55:26Z"),
+                                                                                   "Paulo Carrasqueira <pjcarrasqueira@gmail.com>"))
+                                                   .collect(Collectors.toList());
+        return CommitInfoPageDto.builder().page(1).perPage(size).count(size).total((long) size).totalPages(1).items(items).build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.api.GitHubApiClient;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.smallrye.mutiny.Uni;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@QuarkusTest
+@TestProfile(GitApiServiceCacheIT.AlwaysRevalidateProfile.class)
+public class GitApiServiceCacheIT {
+
+    private static final String ETAG = "W/\"ce206ff\"";
+    private static final String COMMITS = "[{\"sha\":\"ce206ff99e275fd99d57d1e024cc22e3db9ba282\","
+                                          + "\"commit\":{\"message\":\"Add new line\","
+                                          + "\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26Z\"}}}]";
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @Inject
+    GitApiService gitApiService;
+
+    @Test
+    public void getCommitsNotModifiedServedFromCache() throws InterruptedException {
+
+        Mockito.when(gitHubApiClient.getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                        ArgumentMatchers.isNull()))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8)).header(HttpHeaders.ETAG, ETAG).build());
+        Mockito.when(gitHubApiClient.getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                        ArgumentMatchers.eq(ETAG)))
+               .thenAnswer(invocation -> Response.notModified().build());
+        Mockito.when(gitHubApiClient.getCommitsResponseAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                             ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Uni.createFrom().item(() -> Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8)).build()));
+
+        final CommitInfoPageDto firstPage = gitApiService.getCommitList("pcarrasqueira", "commit-viewer-test", 1, 10);
+        final CommitInfoPageDto secondPage = gitApiService.getCommitList("pcarrasqueira", "commit-viewer-test", 1, 10);
+
+        Assertions.assertEquals(firstPage, secondPage);
+        Assertions.assertEquals("ce206ff99e275fd99d57d1e024cc22e3db9ba282", secondPage.getItems().get(0).getSha());
+        Assertions.assertEquals(1, secondPage.getTotal());
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                                             ArgumentMatchers.any(), ArgumentMatchers.eq(ETAG));
+    }
+
+    @Test
+    public void getCommitsTotalFromCountIndex() throws InterruptedException {
+
+        final AtomicBoolean countRequested = new AtomicBoolean();
+        final AtomicBoolean countRequestedBeforePage = new AtomicBoolean();
+
+        //page requests have more pages after them, count request has 4 pages of 1 commit
+        Mockito.when(gitHubApiClient.getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq(1),
+                                                        ArgumentMatchers.any()))
+               .thenAnswer(invocation -> {
+                   countRequestedBeforePage.compareAndSet(false, countRequested.get());
+                   return Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8))
+                                  .link(URI.create("https://api.github.com/repositories/1/commits?page=4&per_page=1"), "last")
+                                  .build();
+               });
+        Mockito.when(gitHubApiClient.getCommitsResponseAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.eq(1), ArgumentMatchers.eq(1),
+                                                             ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Uni.createFrom().item(() -> {
+                   countRequested.set(true);
+                   return Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8))
+                                  .link(URI.create("https://api.github.com/repositories/1/commits?page=4&per_page=1"), "last")
+                                  .build();
+               }));
+
+        final CommitInfoPageDto secondPage = gitApiService.getCommitList("pcarrasqueira", "count-index-test", 2, 1);
+        final CommitInfoPageDto thirdPage = gitApiService.getCommitList("pcarrasqueira", "count-index-test", 3, 1);
+
+        Assertions.assertEquals(4, secondPage.getTotal());
+        Assertions.assertEquals(4, thirdPage.getTotal());
+        Assertions.assertEquals(4, thirdPage.getTotalPages());
+        //one call per page plus a single count call, issued along with the first page
+        Assertions.assertTrue(countRequestedBeforePage.get());
+        Mockito.verify(gitHubApiClient, Mockito.times(2)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("count-index-test"),
+                                                                             ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponseAsync(ArgumentMatchers.any(), ArgumentMatchers.eq("count-index-test"),
+                                                                                  ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    public static class AlwaysRevalidateProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.page-cache.ttl-seconds", "0");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.cli.CloneStrategy;
+import com.challenge.service.cli.GitCommitIndex;
+import com.challenge.service.cli.GitMirrorCache;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+//Commit index of a mirror cloned from a local repository, fetched on every request (fetch-interval-seconds=0)
+@QuarkusTest
+@TestProfile(GitCommitIndexIT.IndexProfile.class)
+public class GitCommitIndexIT {
+
+    private static final File REPOSITORIES = new File("target/test-repositories/commit-index");
+    private static final String USER = "pcarrasqueira";
+    private static final String REPO = "index-test";
+    private static final int DEPTH = 100;
+    private static final int PER_PAGE = 100;
+
+    @Inject
+    GitMirrorCache gitMirrorCache;
+
+    @Inject
+    GitCommitIndex gitCommitIndex;
+
+    private LocalGitRepository repository;
+
+    @BeforeEach
+    public void createRepository() throws Exception {
+        repository = LocalGitRepository.create(REPOSITORIES, USER, REPO);
+        repository.commit(3, "Commit");
+        gitMirrorCache.evict(USER, REPO);
+    }
+
+    @Test
+    public void fastForwardIsAppended() throws Exception {
+        assertIndexed(readPage());
+        final long appends = gitCommitIndex.getAppends();
+        final long builds = gitCommitIndex.getBuilds();
+
+        repository.commit(2, "Pushed");
+        assertIndexed(readPage());
+
+        Assertions.assertEquals(appends + 1, gitCommitIndex.getAppends());
+        Assertions.assertEquals(builds, gitCommitIndex.getBuilds());
+    }
+
+    @Test
+    public void forcePushIsRebuilt() throws Exception {
+        assertIndexed(readPage());
+        final long appends = gitCommitIndex.getAppends();
+        final long builds = gitCommitIndex.getBuilds();
+
+        //HEAD~1 is replaced, the indexed HEAD is not an ancestor of the new one anymore
+        repository.git("reset", "-q", "--hard", "HEAD~2");
+        repository.commit(3, "Rewritten");
+        assertIndexed(readPage());
+
+        Assertions.assertEquals(appends, gitCommitIndex.getAppends());
+        Assertions.assertEquals(builds + 1, gitCommitIndex.getBuilds());
+    }
+
+    @Test
+    public void mergeIsRebuilt() throws Exception {
+        repository.git("checkout", "-q", "-b", "side");
+        repository.commit(2, "Side");
+        repository.git("checkout", "-q", "main");
+        assertIndexed(readPage());
+        final long appends = gitCommitIndex.getAppends();
+        final long builds = gitCommitIndex.getBuilds();
+
+        //the merge sits on top of the indexed HEAD, but git log lists the side commits between older ones
+        repository.commit(1, "Main");
+        repository.merge("side", "Merge side");
+        assertIndexed(readPage());
+
+        Assertions.assertEquals(appends, gitCommitIndex.getAppends());
+        Assertions.assertEquals(builds + 1, gitCommitIndex.getBuilds());
+    }
+
+    @Test
+    public void readsRacingUpdatesSeeWholeIndexes() throws Exception {
+        readPage();
+
+        final AtomicBoolean pushing = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    do {
+                        final CommitInfoPageDto page = readPage();
+                        final List<String> shas = page.getItems().stream().map(CommitInfoDto::getSha).collect(Collectors.toList());
+                        //the whole history of the HEAD the mirror was at, nothing of a half written index
+                        Assertions.assertEquals(repository.lines("log", "--format=%H", shas.get(0)), shas);
+                        Assertions.assertEquals(shas.size(), page.getTotal().intValue());
+                        reads++;
+                    } while (pushing.get());
+                    return reads;
+                }));
+            }
+
+            //pushes of 1 to 3 commits, appended while readers keep fetching and reading the mirror
+            for (int push = 1; push <= 10; push++) {
+                repository.commit(push % 3 + 1, "Push " + push);
+                Thread.sleep(20);
+            }
+            pushing.set(false);
+            for (final Future<Integer> reader : readers) {
+                Assertions.assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertIndexed(readPage());
+    }
+
+    private CommitInfoPageDto readPage() throws Exception {
+        return gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH,
+                                         mirrorFolder -> gitCommitIndex.getPage(mirrorFolder, 1, PER_PAGE).orElseThrow());
+    }
+
+    private void assertIndexed(final CommitInfoPageDto page) throws Exception {
+        final List<String> expected = repository.lines("log", "--format=%H", "HEAD");
+        Assertions.assertEquals(expected, page.getItems().stream().map(CommitInfoDto::getSha).collect(Collectors.toList()));
+        Assertions.assertEquals(expected.size(), page.getTotal().intValue());
+    }
+
+    public static class IndexProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.github-url", LocalGitRepository.url(REPOSITORIES),
+                          "commit-viewer.mirror-cache.path", new File("target/test-mirrors/commit-index").getAbsolutePath());
+        }
+    }
+}
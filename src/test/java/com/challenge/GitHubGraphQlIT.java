@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.service.api.GitHubApiClient;
+import com.challenge.service.cli.GitCliService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.mockito.InjectMock;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+@QuarkusTest
+@TestProfile(GitHubGraphQlIT.GraphQlProfile.class)
+public class GitHubGraphQlIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}";
+    private static final int TOTAL_COMMITS = 25;
+    private static final String TOKEN = "graphql-test-token";
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void getCommitsPageAndTotalInOneCall() {
+
+        final double calls = getGraphQlCalls();
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL + "?page=1&per_page=10", "pcarrasqueira", "graphql-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(10))
+            .body("total", is(TOTAL_COMMITS))
+            .body("total_pages", is(3))
+            .body("items[0].sha", is(GraphQlStub.sha(0)))
+            .body("items[0].author", is("Paulo Carrasqueira <pjcarrasqueira@gmail.com>"));
+
+        //HEAD known from the first page, the last one starts from its history cursor
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL + "?page=3&per_page=10", "pcarrasqueira", "graphql-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(5))
+            .body("items[0].sha", is(GraphQlStub.sha(20)));
+
+        //no count request, no REST call at all
+        Assertions.assertEquals(calls + 2, getGraphQlCalls());
+        Mockito.verifyNoInteractions(gitHubApiClient, gitCliService);
+    }
+
+    @Test
+    public void getCommitsUnknownHead() {
+
+        final double calls = getGraphQlCalls();
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL + "?page=2&per_page=10", "pcarrasqueira", "graphql-head-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(10))
+            .body("total", is(TOTAL_COMMITS))
+            .body("items[0].sha", is(GraphQlStub.sha(10)));
+
+        //first call only asks for the HEAD
+        Assertions.assertEquals(calls + 2, getGraphQlCalls());
+    }
+
+    @Test
+    public void getCursorPagesResumeHistory() {
+
+        final double calls = getGraphQlCalls();
+        final String next = given()
+            .accept(APPLICATION_JSON)
+            .get(RESOURCE_URL + "/cursor?limit=10", "pcarrasqueira", "graphql-cursor-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(10))
+            .body("items[0].sha", is(GraphQlStub.sha(0)))
+            .extract()
+            .path("next");
+
+        //the history of the first page HEAD is resumed after the 10 commits returned, whatever the position
+        final String last = given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", next)
+            .get(RESOURCE_URL + "/cursor?limit=10", "pcarrasqueira", "graphql-cursor-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(10))
+            .body("items[0].sha", is(GraphQlStub.sha(10)))
+            .extract()
+            .path("next");
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("after", last)
+            .get(RESOURCE_URL + "/cursor?limit=10", "pcarrasqueira", "graphql-cursor-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("count", is(5))
+            .body("items[0].sha", is(GraphQlStub.sha(20)))
+            .body("$", not(hasKey("next")));
+
+        Assertions.assertEquals(calls + 3, getGraphQlCalls());
+        Mockito.verifyNoInteractions(gitHubApiClient, gitCliService);
+    }
+
+    @Test
+    public void getCommitsRepositoryNotFound() {
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", GraphQlStub.MISSING_REPO)
+            .then()
+            .statusCode(NOT_FOUND.getStatusCode());
+
+        Mockito.verifyNoInteractions(gitCliService);
+    }
+
+    private double getGraphQlCalls() {
+        return Optional.ofNullable(meterRegistry.find("commit_viewer.github.requests").tag("call", "graphql").timer()).map(Timer::count).orElse(0L);
+    }
+
+    public static class GraphQlProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.api.backend", "graphql",
+                          "commit-viewer.graphql.token", TOKEN,
+                          "commit-viewer.page-cache.enabled", "false");
+        }
+
+        @Override
+        public List<TestResourceEntry> testResources() {
+            return List.of(new TestResourceEntry(GraphQlStub.class));
+        }
+    }
+
+    //GitHub GraphQL API answering the history query for a default branch of TOTAL_COMMITS commits, each one the parent of the previous one
+    public static class GraphQlStub implements QuarkusTestResourceLifecycleManager {
+
+        static final String MISSING_REPO = "graphql-missing-test";
+
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private HttpServer server;
+
+        static String sha(final int position) {
+            return String.format("%040x", TOTAL_COMMITS - position);
+        }
+
+        @Override
+        public Map<String, String> start() {
+            try {
+                server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            server.createContext("/graphql", this::answer);
+            server.start();
+            return Map.of("github-graphql/mp-rest/url", "http://localhost:" + server.getAddress().getPort());
+        }
+
+        @Override
+        public void stop() {
+            server.stop(0);
+        }
+
+        private void answer(final HttpExchange exchange) throws IOException {
+            //GitHub answers 401 to queries without a token
+            if (!("bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst(HttpHeaders.AUTHORIZATION))) {
+                exchange.sendResponseHeaders(UNAUTHORIZED.getStatusCode(), -1);
+                exchange.close();
+                return;
+            }
+            final JsonNode variables = objectMapper.readTree(exchange.getRequestBody()).path("variables");
+            final String body;
+            if (MISSING_REPO.equals(variables.path("name").asText())) {
+                body = "{\"data\":{\"repository\":null},\"errors\":[{\"type\":\"NOT_FOUND\",\"message\":\"Could not resolve to a Repository\"}]}";
+            } else {
+                final JsonNode after = variables.path("after");
+                final int offset = after.isMissingNode() || after.isNull() ? 0 : Integer.parseInt(after.asText().split(" ")[1]) + 1;
+                final int end = Math.min(offset + variables.path("first").asInt(), TOTAL_COMMITS);
+                final StringBuilder nodes = new StringBuilder();
+                for (int position = offset; position < end; position++) {
+                    nodes.append(nodes.length() == 0 ? "" : ",")
+                         .append("{\"oid\":\"").append(sha(position)).append("\",\"message\":\"Commit ").append(position)
+                         .append("\",\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26+01:00\"}")
+                         .append(",\"parents\":{\"nodes\":[").append(position + 1 < TOTAL_COMMITS ? "{\"oid\":\"" + sha(position + 1) + "\"}" : "").append("]}}");
+                }
+                final String target = "{\"oid\":\"" + sha(0) + "\",\"history\":{\"totalCount\":" + TOTAL_COMMITS + ",\"nodes\":[" + nodes + "],"
+                                      + "\"pageInfo\":{\"hasNextPage\":" + (end < TOTAL_COMMITS) + "}}}";
+                //cursor pages after the first one ask for the history of the cursor HEAD
+                body = "{\"data\":{\"repository\":" + (variables.has("oid") ? "{\"object\":" + target + "}" : "{\"defaultBranchRef\":{\"target\":" + target + "}}")
+                       + "}}";
+            }
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", APPLICATION_JSON);
+            exchange.sendResponseHeaders(OK.getStatusCode(), bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+    }
+}
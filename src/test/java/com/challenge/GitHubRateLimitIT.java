@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.api.GitHubApiClient;
+import com.challenge.service.api.GitHubRateLimit;
+import com.challenge.service.cli.GitCliService;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.mockito.InjectMock;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.hamcrest.Matchers.is;
+
+@QuarkusTest
+@TestProfile(GitHubRateLimitIT.RateLimitProfile.class)
+public class GitHubRateLimitIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}";
+
+    //a window is only replaced by a later one, every window of the tests resets after the previous one
+    private static long lastReset = Instant.now().getEpochSecond() + 3600;
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    @AfterEach
+    public void resetWindow() {
+        gitHubRateLimit.update(OK.getStatusCode(), headers("5000", nextReset(), null));
+        final MultivaluedMap<String, String> graphQlHeaders = headers("5000", nextReset(), null);
+        graphQlHeaders.putSingle(GitHubRateLimit.RESOURCE_HEADER, GitHubRateLimit.GRAPHQL);
+        gitHubRateLimit.update(OK.getStatusCode(), graphQlHeaders);
+    }
+
+    @Test
+    public void getCommitsRateLimitedUsesCli() throws IOException, InterruptedException {
+
+        Mockito.when(gitCliService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(
+            CommitInfoPageDto.builder()
+                             .page(1)
+                             .perPage(10)
+                             .count(1)
+                             .total(1L)
+                             .totalPages(1)
+                             .items(List.of(CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba283",
+                                                             "cli",
+                                                             Instant.parse("2021-09-26T21:55:26Z"),
+                                                             "Paulo Carrasqueira <pjcarrasqueira@gmail.com>")))
+                             .build());
+        gitHubRateLimit.update(OK.getStatusCode(), headers("3", nextReset(), null));
+
+        given()
+            .accept(APPLICATION_JSON)
+            .contentType(APPLICATION_JSON)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("items[0].message", is("cli"));
+
+        //no GitHub call nor retry, straight to the git CLI
+        Mockito.verifyNoInteractions(gitHubApiClient);
+        Mockito.verify(gitCliService, Mockito.times(1)).getCommitList(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                                      ArgumentMatchers.any());
+    }
+
+    @Test
+    public void rateLimitWindow() {
+
+        final String reset = nextReset();
+        gitHubRateLimit.update(OK.getStatusCode(), headers("50", reset, null));
+        Assertions.assertFalse(gitHubRateLimit.isExhausted());
+        Assertions.assertFalse(gitHubRateLimit.allowsBackgroundWork());
+
+        gitHubRateLimit.update(OK.getStatusCode(), headers("4", reset, null));
+        Assertions.assertTrue(gitHubRateLimit.isExhausted());
+
+        //late response of an earlier request of the same window
+        gitHubRateLimit.update(OK.getStatusCode(), headers("40", reset, null));
+        Assertions.assertTrue(gitHubRateLimit.isExhausted());
+        Assertions.assertEquals(4, gitHubRateLimit.getRemaining());
+
+        gitHubRateLimit.update(OK.getStatusCode(), headers("5000", nextReset(), null));
+        Assertions.assertFalse(gitHubRateLimit.isExhausted());
+        Assertions.assertTrue(gitHubRateLimit.allowsBackgroundWork());
+
+        //secondary rate limit
+        gitHubRateLimit.update(429, headers(null, null, "60"));
+        Assertions.assertTrue(gitHubRateLimit.isExhausted());
+    }
+
+    @Test
+    public void resourcesHaveOwnWindows() {
+
+        gitHubRateLimit.update(OK.getStatusCode(), headers("5000", nextReset(), null));
+        final MultivaluedMap<String, String> graphQlHeaders = headers("4", nextReset(), null);
+        graphQlHeaders.putSingle(GitHubRateLimit.RESOURCE_HEADER, GitHubRateLimit.GRAPHQL);
+        gitHubRateLimit.update(OK.getStatusCode(), graphQlHeaders);
+        Assertions.assertTrue(gitHubRateLimit.isExhausted(GitHubRateLimit.GRAPHQL));
+        Assertions.assertFalse(gitHubRateLimit.isExhausted());
+        Assertions.assertEquals(5000, gitHubRateLimit.getRemaining());
+
+        final MultivaluedMap<String, String> coreHeaders = headers("3", nextReset(), null);
+        coreHeaders.putSingle(GitHubRateLimit.RESOURCE_HEADER, GitHubRateLimit.CORE);
+        gitHubRateLimit.update(OK.getStatusCode(), coreHeaders);
+        Assertions.assertTrue(gitHubRateLimit.isExhausted());
+        Assertions.assertEquals(3, gitHubRateLimit.getRemaining());
+    }
+
+    private MultivaluedMap<String, String> headers(final String remaining, final String reset, final String retryAfter) {
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        if (remaining != null) {
+            headers.putSingle(GitHubRateLimit.REMAINING_HEADER, remaining);
+            headers.putSingle(GitHubRateLimit.RESET_HEADER, reset);
+        }
+        if (retryAfter != null) {
+            headers.putSingle(GitHubRateLimit.RETRY_AFTER_HEADER, retryAfter);
+        }
+        return headers;
+    }
+
+    private static String nextReset() {
+        lastReset += 3600;
+        return String.valueOf(lastReset);
+    }
+
+    public static class RateLimitProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.rate-limit.reserve", "5");
+        }
+    }
+}
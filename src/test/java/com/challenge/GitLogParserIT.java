@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.service.cli.GitLogParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+public class GitLogParserIT {
+
+    private static final String AUTHOR = "Paulo Carrasqueira <pjcarrasqueira@gmail.com>";
+
+    private final GitLogParser gitLogParser = new GitLogParser();
+
+    @Test
+    public void parseMultiLineMessages() throws IOException {
+        final List<CommitInfoDto> commits = gitLogParser.parse(
+            logOutput("ce206ff99e275fd99d57d1e024cc22e3db9ba282\u001f1632693326\u001f" + AUTHOR + "\u001fAdd new line\n\nAdded new line on readme\n\0"
+                      + "b56845e4fc80a8eec0c873708f72e9a55b6d2668\u001f1632693283\u001f" + AUTHOR + "\u001fSecondo commit\n\0"));
+
+        Assertions.assertEquals(2, commits.size());
+        Assertions.assertEquals(CommitInfoDto.of("ce206ff99e275fd99d57d1e024cc22e3db9ba282",
+                                                 "Add new line\n\nAdded new line on readme",
+                                                 Instant.parse("2021-09-26T21:55:26Z"),
+                                                 AUTHOR), commits.get(0));
+        Assertions.assertEquals("Secondo commit", commits.get(1).getMessage());
+        Assertions.assertEquals(Instant.parse("2021-09-26T21:54:43Z"), commits.get(1).getDate());
+    }
+
+    @Test
+    public void parseSeparatorsInsideMessage() throws IOException {
+        final List<CommitInfoDto> commits = gitLogParser.parse(
+            logOutput("7d54a55f60082c42dbdb8e586cbcb15023971922\u001f1632693229\u001f" + AUTHOR + "\u001fInitial ||| commit\u001fwith separator"));
+
+        Assertions.assertEquals(1, commits.size());
+        Assertions.assertEquals("Initial ||| commit\u001fwith separator", commits.get(0).getMessage());
+        Assertions.assertEquals(AUTHOR, commits.get(0).getAuthor());
+    }
+
+    @Test
+    public void parseEmptyOutput() throws IOException {
+        Assertions.assertTrue(gitLogParser.parse(logOutput("")).isEmpty());
+    }
+
+    @Test
+    public void parseInvalidOutput() {
+        Assertions.assertThrows(CommitViewerException.class,
+                                () -> gitLogParser.parse(logOutput("fatal: your current branch does not have any commits yet\n")));
+    }
+
+    private InputStream logOutput(final String output) {
+        return new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+}
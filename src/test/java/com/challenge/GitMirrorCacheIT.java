@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.cli.CloneStrategy;
+import com.challenge.service.cli.GitCliService;
+import com.challenge.service.cli.GitCommitIndex;
+import com.challenge.service.cli.GitMirrorCache;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@QuarkusTest
+@TestProfile(GitMirrorCacheIT.MirrorProfile.class)
+public class GitMirrorCacheIT {
+
+    private static final File REPOSITORIES = new File("target/test-repositories/mirror-cache");
+    private static final String USER = "pcarrasqueira";
+    private static final String REPO = "mirror-test";
+    private static final int DEPTH = 100;
+
+    @Inject
+    GitMirrorCache gitMirrorCache;
+
+    @Inject
+    GitCommitIndex gitCommitIndex;
+
+    @Inject
+    GitCliService gitCliService;
+
+    private LocalGitRepository repository;
+
+    @BeforeEach
+    public void createRepository() throws Exception {
+        repository = LocalGitRepository.create(REPOSITORIES, USER, REPO);
+        repository.commit(3, "Commit");
+        gitMirrorCache.evict(USER, REPO);
+    }
+
+    @Test
+    public void readersOfSameRepoOverlap() throws Exception {
+        gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH, mirrorFolder -> null);
+        final long updates = gitMirrorCache.getUpdates();
+
+        //each reader waits inside the mirror for the other one to be there too
+        final CountDownLatch bothReading = new CountDownLatch(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Future<Boolean>> readers = List.of(executor.submit(() -> read(bothReading)), executor.submit(() -> read(bothReading)));
+            for (final Future<Boolean> reader : readers) {
+                Assertions.assertTrue(reader.get(10, TimeUnit.SECONDS), "readers of the same mirror ran one after the other");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        //fetched within fetch-interval-seconds, the readers didn't fetch it again
+        Assertions.assertEquals(updates, gitMirrorCache.getUpdates());
+    }
+
+    @Test
+    public void dueFetchExcludesReaders() throws Exception {
+        gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH, mirrorFolder -> null);
+        final String pushed = repository.commit(1, "Pushed");
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final Future<?> reader = executor.submit(() -> gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH, mirrorFolder -> {
+                reading.countDown();
+                release.await();
+                events.add("first reader done");
+                return null;
+            }));
+            Assertions.assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+            final Future<?> refresh = executor.submit(() -> {
+                gitMirrorCache.refresh(USER, REPO, CloneStrategy.TREELESS, DEPTH);
+                return null;
+            });
+            //the fetch waits for the reader, a reader coming after the fetch waits for it
+            Thread.sleep(500);
+            Assertions.assertFalse(refresh.isDone());
+            final Future<String> laterReader = executor.submit(() -> gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH,
+                                                                                                mirrorFolder -> {
+                events.add("later reader");
+                return repository.git("--git-dir", mirrorFolder.getAbsolutePath(), "rev-parse", "HEAD").trim();
+            }));
+            Thread.sleep(500);
+            Assertions.assertFalse(laterReader.isDone());
+
+            release.countDown();
+            reader.get(10, TimeUnit.SECONDS);
+            refresh.get(10, TimeUnit.SECONDS);
+            //the later reader saw the fetched commit, so it ran after the fetch
+            Assertions.assertEquals(pushed, laterReader.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(List.of("first reader done", "later reader"), events);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void exportDoesNotHoldMirrorBack() throws Exception {
+        final List<String> history = repository.lines("log", "--format=%H", "HEAD");
+
+        //the export stops at its first commit until released, like a client that stopped reading
+        final List<String> exported = new CopyOnWriteArrayList<>();
+        final CountDownLatch exporting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Long> export = executor.submit(() -> gitCliService.exportCommits(USER, REPO, commit -> {
+                exported.add(commit.getSha());
+                exporting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            Assertions.assertTrue(exporting.await(10, TimeUnit.SECONDS));
+
+            //the fetch and the page don't wait for the export
+            final String pushed = repository.commit(1, "Pushed");
+            final Future<CommitInfoPageDto> page = executor.submit(() -> {
+                gitMirrorCache.refresh(USER, REPO, CloneStrategy.TREELESS, DEPTH);
+                return gitCliService.getCommitList(USER, REPO, 1, 10);
+            });
+            Assertions.assertEquals(pushed, page.get(10, TimeUnit.SECONDS).getItems().get(0).getSha());
+            Assertions.assertFalse(export.isDone());
+
+            //the export keeps walking the HEAD it started from
+            release.countDown();
+            Assertions.assertEquals(history.size(), export.get(10, TimeUnit.SECONDS).intValue());
+            Assertions.assertEquals(history, exported);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedFetchDoesNotWaitForExport() throws Exception {
+        final List<String> history = repository.lines("log", "--format=%H", "HEAD");
+        final File upstream = repository.getFolder();
+        final File moved = new File(upstream.getParentFile(), REPO + "-moved");
+
+        final CountDownLatch exporting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Long> export = executor.submit(() -> gitCliService.exportCommits(USER, REPO, commit -> {
+                exporting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            Assertions.assertTrue(exporting.await(10, TimeUnit.SECONDS));
+
+            //upstream is gone, the pinned mirror is read as it is instead of waiting for the export to clone it again
+            FileUtils.deleteDirectory(moved);
+            Assertions.assertTrue(upstream.renameTo(moved));
+            final Future<CommitInfoPageDto> page = executor.submit(() -> {
+                gitMirrorCache.refresh(USER, REPO, CloneStrategy.TREELESS, DEPTH);
+                return gitCliService.getCommitList(USER, REPO, 1, 10);
+            });
+            Assertions.assertEquals(history.size(), page.get(10, TimeUnit.SECONDS).getItems().size());
+            Assertions.assertTrue(gitMirrorCache.getMirrorFolder(USER, REPO).exists());
+
+            //the export deletes the mirror once done, the next request clones it again
+            release.countDown();
+            Assertions.assertEquals(history.size(), export.get(10, TimeUnit.SECONDS).intValue());
+            Assertions.assertFalse(gitMirrorCache.getMirrorFolder(USER, REPO).exists());
+            Assertions.assertTrue(moved.renameTo(upstream));
+            Assertions.assertEquals(history.size(), gitCliService.getCommitList(USER, REPO, 1, 10).getItems().size());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            if (moved.exists()) {
+                moved.renameTo(upstream);
+            }
+        }
+    }
+
+    @Test
+    public void mirrorIsClonedWithStrategyOfFirstRequest() throws Exception {
+        repository.commit(2, "More");
+
+        Assertions.assertEquals("2", readMirror(CloneStrategy.SHALLOW, 2, "rev-list", "--count", "HEAD"));
+        Assertions.assertTrue(readMirror(CloneStrategy.SHALLOW, 2, "config", "--list").contains("remote.origin.partialclonefilter=tree:0"));
+
+        gitMirrorCache.evict(USER, REPO);
+        Assertions.assertEquals("5", readMirror(CloneStrategy.TREELESS, DEPTH, "rev-list", "--count", "HEAD"));
+        Assertions.assertTrue(readMirror(CloneStrategy.TREELESS, DEPTH, "config", "--list").contains("remote.origin.partialclonefilter=tree:0"));
+        Assertions.assertFalse(isShallow());
+
+        gitMirrorCache.evict(USER, REPO);
+        Assertions.assertEquals("5", readMirror(CloneStrategy.FULL, DEPTH, "rev-list", "--count", "HEAD"));
+        Assertions.assertFalse(readMirror(CloneStrategy.FULL, DEPTH, "config", "--list").contains("partialclonefilter"));
+        Assertions.assertFalse(isShallow());
+    }
+
+    @Test
+    public void shallowMirrorIsDeepenedForDeeperPages() throws Exception {
+        repository.commit(2, "More");
+
+        Assertions.assertEquals("2", readMirror(CloneStrategy.SHALLOW, 2, "rev-list", "--count", "HEAD"));
+        Assertions.assertEquals("4", readMirror(CloneStrategy.SHALLOW, 4, "rev-list", "--count", "HEAD"));
+        Assertions.assertTrue(isShallow());
+        //a shallower request reads the mirror as it is
+        Assertions.assertEquals("4", readMirror(CloneStrategy.SHALLOW, 2, "rev-list", "--count", "HEAD"));
+    }
+
+    @Test
+    public void shallowFirstCloneGetsWholeHistoryForOtherStrategies() throws Exception {
+        repository.commit(2, "More");
+
+        final CommitInfoPageDto shallowPage = gitMirrorCache.withMirror(USER, REPO, CloneStrategy.SHALLOW, 2,
+                                                                        mirrorFolder -> gitCommitIndex.getPage(mirrorFolder, 1, 10).orElseThrow());
+        Assertions.assertNull(shallowPage.getTotal());
+
+        final CommitInfoPageDto page = gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, 2,
+                                                                 mirrorFolder -> gitCommitIndex.getPage(mirrorFolder, 1, 10).orElseThrow());
+        Assertions.assertFalse(isShallow());
+        Assertions.assertEquals(5, page.getTotal());
+        Assertions.assertEquals(5, page.getCount());
+    }
+
+    private String readMirror(final CloneStrategy cloneStrategy, final int depth, final String... args) throws Exception {
+        return gitMirrorCache.withMirror(USER, REPO, cloneStrategy, depth, mirrorFolder -> {
+            final List<String> command = new ArrayList<>(List.of("--git-dir", mirrorFolder.getAbsolutePath()));
+            command.addAll(List.of(args));
+            return repository.git(command.toArray(new String[0])).trim();
+        });
+    }
+
+    private boolean isShallow() {
+        return new File(gitMirrorCache.getMirrorFolder(USER, REPO), "shallow").exists();
+    }
+
+    private boolean read(final CountDownLatch bothReading) throws Exception {
+        return gitMirrorCache.withMirror(USER, REPO, CloneStrategy.TREELESS, DEPTH, mirrorFolder -> {
+            bothReading.countDown();
+            return bothReading.await(5, TimeUnit.SECONDS);
+        });
+    }
+
+    public static class MirrorProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.github-url", LocalGitRepository.url(REPOSITORIES),
+                          "commit-viewer.mirror-cache.path", new File("target/test-mirrors/mirror-cache").getAbsolutePath(),
+                          "commit-viewer.mirror-cache.fetch-interval-seconds", "600");
+        }
+    }
+}
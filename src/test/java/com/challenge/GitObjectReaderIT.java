@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.service.cli.GitLogParser;
+import com.challenge.service.cli.GitObjectReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class GitObjectReaderIT {
+
+    @TempDir
+    File folder;
+
+    private final GitObjectReader gitObjectReader = new GitObjectReader();
+    private final GitLogParser gitLogParser = new GitLogParser();
+
+    @BeforeEach
+    public void createRepository() throws IOException, InterruptedException {
+        git("init", "-q", "-b", "main");
+        commit("Initial commit", "1632693229");
+        commit("Secondo commit ✓", "1632693283");
+        commit("Add new line\n\nAdded new line on readme\n", "1632693326");
+    }
+
+    @AfterEach
+    public void closeRepository() {
+        gitObjectReader.close(folder);
+    }
+
+    @Test
+    public void readCommitsAsGitLog() throws IOException, InterruptedException {
+        git("checkout", "-q", "-b", "feature", "HEAD~1");
+        commit("Feature commit", "1632693400");
+        git("checkout", "-q", "main");
+        git("merge", "-q", "--no-ff", "-m", "Merge feature", "feature");
+
+        final List<CommitInfoDto> gitLog = gitLogParser.parse(new ByteArrayInputStream(git("log", "-z", GitLogParser.FORMAT)));
+        Assertions.assertEquals(5, gitLog.size());
+        Assertions.assertEquals(gitLog, gitObjectReader.getCommits(folder, null, 0, 10));
+        Assertions.assertEquals(gitLog.subList(2, 4), gitObjectReader.getCommits(folder, null, 2, 2));
+        //cursor pages start from a commit and skip it
+        Assertions.assertEquals(gitLog.subList(3, 5), gitObjectReader.getCommits(folder, gitLog.get(2).getSha(), 1, 10));
+        Assertions.assertEquals(5, gitObjectReader.count(folder));
+
+        final List<CommitInfoDto> exported = new ArrayList<>();
+        Assertions.assertEquals(5, gitObjectReader.exportCommits(folder, null, exported::add));
+        Assertions.assertEquals(gitLog, exported);
+    }
+
+    @Test
+    public void readNewCommitsOldestFirst() throws IOException, InterruptedException {
+        final String indexedSha = head();
+        commit("Fourth commit", "1632693500");
+        commit("Fifth commit", "1632693600");
+
+        final List<CommitInfoDto> appended = new ArrayList<>();
+        gitObjectReader.exportCommitsReverse(folder, head(), indexedSha, appended::add);
+        Assertions.assertEquals(List.of("Fourth commit", "Fifth commit"), List.of(appended.get(0).getMessage(), appended.get(1).getMessage()));
+        Assertions.assertTrue(gitObjectReader.isLinearOnTop(folder, indexedSha, head()));
+
+        //a merge changes the order of older commits, the index can't be appended
+        git("checkout", "-q", "-b", "feature", indexedSha);
+        commit("Feature commit", "1632693550");
+        git("checkout", "-q", "main");
+        git("merge", "-q", "--no-ff", "-m", "Merge feature", "feature");
+        Assertions.assertFalse(gitObjectReader.isLinearOnTop(folder, indexedSha, head()));
+    }
+
+    @Test
+    public void verifyCommits() throws IOException, InterruptedException {
+        Assertions.assertEquals(head(), gitObjectReader.resolveHead(folder).orElseThrow());
+        Assertions.assertTrue(gitObjectReader.isCommit(folder, head()));
+        Assertions.assertFalse(gitObjectReader.isCommit(folder, "0123456789012345678901234567890123456789"));
+    }
+
+    private String head() throws IOException, InterruptedException {
+        return new String(git("rev-parse", "HEAD"), StandardCharsets.UTF_8).trim();
+    }
+
+    private void commit(final String message, final String date) throws IOException, InterruptedException {
+        final ProcessBuilder processBuilder = new ProcessBuilder("git", "-c", "user.name=Paulo Carrasqueira", "-c", "user.email=pjcarrasqueira@gmail.com",
+                                                                 "commit", "-q", "--allow-empty", "-m", message);
+        final Map<String, String> environment = processBuilder.environment();
+        environment.put("GIT_AUTHOR_DATE", "@" + date + " +0100");
+        environment.put("GIT_COMMITTER_DATE", "@" + date + " +0100");
+        run(processBuilder);
+    }
+
+    private byte[] git(final String... args) throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=Paulo Carrasqueira", "-c", "user.email=pjcarrasqueira@gmail.com"));
+        command.addAll(List.of(args));
+        return run(new ProcessBuilder(command));
+    }
+
+    private byte[] run(final ProcessBuilder processBuilder) throws IOException, InterruptedException {
+        final Process process = processBuilder.directory(folder).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        final byte[] output = process.getInputStream().readAllBytes();
+        Assertions.assertEquals(0, process.waitFor());
+        return output;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.common.GitProcessExecutor;
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@QuarkusTest
+public class GitProcessExecutorIT {
+
+    private static final File WORKING_FOLDER = new File(System.getProperty("java.io.tmpdir"));
+    private static final List<String> SLEEP = List.of("sleep", "30");
+
+    @Inject
+    GitProcessExecutor gitProcessExecutor;
+
+    @Test
+    public void processKilledAfterTimeout() {
+
+        final long start = System.nanoTime();
+        final CommitViewerException exception = Assertions.assertThrows(CommitViewerException.class,
+            () -> gitProcessExecutor.run(WORKING_FOLDER, SLEEP, true, 1, IOUtils::toByteArray));
+
+        Assertions.assertEquals(ErrorCodeImpl.TIME_OUT, exception.getErrorCode());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        Assertions.assertEquals(0, gitProcessExecutor.getRunning());
+    }
+
+    @Test
+    public void processKilledWhenCallerInterrupted() throws Exception {
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            //reading the output of the process blocks on its pipe, only killing the process ends it
+            final Future<?> call = executor.submit(() -> {
+                try {
+                    gitProcessExecutor.run(WORKING_FOLDER, SLEEP, true, IOUtils::toByteArray);
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+            while (gitProcessExecutor.getRunning() == 0) {
+                Thread.sleep(10);
+            }
+            call.cancel(true);
+
+            executor.shutdown();
+            Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(failure.get() instanceof InterruptedException);
+            Assertions.assertEquals(0, gitProcessExecutor.getRunning());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+//Git repository on disk the CLI backend clones from, through a file:// commit-viewer.github-url pointing at its root folder
+public final class LocalGitRepository {
+
+    private final File folder;
+    private long date = 1632693229;
+
+    private LocalGitRepository(final File repoFolder) {
+        this.folder = repoFolder;
+    }
+
+    //Empty repository at root/user/repo, replacing any left by a previous run
+    public static LocalGitRepository create(final File root, final String user, final String repo) throws IOException, InterruptedException {
+        final File repoFolder = new File(new File(root, user), repo);
+        FileUtils.deleteDirectory(repoFolder);
+        Files.createDirectories(repoFolder.toPath());
+        final LocalGitRepository repository = new LocalGitRepository(repoFolder);
+        repository.git("init", "-q", "-b", "main");
+        //lets partial clones (treeless, blobless) filter, as GitHub does
+        repository.git("config", "uploadpack.allowFilter", "true");
+        return repository;
+    }
+
+    //commit-viewer.github-url serving the repositories created under root
+    public static String url(final File root) {
+        return "file://" + root.getAbsolutePath() + "/";
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    //Empty commits, a minute apart so git log orders them as they were made. Returns the sha of the last one
+    public String commit(final int count, final String message) throws IOException, InterruptedException {
+        for (int i = 1; i <= count; i++) {
+            dated("commit", "-q", "--allow-empty", "-m", message + " " + i);
+        }
+        return head();
+    }
+
+    //Merge commit of branch into the current one, a minute after the last commit. Returns its sha
+    public String merge(final String branch, final String message) throws IOException, InterruptedException {
+        dated("merge", "-q", "--no-ff", "-m", message, branch);
+        return head();
+    }
+
+    public String head() throws IOException, InterruptedException {
+        return git("rev-parse", "HEAD").trim();
+    }
+
+    //Output of git log (or any log-like command), one line per entry
+    public List<String> lines(final String... args) throws IOException, InterruptedException {
+        final String output = git(args).trim();
+        return output.isEmpty() ? List.of() : Arrays.asList(output.split("\n"));
+    }
+
+    public String git(final String... args) throws IOException, InterruptedException {
+        return run(new ProcessBuilder(command(args)));
+    }
+
+    private void dated(final String... args) throws IOException, InterruptedException {
+        date += 60;
+        final ProcessBuilder processBuilder = new ProcessBuilder(command(args));
+        final Map<String, String> environment = processBuilder.environment();
+        environment.put("GIT_AUTHOR_DATE", "@" + date + " +0100");
+        environment.put("GIT_COMMITTER_DATE", "@" + date + " +0100");
+        run(processBuilder);
+    }
+
+    private List<String> command(final String... args) {
+        final List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=Paulo Carrasqueira", "-c", "user.email=pjcarrasqueira@gmail.com",
+                                                             "-c", "commit.gpgsign=false"));
+        command.addAll(List.of(args));
+        return command;
+    }
+
+    private String run(final ProcessBuilder processBuilder) throws IOException, InterruptedException {
+        final Process process = processBuilder.directory(folder).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        final byte[] output = process.getInputStream().readAllBytes();
+        Assertions.assertEquals(0, process.waitFor(), "git " + processBuilder.command());
+        return new String(output, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.cli.GitCliService;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectMock;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.hamcrest.Matchers.containsString;
+
+@QuarkusTest
+public class MetricsIT {
+
+    @InjectMock
+    GitApiService gitApiService;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Test
+    public void fallbackIsCountedPerReason() throws IOException, InterruptedException {
+
+        Mockito.when(gitApiService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenThrow(new CommitViewerException(ErrorCodeImpl.UNKNOWN_ERROR, "API"));
+        Mockito.when(gitCliService.getCommitList(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+               .thenReturn(CommitInfoPageDto.builder().page(1).perPage(10).count(0).total(0L).totalPages(0).items(List.of()).build());
+
+        given()
+            .accept(APPLICATION_JSON)
+            .get("/commit-viewer/{user}/{repo}", "pcarrasqueira", "commit-viewer-metrics")
+            .then()
+            .statusCode(OK.getStatusCode());
+
+        given()
+            .get("/q/metrics")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body(containsString("commit_viewer_failures_total{method=\"api\",outcome=\"error\",reason=\"unknown_error\",}"),
+                  containsString("commit_viewer_fallbacks_total{outcome=\"success\",reason=\"unknown_error\",}"),
+                  containsString("commit_viewer_page_cache_size"),
+                  containsString("commit_viewer_coalescing_total{flight=\"github_page\",outcome=\"executed\",}"));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import io.quarkus.test.junit.NativeImageTest;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.hamcrest.Matchers.is;
+
+//run with "mvn verify -Pnative". Mocks aren't available in the native executable, these requests fail before reaching GitHub
+@NativeImageTest
+public class NativeCommitViewerResourceIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/{user}/{repo}";
+
+    @Test
+    public void getCommitsConstraintViolationException() {
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("per_page", 1000)
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.BAD_REQUEST.getHttpStatusCode())
+            .body("code", is(ErrorCodeImpl.BAD_REQUEST.getCode()),
+                  "message", is(ErrorCodeImpl.BAD_REQUEST.getMessage()),
+                  "description", is("Constraint violation(s) occurred during method validation"));
+    }
+
+    @Test
+    public void getCommitsUnknownCloneStrategy() {
+
+        given()
+            .accept(APPLICATION_JSON)
+            .queryParam("clone_strategy", "sparse")
+            .get(RESOURCE_URL, "pcarrasqueira", "commit-viewer-test")
+            .then()
+            .statusCode(ErrorCodeImpl.BAD_REQUEST.getHttpStatusCode())
+            .body("code", is(ErrorCodeImpl.BAD_REQUEST.getCode()),
+                  "message", is(ErrorCodeImpl.BAD_REQUEST.getMessage()),
+                  "description", is("Unknown clone strategy : sparse"));
+    }
+}
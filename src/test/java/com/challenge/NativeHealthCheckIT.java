@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import io.quarkus.test.junit.NativeImageTest;
+
+//same checks against the native executable, run with "mvn verify -Pnative"
+@NativeImageTest
+public class NativeHealthCheckIT extends HealthCheckIT {
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.web.api.CommitViewerResource;
+import io.quarkus.test.junit.NativeImageTest;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+
+//run with "mvn verify -Pnative". Push events are read into the nested classes of GitHubPushEventDto (repository, owner),
+//only reachable by reflection in the native executable
+@NativeImageTest
+@TestProfile(RepositorySyncIT.WebhookProfile.class)
+public class NativeWebhookIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/webhook";
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+    private static final String PUSHED_SHA = "3333333333333333333333333333333333333333";
+
+    @Test
+    public void signedPushToDefaultBranchAccepted() {
+        post(RepositorySyncIT.pushEvent("refs/heads/main", NO_COMMIT, PUSHED_SHA), ACCEPTED.getStatusCode());
+    }
+
+    @Test
+    public void signedPushToOtherBranchIgnored() {
+        post(RepositorySyncIT.pushEvent("refs/heads/feature", NO_COMMIT, PUSHED_SHA), NO_CONTENT.getStatusCode());
+    }
+
+    private void post(final String payload, final int status) {
+        given().contentType(APPLICATION_JSON)
+               .header(CommitViewerResource.EVENT_HEADER, "push")
+               .header(CommitViewerResource.SIGNATURE_HEADER, RepositorySyncIT.sign(payload))
+               .body(payload)
+               .when().post(RESOURCE_URL)
+               .then().statusCode(status);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.api.GitHubApiClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.smallrye.mutiny.Uni;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+@QuarkusTest
+@TestProfile(PagePrefetcherIT.PrefetchProfile.class)
+public class PagePrefetcherIT {
+
+    private static final String COMMITS = "[{\"sha\":\"%s\","
+                                          + "\"commit\":{\"message\":\"Add new line\","
+                                          + "\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26Z\"}}}]";
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @Inject
+    GitApiService gitApiService;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void getCommitsNextPagePrefetched() throws InterruptedException {
+
+        //3 pages of 1 commit, the sha of each commit is its page number
+        Mockito.when(gitHubApiClient.getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                        ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream(String.format(COMMITS, invocation.getArgument(2, Integer.class)), StandardCharsets.UTF_8))
+                                                 .link(URI.create("https://api.github.com/repositories/1/commits?page=3&per_page=1"), "last")
+                                                 .build());
+        Mockito.when(gitHubApiClient.getCommitsResponseAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                             ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Uni.createFrom().item(() -> Response.ok(IOUtils.toInputStream(String.format(COMMITS, 1), StandardCharsets.UTF_8))
+                                                                             .link(URI.create("https://api.github.com/repositories/1/commits?page=3&per_page=1"), "last")
+                                                                             .build()));
+
+        gitApiService.getCommitList("pcarrasqueira", "prefetch-test", 1, 1);
+        Mockito.verify(gitHubApiClient, Mockito.timeout(5000)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                                  ArgumentMatchers.eq(2), ArgumentMatchers.eq(1), ArgumentMatchers.any());
+        awaitPrefetches(1);
+
+        final CommitInfoPageDto secondPage = gitApiService.getCommitList("pcarrasqueira", "prefetch-test", 2, 1);
+
+        //second page was served from the cache, its request warmed the third and last one, nothing after it
+        Assertions.assertEquals("2", secondPage.getItems().get(0).getSha());
+        Mockito.verify(gitHubApiClient, Mockito.timeout(5000)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                                  ArgumentMatchers.eq(3), ArgumentMatchers.eq(1), ArgumentMatchers.any());
+        //the third page is asked while its prefetch may still be running, it's fetched once either way
+        gitApiService.getCommitList("pcarrasqueira", "prefetch-test", 3, 1);
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                             ArgumentMatchers.eq(2), ArgumentMatchers.eq(1), ArgumentMatchers.any());
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                             ArgumentMatchers.eq(3), ArgumentMatchers.eq(1), ArgumentMatchers.any());
+        Mockito.verify(gitHubApiClient, Mockito.never()).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                            ArgumentMatchers.eq(4), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        //the third page is fresh in the cache, serving the second one again doesn't prefetch it nor spend the budget (2 per minute)
+        awaitPrefetches(2);
+        gitApiService.getCommitList("pcarrasqueira", "prefetch-test", 2, 1);
+        Assertions.assertEquals(1, meterRegistry.counter("commit_viewer.prefetches", "method", "api", "outcome", "warm").count());
+        Assertions.assertEquals(0, meterRegistry.counter("commit_viewer.prefetches", "method", "api", "outcome", "over_budget").count());
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq("prefetch-test"),
+                                                                             ArgumentMatchers.eq(3), ArgumentMatchers.eq(1), ArgumentMatchers.any());
+    }
+
+    //the repository has a single prefetch slot, it's released before the prefetch is counted
+    private void awaitPrefetches(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter("commit_viewer.prefetches", "method", "api", "outcome", "success").count() < count
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    public static class PrefetchProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.prefetch.enabled", "true",
+                          "commit-viewer.prefetch.max-per-minute", "2");
+        }
+    }
+}
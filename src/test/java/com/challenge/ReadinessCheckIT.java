@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.service.api.GitHubRateLimit;
+import com.challenge.web.impl.health.ReadinessCheck;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.inject.Inject;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.time.Instant;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+@QuarkusTest
+@TestProfile(ReadinessCheckIT.NoDiskLeftProfile.class)
+public class ReadinessCheckIT {
+
+    @Inject
+    GitHubRateLimit gitHubRateLimit;
+
+    @Inject
+    @Readiness
+    ReadinessCheck readinessCheck;
+
+    @Test
+    void testNotReadyWhenDiskBudgetPassed() {
+        given()
+            .get("/q/health/ready")
+            .then()
+            .statusCode(SERVICE_UNAVAILABLE.getStatusCode())
+            .body("status", is("DOWN"))
+            .body("checks.find { it.name == 'ReadinessCheck' }.data.reason", containsString("of disk left"))
+            .body("checks.find { it.name == 'ReadinessCheck' }.data.usable-disk-bytes", notNullValue())
+            .body("checks.find { it.name == 'ReadinessCheck' }.data.git-processes-queued", is(0))
+            .body("checks.find { it.name == 'ReadinessCheck' }.data.github-connection-pool-size", is(50));
+
+        //instances not ready are taken out of the load balancer, not restarted
+        given()
+            .get("/q/health/live")
+            .then()
+            .statusCode(OK.getStatusCode())
+            .body("checks.status", everyItem(is("UP")))
+            .body("checks.name", hasItem("LivenessCheck"));
+    }
+
+    @Test
+    void testNotReadyWhenHardRateLimited() {
+        final long reset = Instant.now().getEpochSecond() + 3600;
+        gitHubRateLimit.update(OK.getStatusCode(), headers("0", reset));
+        try {
+            final HealthCheckResponse response = readinessCheck.call();
+            Assertions.assertEquals(HealthCheckResponse.Status.DOWN, response.getStatus());
+            Assertions.assertTrue(response.getData().orElseThrow().get("reason").toString().contains("GitHub API rate limited"));
+            Assertions.assertEquals(Boolean.TRUE, response.getData().orElseThrow().get("github-rate-limited"));
+            Assertions.assertEquals(0L, response.getData().orElseThrow().get("github-rate-limit-remaining"));
+        } finally {
+            //a window is only replaced by a later one
+            gitHubRateLimit.update(OK.getStatusCode(), headers("5000", reset + 3600));
+        }
+        Assertions.assertFalse(readinessCheck.call().getData().orElseThrow().get("reason").toString().contains("GitHub API rate limited"));
+    }
+
+    private MultivaluedMap<String, String> headers(final String remaining, final long reset) {
+        final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle(GitHubRateLimit.REMAINING_HEADER, remaining);
+        headers.putSingle(GitHubRateLimit.RESET_HEADER, String.valueOf(reset));
+        return headers;
+    }
+
+    public static class NoDiskLeftProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.readiness.min-usable-disk-mb", String.valueOf(Long.MAX_VALUE / (1024 * 1024)),
+                          "commit-viewer.readiness.rate-limited", "true");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.dto.CommitInfoDto;
+import com.challenge.model.api.dto.CommitInfoPageDto;
+import com.challenge.service.api.GitApiService;
+import com.challenge.service.api.GitHubApiClient;
+import com.challenge.service.cli.GitCliService;
+import com.challenge.service.sync.RepositorySyncService;
+import com.challenge.web.api.CommitViewerResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.mockito.InjectMock;
+import io.smallrye.mutiny.Uni;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
+
+@QuarkusTest
+@TestProfile(RepositorySyncIT.WebhookProfile.class)
+public class RepositorySyncIT {
+
+    private static final String RESOURCE_URL = "/commit-viewer/webhook";
+    private static final String SECRET = "commit-viewer-secret";
+    private static final String USER = "pcarrasqueira";
+    private static final String REPO = "sync-test";
+    private static final String NO_COMMIT = "0000000000000000000000000000000000000000";
+    private static final String FIRST_SHA = "1111111111111111111111111111111111111111";
+    private static final String SECOND_SHA = "2222222222222222222222222222222222222222";
+    private static final String PUSHED_SHA = "3333333333333333333333333333333333333333";
+    private static final String COMMITS = "[" + commit(SECOND_SHA, FIRST_SHA) + "," + commit(FIRST_SHA, null) + "]";
+    private static final String COMPARISON = "{\"status\":\"ahead\",\"ahead_by\":1,\"commits\":[" + commit(PUSHED_SHA, SECOND_SHA) + "]}";
+
+    @InjectMock
+    @RestClient
+    GitHubApiClient gitHubApiClient;
+
+    @InjectMock
+    GitCliService gitCliService;
+
+    @Inject
+    GitApiService gitApiService;
+
+    @Inject
+    RepositorySyncService repositorySyncService;
+
+    @Test
+    public void pushOnTopMovesCachedPages() throws Exception {
+
+        Mockito.when(gitHubApiClient.getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq(REPO), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                        ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8)).build());
+        Mockito.when(gitHubApiClient.getCommitsResponseAsync(ArgumentMatchers.any(), ArgumentMatchers.eq(REPO), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                                                             ArgumentMatchers.any()))
+               .thenAnswer(invocation -> Uni.createFrom().item(() -> Response.ok(IOUtils.toInputStream(COMMITS, StandardCharsets.UTF_8)).build()));
+        Mockito.when(gitHubApiClient.compareCommitsResponse(USER, REPO, SECOND_SHA, PUSHED_SHA))
+               .thenAnswer(invocation -> Response.ok(IOUtils.toInputStream(COMPARISON, StandardCharsets.UTF_8)).build());
+
+        //the repository is created, its history is known from then on
+        postPush(NO_COMMIT, SECOND_SHA, ACCEPTED);
+        awaitHead(SECOND_SHA);
+
+        final CommitInfoPageDto firstPage = gitApiService.getCommitList(USER, REPO, 1, 2);
+        Assertions.assertEquals(List.of(SECOND_SHA, FIRST_SHA), getShas(firstPage));
+
+        postPush(SECOND_SHA, PUSHED_SHA, ACCEPTED);
+        awaitHead(PUSHED_SHA);
+
+        //pages are served from the cache, moved down by the pushed commit
+        final CommitInfoPageDto movedFirstPage = gitApiService.getCommitList(USER, REPO, 1, 2);
+        final CommitInfoPageDto movedSecondPage = gitApiService.getCommitList(USER, REPO, 2, 2);
+        Assertions.assertEquals(List.of(PUSHED_SHA, SECOND_SHA), getShas(movedFirstPage));
+        Assertions.assertEquals(List.of(FIRST_SHA), getShas(movedSecondPage));
+        Assertions.assertEquals(3, movedFirstPage.getTotal());
+        Assertions.assertEquals(2, movedFirstPage.getTotalPages());
+        Mockito.verify(gitHubApiClient, Mockito.times(1)).getCommitsResponse(ArgumentMatchers.any(), ArgumentMatchers.eq(REPO), ArgumentMatchers.any(),
+                                                                             ArgumentMatchers.any(), ArgumentMatchers.any());
+        Mockito.verify(gitCliService, Mockito.times(2)).refreshMirror(USER, REPO);
+    }
+
+    @Test
+    public void pushToOtherBranchIgnored() {
+        given().contentType(APPLICATION_JSON)
+               .header(CommitViewerResource.EVENT_HEADER, "push")
+               .header(CommitViewerResource.SIGNATURE_HEADER, sign(pushEvent("refs/heads/feature", NO_COMMIT, PUSHED_SHA)))
+               .body(pushEvent("refs/heads/feature", NO_COMMIT, PUSHED_SHA))
+               .when().post(RESOURCE_URL)
+               .then().statusCode(NO_CONTENT.getStatusCode());
+    }
+
+    @Test
+    public void webhookWithInvalidSignatureRefused() {
+        given().contentType(APPLICATION_JSON)
+               .header(CommitViewerResource.EVENT_HEADER, "push")
+               .header(CommitViewerResource.SIGNATURE_HEADER, "sha256=" + "0".repeat(64))
+               .body(pushEvent("refs/heads/main", NO_COMMIT, PUSHED_SHA))
+               .when().post(RESOURCE_URL)
+               .then().statusCode(UNAUTHORIZED.getStatusCode());
+    }
+
+    private void postPush(final String before, final String after, final Response.Status status) {
+        final String payload = pushEvent("refs/heads/main", before, after);
+        given().contentType(APPLICATION_JSON)
+               .header(CommitViewerResource.EVENT_HEADER, "push")
+               .header(CommitViewerResource.SIGNATURE_HEADER, sign(payload))
+               .body(payload)
+               .when().post(RESOURCE_URL)
+               .then().statusCode(status.getStatusCode());
+    }
+
+    //pushes are handled in background
+    private void awaitHead(final String sha) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Optional.of(sha).equals(repositorySyncService.getHead(USER, REPO)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(Optional.of(sha), repositorySyncService.getHead(USER, REPO));
+    }
+
+    private static List<String> getShas(final CommitInfoPageDto commitInfoPage) {
+        return commitInfoPage.getItems().stream().map(CommitInfoDto::getSha).collect(Collectors.toList());
+    }
+
+    static String pushEvent(final String ref, final String before, final String after) {
+        return "{\"ref\":\"" + ref + "\",\"before\":\"" + before + "\",\"after\":\"" + after + "\","
+               + "\"repository\":{\"name\":\"" + REPO + "\",\"default_branch\":\"main\",\"owner\":{\"login\":\"" + USER + "\"}}}";
+    }
+
+    private static String commit(final String sha, final String parentSha) {
+        return "{\"sha\":\"" + sha + "\",\"parents\":[" + (parentSha == null ? "" : "{\"sha\":\"" + parentSha + "\"}") + "],"
+               + "\"commit\":{\"message\":\"Commit " + sha.charAt(0) + "\","
+               + "\"author\":{\"name\":\"Paulo Carrasqueira\",\"email\":\"pjcarrasqueira@gmail.com\",\"date\":\"2021-09-26T21:55:26Z\"}}}";
+    }
+
+    static String sign(final String payload) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            final StringBuilder signature = new StringBuilder("sha256=");
+            for (final byte b : mac.doFinal(payload.getBytes(StandardCharsets.UTF_8))) {
+                signature.append(String.format("%02x", b));
+            }
+            return signature.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class WebhookProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("commit-viewer.sync.webhook-secret", SECRET);
+        }
+    }
+}
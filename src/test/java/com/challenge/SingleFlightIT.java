@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021.
+ * Paulo Carrasqueira
+ */
+
+package com.challenge;
+
+import com.challenge.model.api.exception.CommitViewerException;
+import com.challenge.model.api.exception.ErrorCodeImpl;
+import com.challenge.service.common.SingleFlight;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightIT {
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            final Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return "other";
+            }));
+            final Uni<String> asyncFollower = singleFlight.executeAsync("key", () -> Uni.createFrom().item(() -> {
+                calls.incrementAndGet();
+                return "other";
+            }));
+            final Future<String> asyncFollowerResult = executor.submit(() -> asyncFollower.await().atMost(Duration.ofSeconds(5)));
+
+            //wait for both followers to join before releasing the leader
+            while (singleFlight.getCoalesced() < 2) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Assertions.assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("value", asyncFollowerResult.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, calls.get());
+            Assertions.assertEquals(1, singleFlight.getExecutions());
+            Assertions.assertEquals(2, singleFlight.getCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureIsSharedAndNotKept() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                release.await();
+                throw new CommitViewerException(ErrorCodeImpl.NOT_FOUND, "leader");
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            final Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "follower"));
+            while (singleFlight.getCoalesced() < 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            final Exception leaderFailure = Assertions.assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            final Exception followerFailure = Assertions.assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("leader", ((CommitViewerException) leaderFailure.getCause()).getDescription());
+            Assertions.assertEquals("leader", ((CommitViewerException) followerFailure.getCause()).getDescription());
+
+            //nothing in flight anymore, next call runs again
+            Assertions.assertEquals("again", singleFlight.execute("key", () -> "again"));
+            Assertions.assertEquals(2, singleFlight.getExecutions());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void leaderCancellationDoesNotFailFollowers() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final Uni<String> call = singleFlight.executeAsync("key", () -> Uni.createFrom().item(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "value";
+            }).runSubscriptionOn(executor));
+            final Cancellable leader = call.subscribe().with(value -> { });
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            final CompletableFuture<String> follower = singleFlight.executeAsync("key", () -> Uni.createFrom().item("other"))
+                                                                  .subscribeAsCompletionStage();
+            Assertions.assertEquals(1, singleFlight.getCoalesced());
+            leader.cancel();
+            release.countDown();
+
+            Assertions.assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, singleFlight.getExecutions());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void flightIsCancelledOnceEveryCallerLeft() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Uni<String> neverEnding = Uni.createFrom().<String>nothing().onCancellation().invoke(cancelled::countDown);
+
+        final Cancellable leader = singleFlight.executeAsync("key", () -> neverEnding).subscribe().with(value -> { });
+        final Cancellable follower = singleFlight.executeAsync("key", () -> neverEnding).subscribe().with(value -> { });
+        leader.cancel();
+        Assertions.assertEquals(1, cancelled.getCount());
+        follower.cancel();
+        Assertions.assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+
+        //nothing in flight anymore, next call runs again
+        Assertions.assertEquals("again", singleFlight.executeAsync("key", () -> Uni.createFrom().item("again")).await().atMost(Duration.ofSeconds(5)));
+        Assertions.assertEquals(2, singleFlight.getExecutions());
+    }
+}